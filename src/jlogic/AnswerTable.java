@@ -0,0 +1,181 @@
+package jlogic;
+
+import java.util.Arrays;
+
+import jlogic.term.Functor;
+import jlogic.term.Structure;
+import jlogic.term.SymbolTable;
+import jlogic.term.Term;
+import jlogic.term.TermFactory;
+
+/**
+ * The answers found for one call to a tabled predicate.
+ *
+ * A table is identified by its variant: the call with its variables replaced
+ * by slot variables, so that all calls which are variants of each other share
+ * one table. An answer only stores the instantiations of the variant's
+ * variables, again with their own variables replaced by slot variables. The
+ * answers are kept in the order in which they were found, and duplicates are
+ * dropped.
+ *
+ * Answers are stored as structures, whose ground parts are shared by
+ * TermFactory, so that equal answers in different tables take up the space
+ * only once. Only one thread may add answers while the table is incomplete;
+ * complete tables can be read concurrently.
+ */
+public final class AnswerTable {
+    private static final String ANSWER_NAME = "$answer";
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    // Open addressing set of answer positions, plus one. Zero means empty.
+    // It is kept at most half full.
+    private int[] answerSet = new int[INITIAL_CAPACITY * 2];
+
+    private final Structure variant;
+    private final Functor answerFunctor;
+
+    private Structure[] answers = new Structure[INITIAL_CAPACITY];
+    private int numAnswers = 0;
+
+    // The largest number of variables in one answer
+    private int maxAnswerVariables = 0;
+
+    private volatile boolean complete = false;
+
+    /**
+     * @param variant
+     *        The call, with its variables numbered by NumberVariables.
+     * @param numVariables
+     *        The number of variables in the variant.
+     */
+    public AnswerTable(Structure variant, int numVariables) {
+        this.variant = variant;
+        this.answerFunctor = SymbolTable.getFunctor(ANSWER_NAME, numVariables);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+
+        builder.append(variant);
+        builder.append(complete ? ": " : " (incomplete): ");
+        builder.append(numAnswers);
+        builder.append(numAnswers == 1 ? " answer\n" : " answers\n");
+        for (int i = 0; i < numAnswers; ++i) {
+            builder.append("    ");
+            builder.append(Arrays.toString(answers[i].getArguments()));
+            builder.append("\n");
+        }
+
+        return builder.toString();
+    }
+
+    public Structure getVariant() {
+        return variant;
+    }
+
+    public Functor getFunctor() {
+        return variant.getFunctor();
+    }
+
+    public int getNumVariables() {
+        return answerFunctor.getArity();
+    }
+
+    public int getNumAnswers() {
+        return numAnswers;
+    }
+
+    /**
+     * Returns the instantiations of the variant's variables in the answer with
+     * the given position.
+     */
+    public Term[] getAnswer(int position) {
+        if (position < 0 || position >= numAnswers)
+            throw new IllegalArgumentException("no answer at position " + position);
+
+        return answers[position].getArguments();
+    }
+
+    /**
+     * Returns the number of slots needed to rename the variables of any
+     * answer.
+     */
+    public int getMaxAnswerVariables() {
+        return maxAnswerVariables;
+    }
+
+    /**
+     * Returns whether all answers have been found.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public void setComplete() {
+        complete = true;
+    }
+
+    /**
+     * Adds an answer unless it is already in the table.
+     *
+     * @param instantiations
+     *        The instantiations of the variant's variables.
+     * @return Whether the answer was added.
+     */
+    public boolean add(Term[] instantiations) {
+        if (complete)
+            throw new IllegalStateException("table is complete");
+        if (instantiations.length != answerFunctor.getArity())
+            throw new IllegalArgumentException("expected " + answerFunctor.getArity() +
+                    " instantiations");
+
+        NumberVariables numberVariables = new NumberVariables();
+        Term[] arguments = new Term[instantiations.length];
+        for (int i = 0; i < instantiations.length; ++i)
+            arguments[i] = TermFactory.share(instantiations[i].accept(numberVariables));
+
+        Structure answer = TermFactory.createStructure(answerFunctor, arguments);
+
+        int mask = answerSet.length - 1;
+        int slot = answer.hashCode() & mask;
+        while (answerSet[slot] != 0) {
+            if (answers[answerSet[slot] - 1].equals(answer))
+                return false;
+            slot = (slot + 1) & mask;
+        }
+
+        if (numAnswers == answers.length)
+            answers = Arrays.copyOf(answers, numAnswers * 2);
+        answers[numAnswers++] = answer;
+        answerSet[slot] = numAnswers;
+
+        maxAnswerVariables = Math.max(maxAnswerVariables, numberVariables.getNumSlots());
+
+        if (numAnswers * 2 > answerSet.length)
+            rehash();
+        return true;
+    }
+
+    /**
+     * Returns an estimate of the number of bytes used by this table, not
+     * counting the shared parts of answers.
+     */
+    public long getMemory() {
+        return 4L * (answers.length + answerSet.length) +
+                (16L + 4L * answerFunctor.getArity()) * numAnswers;
+    }
+
+    private void rehash() {
+        answerSet = new int[answerSet.length * 2];
+
+        int mask = answerSet.length - 1;
+        for (int i = 0; i < numAnswers; ++i) {
+            int slot = answers[i].hashCode() & mask;
+            while (answerSet[slot] != 0)
+                slot = (slot + 1) & mask;
+            answerSet[slot] = i + 1;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package jlogic;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jlogic.term.Functor;
+import jlogic.term.Structure;
+
+/**
+ * The complete answer tables of the tabled predicates in a knowledge base,
+ * keyed by their variant. Tables are only added once complete, so they are
+ * never modified afterwards. Queries on different threads may add and read
+ * tables concurrently.
+ *
+ * When the clauses of the knowledge base change, the tables are invalidated.
+ * Tables which were being evaluated at that time are not added anymore, since
+ * they may have been computed from the old clauses.
+ */
+public final class AnswerTables {
+    private final ConcurrentHashMap<Structure, AnswerTable> tables =
+            new ConcurrentHashMap<Structure, AnswerTable>();
+
+    // Number of invalidations so far
+    private final AtomicLong generation = new AtomicLong();
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+
+        for (AnswerTable table : tables.values())
+            builder.append(table);
+
+        return builder.toString();
+    }
+
+    /**
+     * Returns the complete table for the given variant, or null if there is
+     * none.
+     */
+    public AnswerTable get(Structure variant) {
+        return tables.get(variant);
+    }
+
+    /**
+     * Adds a complete table. If there already is a table for the same
+     * variant, that one is kept.
+     *
+     * @return The table that is stored for the variant.
+     */
+    public AnswerTable add(AnswerTable table) {
+        return add(table, generation.get());
+    }
+
+    /**
+     * Adds a complete table, unless the tables were invalidated since the
+     * given generation.
+     *
+     * @return The table that is stored for the variant, or the given table if
+     *         it was not added.
+     */
+    public AnswerTable add(AnswerTable table, long generation) {
+        if (!table.isComplete())
+            throw new IllegalArgumentException("only complete tables can be added");
+        if (generation != this.generation.get())
+            return table;
+
+        AnswerTable existing = tables.putIfAbsent(table.getVariant(), table);
+        if (existing != null)
+            return existing;
+
+        // If an invalidation has cleared the tables before the table was
+        // added, remove it again. Otherwise it clears the table itself.
+        if (generation != this.generation.get())
+            tables.remove(table.getVariant(), table);
+        return table;
+    }
+
+    /**
+     * Returns the current generation, which is passed to add() by
+     * evaluations starting now.
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Removes all tables, and prevents the tables of evaluations which
+     * started before from being added.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        tables.clear();
+    }
+
+    public Collection<AnswerTable> getTables() {
+        return new ArrayList<AnswerTable>(tables.values());
+    }
+
+    public int getNumTables() {
+        return tables.size();
+    }
+
+    /**
+     * Returns the total number of answers in all tables.
+     */
+    public long getNumAnswers() {
+        long result = 0;
+        for (AnswerTable table : tables.values())
+            result += table.getNumAnswers();
+        return result;
+    }
+
+    /**
+     * Returns an estimate of the number of bytes used by all tables.
+     */
+    public long getMemory() {
+        long result = 0;
+        for (AnswerTable table : tables.values())
+            result += table.getMemory();
+        return result;
+    }
+
+    /**
+     * Removes all tables, so that tabled calls are evaluated again.
+     */
+    public void clear() {
+        tables.clear();
+    }
+
+    /**
+     * Removes the tables of calls to the predicate with the given functor.
+     */
+    public void clear(Functor functor) {
+        Iterator<AnswerTable> iterator = tables.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getFunctor() == functor)
+                iterator.remove();
+        }
+    }
+}
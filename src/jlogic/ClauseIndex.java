@@ -0,0 +1,445 @@
+package jlogic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import jlogic.term.Atom;
+import jlogic.term.IntegerTerm;
+import jlogic.term.ListTerm;
+import jlogic.term.Structure;
+import jlogic.term.Term;
+
+/**
+ * Maps the principal functors of some arguments in the heads of a predicate's
+ * clauses to the clauses which can possibly match a goal with those functors.
+ * The order of the clauses is preserved.
+ *
+ * Instances are immutable once constructed, so they can be shared between
+ * threads after being safely published. Adding or removing a clause creates
+ * a new index, which only copies the entries that change and shares the
+ * others.
+ */
+final class ClauseIndex {
+    // Key of a term which is not bound to a functor
+    static final long NO_KEY = -1;
+
+    // Rough sizes of the objects making up an index, used for estimating its
+    // memory usage
+    private static final int ARRAY_OVERHEAD = 16;
+    private static final int REFERENCE_SIZE = 4;
+    private static final int KEY_SIZE = 8;
+
+    // Positions of the indexed arguments
+    private final int[] arguments;
+
+    // Open addressing hash table from keys to the clauses which might match
+    // them. Its capacity is a power of two, and it is at most half full.
+    private final long[] keys;
+    private final Rule[][] values;
+    private final int mask;
+    private final int numEntries;
+
+    // Clauses which have a variable at one of the indexed arguments. They
+    // might match every key, so they are also contained in every entry of
+    // the table.
+    private final Rule[] variableClauses;
+
+    private final long memory;
+
+    public ClauseIndex(Rule[] clauses, int[] arguments) {
+        assert arguments.length > 0;
+
+        this.arguments = arguments;
+
+        HashMap<Long, ArrayList<Rule>> lists = new HashMap<Long, ArrayList<Rule>>();
+        ArrayList<Rule> variableList = new ArrayList<Rule>();
+        group(clauses, lists, variableList);
+
+        int capacity = Integer.highestOneBit(Math.max(lists.size(), 1)) * 4;
+        keys = new long[capacity];
+        values = new Rule[capacity][];
+        mask = capacity - 1;
+
+        for (Map.Entry<Long, ArrayList<Rule>> entry : lists.entrySet()) {
+            Rule[] ruleArray = new Rule[entry.getValue().size()];
+            entry.getValue().toArray(ruleArray);
+
+            int slot = findSlot(keys, values, entry.getKey());
+            keys[slot] = entry.getKey();
+            values[slot] = ruleArray;
+        }
+
+        numEntries = lists.size();
+        variableClauses = variableList.toArray(new Rule[variableList.size()]);
+        memory = getMemory(values, variableClauses);
+    }
+
+    public ClauseIndex(Rule[] clauses, int argument) {
+        this(clauses, new int[] { argument });
+    }
+
+    /**
+     * Creates an index from the entries of another one on the same clauses,
+     * e.g. read from a snapshot. The keys are taken from the clauses, since
+     * symbol ids differ between runs. Entries without a clause of their own
+     * key only hold variable clauses, so they are left out. Should the keys
+     * of two entries collide now, the index is built from the clauses.
+     *
+     * @param entries
+     *        The clauses of each key, including the variable clauses.
+     */
+    static ClauseIndex fromEntries(Rule[] clauses, int[] arguments, Rule[][] entries,
+            Rule[] variableClauses) {
+        if (arguments.length == 0)
+            throw new IllegalArgumentException("arguments must not be empty");
+
+        int capacity = Integer.highestOneBit(Math.max(entries.length, 1)) * 4;
+        long[] keys = new long[capacity];
+        Rule[][] values = new Rule[capacity][];
+
+        int numEntries = 0;
+        for (Rule[] entry : entries) {
+            long key = NO_KEY;
+            for (int i = 0; i < entry.length && key == NO_KEY; ++i)
+                key = getKey(arguments, entry[i].getHead().getArguments());
+            if (key == NO_KEY)
+                continue;
+
+            int slot = findSlot(keys, values, key);
+            if (values[slot] != null)
+                return new ClauseIndex(clauses, arguments);
+            keys[slot] = key;
+            values[slot] = entry;
+            ++numEntries;
+        }
+
+        return new ClauseIndex(arguments, keys, values, numEntries, variableClauses,
+                getMemory(values, variableClauses));
+    }
+
+    private ClauseIndex(int[] arguments, long[] keys, Rule[][] values, int numEntries,
+            Rule[] variableClauses, long memory) {
+        this.arguments = arguments;
+        this.keys = keys;
+        this.values = values;
+        this.mask = keys.length - 1;
+        this.numEntries = numEntries;
+        this.variableClauses = variableClauses;
+        this.memory = memory;
+    }
+
+    /**
+     * Returns an index which also contains the given clause, as the first or
+     * last one.
+     *
+     * @param clauses
+     *        All clauses including the new one, from which the index is
+     *        rebuilt if its table is full.
+     */
+    public ClauseIndex add(Rule[] clauses, Rule clause, boolean atEnd) {
+        long key = getKey(clause.getHead().getArguments());
+
+        if (key == NO_KEY) {
+            // The clause might match every key
+            Rule[][] newValues = new Rule[values.length][];
+            for (int slot = 0; slot < values.length; ++slot) {
+                if (values[slot] != null)
+                    newValues[slot] = insert(values[slot], clause, atEnd);
+            }
+            return new ClauseIndex(arguments, keys, newValues, numEntries,
+                    insert(variableClauses, clause, atEnd),
+                    memory + REFERENCE_SIZE * (numEntries + 1));
+        }
+
+        int slot = findSlot(keys, values, key);
+        if (values[slot] != null) {
+            Rule[][] newValues = values.clone();
+            newValues[slot] = insert(values[slot], clause, atEnd);
+            return new ClauseIndex(arguments, keys, newValues, numEntries,
+                    variableClauses, memory + REFERENCE_SIZE);
+        }
+
+        if ((numEntries + 1) * 2 > keys.length)
+            return new ClauseIndex(clauses, arguments);
+
+        // A new entry, which contains the variable clauses as well
+        long[] newKeys = keys.clone();
+        Rule[][] newValues = values.clone();
+        newKeys[slot] = key;
+        newValues[slot] = insert(variableClauses, clause, atEnd);
+        return new ClauseIndex(arguments, newKeys, newValues, numEntries + 1, variableClauses,
+                memory + ARRAY_OVERHEAD + REFERENCE_SIZE * newValues[slot].length);
+    }
+
+    /**
+     * Returns an index which also contains the given clauses after the
+     * existing ones. Entries which none of the new clauses can match are
+     * shared with this index.
+     */
+    public ClauseIndex addAll(Rule[] newClauses) {
+        HashMap<Long, ArrayList<Rule>> lists = new HashMap<Long, ArrayList<Rule>>();
+        ArrayList<Rule> variableList = new ArrayList<Rule>();
+        group(newClauses, lists, variableList);
+        Rule[] newVariableClauses = variableList.toArray(new Rule[variableList.size()]);
+
+        int newNumEntries = numEntries;
+        for (long key : lists.keySet()) {
+            if (values[findSlot(keys, values, key)] == null)
+                ++newNumEntries;
+        }
+
+        // Keep the table at most half full
+        int capacity = keys.length;
+        while (newNumEntries * 2 > capacity)
+            capacity *= 2;
+
+        long[] newKeys;
+        Rule[][] newValues;
+        if (capacity == keys.length) {
+            newKeys = keys.clone();
+            newValues = values.clone();
+        } else {
+            newKeys = new long[capacity];
+            newValues = new Rule[capacity][];
+            for (int slot = 0; slot < values.length; ++slot) {
+                if (values[slot] != null) {
+                    int newSlot = findSlot(newKeys, newValues, keys[slot]);
+                    newKeys[newSlot] = keys[slot];
+                    newValues[newSlot] = values[slot];
+                }
+            }
+        }
+
+        // New variable clauses might match the keys of the other entries too
+        if (newVariableClauses.length > 0) {
+            for (int slot = 0; slot < newValues.length; ++slot) {
+                if (newValues[slot] != null && !lists.containsKey(newKeys[slot]))
+                    newValues[slot] = concat(newValues[slot], newVariableClauses);
+            }
+        }
+
+        for (Map.Entry<Long, ArrayList<Rule>> entry : lists.entrySet()) {
+            Rule[] additions = entry.getValue().toArray(new Rule[entry.getValue().size()]);
+
+            int slot = findSlot(newKeys, newValues, entry.getKey());
+            if (newValues[slot] == null) {
+                // Every old variable clause comes before the new clauses
+                newKeys[slot] = entry.getKey();
+                newValues[slot] = concat(variableClauses, additions);
+            } else
+                newValues[slot] = concat(newValues[slot], additions);
+        }
+
+        Rule[] allVariableClauses = concat(variableClauses, newVariableClauses);
+        return new ClauseIndex(arguments, newKeys, newValues, newNumEntries,
+                allVariableClauses, getMemory(newValues, allVariableClauses));
+    }
+
+    /**
+     * Returns an index which does not contain the given clause anymore.
+     * Entries are kept even if they become empty.
+     */
+    public ClauseIndex remove(Rule clause) {
+        long key = getKey(clause.getHead().getArguments());
+
+        if (key == NO_KEY) {
+            Rule[][] newValues = new Rule[values.length][];
+            for (int slot = 0; slot < values.length; ++slot) {
+                if (values[slot] != null)
+                    newValues[slot] = delete(values[slot], clause);
+            }
+            return new ClauseIndex(arguments, keys, newValues, numEntries,
+                    delete(variableClauses, clause),
+                    memory - REFERENCE_SIZE * (numEntries + 1));
+        }
+
+        for (int slot = getSlot(key); values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                Rule[][] newValues = values.clone();
+                newValues[slot] = delete(values[slot], clause);
+                return new ClauseIndex(arguments, keys, newValues, numEntries,
+                        variableClauses, memory - REFERENCE_SIZE);
+            }
+        }
+
+        assert false : "clause is not in the index";
+        return this;
+    }
+
+    /**
+     * Groups clauses by their keys. The list of a key also contains the
+     * variable clauses, in their original order, and the variable clauses are
+     * collected in a list of their own.
+     */
+    private void group(Rule[] clauses, HashMap<Long, ArrayList<Rule>> lists,
+            ArrayList<Rule> variableList) {
+        for (Rule clause : clauses) {
+            long key = getKey(clause.getHead().getArguments());
+
+            if (key == NO_KEY) {
+                for (ArrayList<Rule> list : lists.values())
+                    list.add(clause);
+                variableList.add(clause);
+            } else {
+                ArrayList<Rule> list = lists.get(key);
+                if (list == null) {
+                    // Every variable clause so far comes before this one
+                    list = new ArrayList<Rule>(variableList);
+                    lists.put(key, list);
+                }
+                list.add(clause);
+            }
+        }
+    }
+
+    /**
+     * Returns the slot of the given key in a table, or the empty slot where
+     * it would be inserted.
+     */
+    private static int findSlot(long[] keys, Rule[][] values, long key) {
+        int mask = keys.length - 1;
+        int slot = getSlot(key, mask);
+        while (values[slot] != null && keys[slot] != key)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private static long getMemory(Rule[][] values, Rule[] variableClauses) {
+        long result = 2 * ARRAY_OVERHEAD + values.length * (KEY_SIZE + REFERENCE_SIZE);
+        for (Rule[] value : values) {
+            if (value != null)
+                result += ARRAY_OVERHEAD + REFERENCE_SIZE * value.length;
+        }
+        return result + ARRAY_OVERHEAD + REFERENCE_SIZE * variableClauses.length;
+    }
+
+    private static Rule[] concat(Rule[] first, Rule[] second) {
+        Rule[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    private static Rule[] insert(Rule[] clauses, Rule clause, boolean atEnd) {
+        Rule[] result = new Rule[clauses.length + 1];
+        System.arraycopy(clauses, 0, result, atEnd ? 0 : 1, clauses.length);
+        result[atEnd ? clauses.length : 0] = clause;
+        return result;
+    }
+
+    /**
+     * Returns the given clauses without the given one, which must be among
+     * them.
+     */
+    static Rule[] delete(Rule[] clauses, Rule clause) {
+        int position = 0;
+        while (clauses[position] != clause)
+            ++position;
+
+        Rule[] result = new Rule[clauses.length - 1];
+        System.arraycopy(clauses, 0, result, 0, position);
+        System.arraycopy(clauses, position + 1, result, position, result.length - position);
+        return result;
+    }
+
+    public int[] getArguments() {
+        return arguments;
+    }
+
+    /**
+     * Returns the clauses of each key, including the variable clauses.
+     */
+    Rule[][] getEntries() {
+        Rule[][] result = new Rule[numEntries][];
+        int i = 0;
+        for (Rule[] value : values) {
+            if (value != null)
+                result[i++] = value;
+        }
+        return result;
+    }
+
+    Rule[] getVariableClauses() {
+        return variableClauses;
+    }
+
+    /**
+     * Returns an estimate of the number of bytes used by this index.
+     */
+    public long getMemory() {
+        return memory;
+    }
+
+    /**
+     * Returns the clauses which can match a goal with the given arguments, or
+     * null if one of the indexed arguments is not bound to a functor.
+     */
+    public Rule[] getClauses(Term[] goalArguments) {
+        long key = getKey(goalArguments);
+        if (key == NO_KEY)
+            return null;
+
+        for (int slot = getSlot(key); values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key)
+                return values[slot];
+        }
+        return variableClauses;
+    }
+
+    private int getSlot(long key) {
+        return getSlot(key, mask);
+    }
+
+    private static int getSlot(long key, int mask) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    /**
+     * Returns the key of the indexed arguments, or NO_KEY if one of them is a
+     * variable.
+     *
+     * Keys of combined arguments are hashes of the individual keys. Should two
+     * combinations hash to the same key, their clauses simply end up in the
+     * same entry, which is less selective but still correct.
+     */
+    private long getKey(Term[] terms) {
+        return getKey(arguments, terms);
+    }
+
+    private static long getKey(int[] arguments, Term[] terms) {
+        if (arguments.length == 1)
+            return getKey(terms[arguments[0]]);
+
+        long result = 17;
+        for (int argument : arguments) {
+            long key = getKey(terms[argument]);
+            if (key == NO_KEY)
+                return NO_KEY;
+
+            result = (result + key) * 0x9E3779B97F4A7C15L;
+            result ^= result >>> 29;
+        }
+        return result & Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns the key of a term in the index, which is the symbol id of atoms
+     * and of the functor of structures. Integers are keyed by a hash of their
+     * value; should it equal a symbol id, the clauses of both simply share an
+     * entry. Lists have the key of cons/2, which they unify with. Variables
+     * don't have a key.
+     */
+    static long getKey(Term term) {
+        if (term instanceof Atom)
+            return ((Atom) term).getId();
+        if (term instanceof Structure)
+            return ((Structure) term).getFunctor().getId();
+        if (term instanceof ListTerm)
+            return ListTerm.CONS.getId();
+        if (term instanceof IntegerTerm)
+            return (term.hashCode() * 0x9E3779B97F4A7C15L) & Long.MAX_VALUE;
+        return NO_KEY;
+    }
+}
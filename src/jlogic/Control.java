@@ -0,0 +1,136 @@
+package jlogic;
+
+import java.util.ArrayList;
+
+import jlogic.term.Atom;
+import jlogic.term.CutBarrier;
+import jlogic.term.Functor;
+import jlogic.term.Structure;
+import jlogic.term.SymbolTable;
+import jlogic.term.Term;
+
+/**
+ * The control constructs which may occur in clause bodies: conjunction
+ * "A, B", disjunction "A ; B", if-then "C -> T", if-then-else
+ * "C -> T ; E", cut "!" and "true". They are represented as ordinary
+ * structures and atoms, and are solved by the interpreter itself instead of
+ * by clauses.
+ */
+public final class Control {
+    public static final Functor CONJUNCTION = SymbolTable.getFunctor(",", 2);
+    public static final Functor DISJUNCTION = SymbolTable.getFunctor(";", 2);
+    public static final Functor IF_THEN = SymbolTable.getFunctor("->", 2);
+    public static final Atom CUT = SymbolTable.getAtom("!");
+    public static final Atom TRUE = SymbolTable.getAtom("true");
+
+    // Static class
+    private Control() {
+        assert false;
+    }
+
+    /**
+     * Returns whether the given goal is solved by the interpreter itself.
+     */
+    public static boolean isControl(Term goal) {
+        if (goal instanceof Structure) {
+            Functor functor = ((Structure) goal).getFunctor();
+            return functor == CONJUNCTION || functor == DISJUNCTION || functor == IF_THEN;
+        }
+        return goal == CUT || goal == TRUE || goal instanceof CutBarrier;
+    }
+
+    /**
+     * Returns whether the given goal contains a cut or a cut barrier,
+     * including the cuts local to conditions.
+     */
+    public static boolean containsCut(Term goal) {
+        if (goal == CUT || goal instanceof CutBarrier)
+            return true;
+        if (!isControl(goal) || !(goal instanceof Structure))
+            return false;
+
+        Term[] arguments = ((Structure) goal).getArguments();
+        return containsCut(arguments[0]) || containsCut(arguments[1]);
+    }
+
+    /**
+     * Replaces the cuts of the given goal by the given cut barrier. The
+     * condition of an if-then is left alone, since a cut in there only cuts
+     * the condition.
+     */
+    public static Term replaceCuts(Term goal, CutBarrier barrier) {
+        if (goal == CUT)
+            return barrier;
+        if (!isControl(goal) || !(goal instanceof Structure))
+            return goal;
+
+        Structure structure = (Structure) goal;
+        Term[] arguments = structure.getArguments();
+        Term left = structure.getFunctor() == IF_THEN
+                ? arguments[0] : replaceCuts(arguments[0], barrier);
+        Term right = replaceCuts(arguments[1], barrier);
+
+        if (left == arguments[0] && right == arguments[1])
+            return goal;
+        return new Structure(structure.getFunctor(), new Term[] { left, right });
+    }
+
+    /**
+     * Returns the goals of a conjunction, so that the body of a rule is a
+     * plain array of goals at the top level.
+     */
+    public static Term[] getConjuncts(Term goal) {
+        ArrayList<Term> goals = new ArrayList<Term>();
+        while (goal instanceof Structure &&
+                ((Structure) goal).getFunctor() == CONJUNCTION) {
+            Term[] arguments = ((Structure) goal).getArguments();
+            goals.add(arguments[0]);
+            goal = arguments[1];
+        }
+        goals.add(goal);
+
+        return goals.toArray(new Term[goals.size()]);
+    }
+
+    /**
+     * Returns the conjunction of the given goals, of which there must be at
+     * least one. The reverse of getConjuncts().
+     */
+    public static Term createConjunction(Term[] goals) {
+        assert goals.length > 0;
+
+        Term result = goals[goals.length - 1];
+        for (int i = goals.length - 2; i >= 0; --i)
+            result = new Structure(CONJUNCTION, new Term[] { goals[i], result });
+        return result;
+    }
+
+    /**
+     * Formats a goal with the control constructs written as operators.
+     */
+    public static String toString(Term goal) {
+        if (!(goal instanceof Structure) || !isControl(goal))
+            return goal.toString();
+
+        Structure structure = (Structure) goal;
+        if (structure.getFunctor() == CONJUNCTION)
+            return toOperators(structure);
+        return "(" + toOperators(structure) + ")";
+    }
+
+    private static String toOperators(Structure structure) {
+        Term[] arguments = structure.getArguments();
+        Functor functor = structure.getFunctor();
+
+        if (functor == CONJUNCTION)
+            return toString(arguments[0]) + ", " + toString(arguments[1]);
+        if (functor == IF_THEN)
+            return toString(arguments[0]) + " -> " + toString(arguments[1]);
+
+        // The condition of an if-then-else needs no parentheses of its own
+        String left = arguments[0] instanceof Structure &&
+                ((Structure) arguments[0]).getFunctor() == IF_THEN
+                ? toOperators((Structure) arguments[0]) : toString(arguments[0]);
+        return left + " ; " + toString(arguments[1]);
+    }
+}
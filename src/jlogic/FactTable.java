@@ -0,0 +1,421 @@
+package jlogic;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import jlogic.term.Atom;
+import jlogic.term.Functor;
+import jlogic.term.IntegerTerm;
+import jlogic.term.SymbolTable;
+import jlogic.term.Term;
+
+/**
+ * The facts of a predicate whose arguments are all atoms or integers, stored
+ * outside of the heap. As clauses, every fact would take a structure, an
+ * argument array and its integers on the heap; a fact table only takes one
+ * cell of eight bytes per argument, in a memory mapped column per argument
+ * position. Atoms are stored by their symbol id, so the atoms themselves stay
+ * in the symbol table.
+ *
+ * Calls are answered by scanning the rows, or by following the rows of one
+ * key in an index, and comparing their cells with the bound arguments. Only
+ * the cells of matching rows are turned into terms again. Like the clause
+ * indexes of predicates, the index on the first argument is built right away,
+ * and indexes on other arguments once they have been bound often enough.
+ * Indexes are kept outside of the heap as well.
+ *
+ * Fact tables can not be changed once built, so they can be shared by any
+ * number of threads.
+ */
+public final class FactTable {
+    // Cell of a term which can not be stored, and which no stored cell equals
+    static final long NO_CELL = -2;
+
+    // Number of calls with an argument bound before it is indexed
+    private static final int INDEX_THRESHOLD = 8;
+
+    // Only calls which have more candidate rows than this are recorded
+    private static final int SELECTIVE_ROWS = 4;
+
+    /**
+     * Collects the rows of a fact table.
+     */
+    public static final class Builder {
+        private final Functor functor;
+        private final MappedArray[] columns;
+        private int numRows = 0;
+
+        public Builder(Functor functor) throws IOException {
+            if (functor == null)
+                throw new IllegalArgumentException("functor must not be null");
+
+            this.functor = functor;
+
+            columns = new MappedArray[functor.getArity()];
+            for (int i = 0; i < columns.length; ++i)
+                columns[i] = new MappedArray(MappedArray.LONG_SIZE);
+        }
+
+        public Functor getFunctor() {
+            return functor;
+        }
+
+        /**
+         * Adds a row of the given arguments, which must be atoms or integers
+         * of less than 63 bits.
+         */
+        public void add(Term[] arguments) throws IOException {
+            if (arguments.length != columns.length)
+                throw new IllegalArgumentException("a row of " + functor.getFullName() +
+                        " must have " + columns.length + " arguments");
+            if (numRows == Integer.MAX_VALUE)
+                throw new IllegalArgumentException("a fact table can not have more rows");
+
+            for (Term argument : arguments) {
+                if (!isStorable(argument))
+                    throw new IllegalArgumentException("a fact table can only store atoms " +
+                            "and integers of less than 63 bits, not " + argument);
+            }
+
+            for (int i = 0; i < columns.length; ++i)
+                columns[i].setLong(numRows, getCell(arguments[i]));
+            ++numRows;
+        }
+
+        public FactTable build() throws IOException {
+            for (MappedArray column : columns)
+                column.finish();
+
+            return new FactTable(functor, columns, numRows);
+        }
+    }
+
+    /**
+     * Enumerates the rows matching a call, in their original order.
+     */
+    public final class Rows {
+        // Cells of the bound arguments, or NO_CELL for the other arguments
+        private final long[] cells;
+
+        // The index whose rows are followed, or null if all rows are scanned
+        private final ColumnIndex index;
+
+        // The next row to be compared, or -1 at the end
+        private int row;
+
+        private Rows(long[] cells, ColumnIndex index, int firstRow) {
+            this.cells = cells;
+            this.index = index;
+            this.row = firstRow;
+        }
+
+        /**
+         * Returns the next matching row, or -1 if there are none left.
+         */
+        public int next() {
+            while (row != -1) {
+                int candidate = row;
+                if (index != null)
+                    row = index.getNextRow(candidate);
+                else
+                    row = candidate + 1 < numRows ? candidate + 1 : -1;
+
+                if (matches(candidate))
+                    return candidate;
+            }
+            return -1;
+        }
+
+        private boolean matches(int row) {
+            for (int i = 0; i < cells.length; ++i) {
+                if (cells[i] != NO_CELL && columns[i].getLong(row) != cells[i])
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The rows of each cell in a column, as an open addressing hash table
+     * from cells to the first row and the number of rows holding them, and a
+     * chain through the rows of each cell. Row numbers are stored plus one,
+     * so that zero marks the end.
+     */
+    private static final class ColumnIndex {
+        private MappedArray keys;
+        private MappedArray entries;
+        private long mask;
+        private long numKeys = 0;
+
+        private final MappedArray nextRows;
+
+        ColumnIndex(MappedArray column, int numRows) throws IOException {
+            allocate(1 << 10);
+            nextRows = new MappedArray(MappedArray.INT_SIZE);
+
+            // The rows are added from the last one, so that each one is put
+            // in front of the later ones with the same cell
+            for (int row = numRows - 1; row >= 0; --row) {
+                long cell = column.getLong(row);
+                long slot = findSlot(cell);
+                long entry = entries.getLong(slot);
+
+                if (entry == 0) {
+                    // Keep the table at most half full
+                    if ((numKeys + 1) * 2 > mask + 1) {
+                        grow();
+                        slot = findSlot(cell);
+                    }
+                    keys.setLong(slot, cell);
+                    ++numKeys;
+                }
+
+                nextRows.setInt(row, getEntryFirstRow(entry) + 1);
+                entries.setLong(slot, createEntry(row, getEntryNumRows(entry) + 1));
+            }
+
+            keys.finish();
+            entries.finish();
+            nextRows.finish();
+        }
+
+        /**
+         * Returns the first row holding the given cell, or -1 if there is
+         * none.
+         */
+        int getFirstRow(long cell) {
+            return getEntryFirstRow(entries.getLong(findSlot(cell)));
+        }
+
+        int getNumRows(long cell) {
+            return getEntryNumRows(entries.getLong(findSlot(cell)));
+        }
+
+        /**
+         * Returns the next row holding the same cell as the given row, or -1
+         * if there is none.
+         */
+        int getNextRow(int row) {
+            return nextRows.getInt(row) - 1;
+        }
+
+        private static long createEntry(int firstRow, int numRows) {
+            return ((long) numRows << 32) | (firstRow + 1);
+        }
+
+        private static int getEntryFirstRow(long entry) {
+            return (int) entry - 1;
+        }
+
+        private static int getEntryNumRows(long entry) {
+            return (int) (entry >>> 32);
+        }
+
+        private void allocate(long capacity) throws IOException {
+            keys = new MappedArray(MappedArray.LONG_SIZE);
+            entries = new MappedArray(MappedArray.LONG_SIZE);
+            mask = capacity - 1;
+        }
+
+        private void grow() throws IOException {
+            MappedArray oldKeys = keys;
+            MappedArray oldEntries = entries;
+            long oldCapacity = mask + 1;
+
+            allocate(oldCapacity * 2);
+            for (long slot = 0; slot < oldCapacity; ++slot) {
+                long entry = oldEntries.getLong(slot);
+                if (entry != 0) {
+                    long newSlot = findSlot(oldKeys.getLong(slot));
+                    keys.setLong(newSlot, oldKeys.getLong(slot));
+                    entries.setLong(newSlot, entry);
+                }
+            }
+
+            oldKeys.finish();
+            oldEntries.finish();
+        }
+
+        /**
+         * Returns the slot of the given cell, or the empty slot where it
+         * would be inserted.
+         */
+        private long findSlot(long cell) {
+            long hash = cell * 0x9E3779B97F4A7C15L;
+            long slot = (hash ^ (hash >>> 32)) & mask;
+            while (entries.getLong(slot) != 0 && keys.getLong(slot) != cell)
+                slot = (slot + 1) & mask;
+            return slot;
+        }
+    }
+
+    private final Functor functor;
+    private final MappedArray[] columns;
+    private final int numRows;
+
+    // One index per argument position, null until it has been built
+    private final AtomicReferenceArray<ColumnIndex> indexes;
+
+    // Number of calls in which the argument at the position was bound
+    // without being indexed
+    private final AtomicIntegerArray boundCalls;
+
+    private FactTable(Functor functor, MappedArray[] columns, int numRows) throws IOException {
+        this.functor = functor;
+        this.columns = columns;
+        this.numRows = numRows;
+
+        indexes = new AtomicReferenceArray<ColumnIndex>(columns.length);
+        boundCalls = new AtomicIntegerArray(columns.length);
+
+        if (columns.length > 0)
+            indexes.set(0, new ColumnIndex(columns[0], numRows));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+
+        Term[] arguments = new Term[columns.length];
+        for (int row = 0; row < numRows; ++row) {
+            for (int i = 0; i < arguments.length; ++i)
+                arguments[i] = getTerm(row, i);
+
+            builder.append(functor.getName());
+            builder.append('(');
+            for (int i = 0; i < arguments.length; ++i) {
+                builder.append(arguments[i]);
+
+                if (i + 1 != arguments.length)
+                    builder.append(',');
+            }
+            builder.append(").\n");
+        }
+
+        return builder.toString();
+    }
+
+    public Functor getFunctor() {
+        return functor;
+    }
+
+    public String getFullName() {
+        return functor.getFullName();
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    /**
+     * Returns the argument at the given position in a row.
+     */
+    public Term getTerm(int row, int argument) {
+        if (row < 0 || row >= numRows)
+            throw new IllegalArgumentException("row must be one of the table's rows");
+
+        return getTerm(columns[argument].getLong(row));
+    }
+
+    /**
+     * Returns the rows which can match a goal with the given arguments. They
+     * match exactly unless a variable occurs more than once among the
+     * arguments, since only atoms and integers are compared. The arguments
+     * must already be dereferenced.
+     *
+     * The most selective of the available indexes is used, and the call is
+     * recorded in order to build better indexes in the future.
+     */
+    public Rows find(Term[] arguments) {
+        assert arguments.length == columns.length;
+
+        long[] cells = new long[arguments.length];
+        ColumnIndex bestIndex = null;
+        long bestCell = NO_CELL;
+        int bestNumRows = numRows;
+
+        for (int i = 0; i < arguments.length; ++i) {
+            cells[i] = getCell(arguments[i]);
+            if (cells[i] == NO_CELL) {
+                // A structure or a large integer matches no row at all
+                if (ClauseIndex.getKey(arguments[i]) != ClauseIndex.NO_KEY)
+                    return new Rows(cells, null, -1);
+                continue;
+            }
+
+            ColumnIndex index = indexes.get(i);
+            if (index != null && index.getNumRows(cells[i]) < bestNumRows) {
+                bestIndex = index;
+                bestCell = cells[i];
+                bestNumRows = index.getNumRows(cells[i]);
+            }
+        }
+
+        if (bestNumRows > SELECTIVE_ROWS)
+            recordCall(cells);
+
+        if (bestIndex == null)
+            return new Rows(cells, null, numRows > 0 ? 0 : -1);
+        return new Rows(cells, bestIndex, bestIndex.getFirstRow(bestCell));
+    }
+
+    /**
+     * Records a call which was not answered selectively by the existing
+     * indexes, building new indexes once the threshold is reached. If an
+     * index can not be built, the calls keep scanning the rows.
+     */
+    private void recordCall(long[] cells) {
+        for (int i = 0; i < cells.length; ++i) {
+            if (cells[i] == NO_CELL || indexes.get(i) != null)
+                continue;
+
+            if (boundCalls.incrementAndGet(i) == INDEX_THRESHOLD) {
+                try {
+                    // If another thread builds the same index concurrently,
+                    // one of them simply wins
+                    indexes.compareAndSet(i, null, new ColumnIndex(columns[i], numRows));
+                } catch (IOException e) {
+                    boundCalls.set(i, Integer.MIN_VALUE);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether a term can be stored in a fact table, which is the case
+     * for atoms and integers of less than 63 bits.
+     */
+    public static boolean isStorable(Term term) {
+        return getCell(term) != NO_CELL;
+    }
+
+    /**
+     * Returns the cell storing a term, or NO_CELL if the term can not be
+     * stored. Atoms are stored as their id shifted left, integers as their
+     * value shifted left and with the lowest bit set.
+     */
+    static long getCell(Term term) {
+        if (term instanceof Atom)
+            return (long) ((Atom) term).getId() << 1;
+
+        if (term instanceof IntegerTerm) {
+            IntegerTerm integer = (IntegerTerm) term;
+            if (!integer.isSmall())
+                return NO_CELL;
+
+            long value = integer.longValue();
+            if (value < Long.MIN_VALUE >> 1 || value > Long.MAX_VALUE >> 1)
+                return NO_CELL;
+            return (value << 1) | 1;
+        }
+
+        return NO_CELL;
+    }
+
+    private static Term getTerm(long cell) {
+        if ((cell & 1) != 0)
+            return IntegerTerm.valueOf(cell >> 1);
+        return SymbolTable.getAtom((int) (cell >>> 1));
+    }
+}
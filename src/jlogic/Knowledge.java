@@ -1,52 +1,344 @@
 package jlogic;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+import jlogic.term.Functor;
+import jlogic.term.SymbolTable;
+
+/**
+ * The predicates of a program, which queries are evaluated against.
+ *
+ * All fields of a knowledge base are final, so it is safely published to
+ * other threads by any means. Many queries may then run on it at once, each
+ * with its own bindings and variables. The state changed by queries is
+ * thread-safe: predicates build their indexes just in time, and complete
+ * answer tables are added to the shared AnswerTables.
+ *
+ * Clauses may be added and removed at any time, also by queries. Calls which
+ * have started already are not affected, as described in Predicate. Since
+ * the answers of tabled calls may depend on the changed predicate, all answer
+ * tables are dropped on every change.
+ *
+ * Large sets of facts may be kept outside of the heap as fact tables instead
+ * of predicates. Facts can not be added to them or removed from them.
+ */
 public final class Knowledge {
-    private final HashMap<String, Predicate> predicates = new HashMap<String, Predicate>();
+    /**
+     * Values indexed by the id of their functor. Values are published by
+     * setting their element, and the array is only replaced when it grows,
+     * by doubling its length. After construction, values are only set while
+     * holding the lock on the knowledge base.
+     */
+    private static final class FunctorArray<T> {
+        private final AtomicReference<AtomicReferenceArray<T>> values;
+
+        FunctorArray(int length) {
+            values = new AtomicReference<AtomicReferenceArray<T>>(
+                    new AtomicReferenceArray<T>(length));
+        }
+
+        T get(Functor functor) {
+            AtomicReferenceArray<T> values = this.values.get();
+            int id = functor.getId();
+            return id < values.length() ? values.get(id) : null;
+        }
+
+        void set(Functor functor, T value) {
+            AtomicReferenceArray<T> values = this.values.get();
+            int id = functor.getId();
+            if (id >= values.length()) {
+                AtomicReferenceArray<T> newValues =
+                        new AtomicReferenceArray<T>(Math.max(id + 1, values.length() * 2));
+                for (int i = 0; i < values.length(); ++i)
+                    newValues.set(i, values.get(i));
+
+                this.values.set(newValues);
+                values = newValues;
+            }
+            values.set(id, value);
+        }
+    }
+
+    // Predicates in the order in which they were first defined
+    private final ConcurrentLinkedQueue<Predicate> predicates =
+            new ConcurrentLinkedQueue<Predicate>();
+
+    // Predicates indexed by the id of their functor
+    private final FunctorArray<Predicate> predicatesById;
+
+    // Fact tables in the order in which they were added, and indexed by the
+    // id of their functor like the predicates
+    private final ConcurrentLinkedQueue<FactTable> factTables =
+            new ConcurrentLinkedQueue<FactTable>();
+    private final FunctorArray<FactTable> factTablesById = new FunctorArray<FactTable>(0);
+
+    // Functors declared as tabled. After construction, it is only accessed
+    // while holding the lock on this knowledge base.
+    private final HashSet<Functor> tabledPredicates;
+
+    // Answers of the calls to tabled predicates made so far
+    private final AnswerTables answerTables = new AnswerTables();
 
     public Knowledge(Rule[] rules) {
-        HashMap<String, ArrayList<Rule>> rulesByName = groupRules(rules);
+        this(rules, new Functor[0]);
+    }
 
-        for (Map.Entry<String, ArrayList<Rule>> entry : rulesByName.entrySet()) {
-            Rule[] ruleArray = new Rule[entry.getValue().size()];
-            predicates.put(entry.getKey(), new Predicate(entry.getValue().toArray(ruleArray)));
+    /**
+     * @param tabledPredicates
+     *        The functors of the predicates to be evaluated with tabling.
+     */
+    public Knowledge(Rule[] rules, Functor[] tabledPredicates) {
+        this(createPredicates(rules, new HashSet<Functor>(Arrays.asList(tabledPredicates))),
+                tabledPredicates);
+    }
+
+    /**
+     * Creates a knowledge base of predicates which were created already, e.g.
+     * read from a snapshot. Every predicate must have a different functor.
+     */
+    Knowledge(Predicate[] predicates, Functor[] tabledPredicates) {
+        this.tabledPredicates = new HashSet<Functor>(Arrays.asList(tabledPredicates));
+
+        int maxId = -1;
+        for (Predicate predicate : predicates)
+            maxId = Math.max(maxId, predicate.getFunctor().getId());
+
+        predicatesById = new FunctorArray<Predicate>(maxId + 1);
+        for (Predicate predicate : predicates) {
+            if (predicatesById.get(predicate.getFunctor()) != null)
+                throw new IllegalArgumentException("predicates must have different functors");
+            predicatesById.set(predicate.getFunctor(), predicate);
         }
+        this.predicates.addAll(Arrays.asList(predicates));
     }
 
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
 
-        for (Map.Entry<String, Predicate> entry : predicates.entrySet()) {
-            builder.append(entry.getKey());
-            builder.append(":\n");
-            builder.append(entry.getValue());
+        for (Predicate predicate : predicates) {
+            builder.append(predicate.getFullName());
+            builder.append(predicate.isTabled() ? " (tabled):\n" : ":\n");
+            builder.append(predicate);
+        }
+
+        for (FactTable factTable : factTables) {
+            builder.append(factTable.getFullName());
+            builder.append(" (fact table):\n");
+            builder.append(factTable);
         }
 
         return builder.toString();
     }
 
-    public Predicate getPredicate(String fullName) {
-        return predicates.get(fullName);
+    public Predicate getPredicate(Functor functor) {
+        return predicatesById.get(functor);
     }
 
     public Predicate getPredicate(String name, int arity) {
-        return predicates.get(name + '/' + arity);
+        return getPredicate(SymbolTable.getFunctor(name, arity));
+    }
+
+    public FactTable getFactTable(Functor functor) {
+        return factTablesById.get(functor);
+    }
+
+    /**
+     * Adds the facts of a predicate as a fact table. There must be no
+     * predicate or fact table with its functor yet, and it must not be
+     * tabled. Its facts can not be changed afterwards.
+     */
+    public synchronized void addFactTable(FactTable factTable) {
+        Functor functor = factTable.getFunctor();
+        if (getPredicate(functor) != null || getFactTable(functor) != null)
+            throw new IllegalArgumentException(functor.getFullName() + " is defined already");
+        if (tabledPredicates.contains(functor))
+            throw new IllegalArgumentException(functor.getFullName() + " is tabled");
+
+        factTables.add(factTable);
+        factTablesById.set(functor, factTable);
+        answerTables.invalidate();
+    }
+
+    /**
+     * Returns the fact tables in the order in which they were added.
+     */
+    FactTable[] getFactTables() {
+        return factTables.toArray(new FactTable[0]);
+    }
+
+    /**
+     * Adds a clause after the existing clauses of its predicate, which is
+     * created if it does not exist yet.
+     */
+    public void assertz(Rule clause) {
+        add(clause, true);
+    }
+
+    /**
+     * Adds clauses after the existing clauses of their predicates, which are
+     * created if they do not exist yet. The clauses may belong to different
+     * predicates.
+     */
+    public void assertz(Rule[] clauses) {
+        for (Map.Entry<Functor, ArrayList<Rule>> entry : groupRules(clauses).entrySet()) {
+            Rule[] ruleArray = new Rule[entry.getValue().size()];
+            getOrCreatePredicate(entry.getKey()).addAll(entry.getValue().toArray(ruleArray));
+        }
+        answerTables.invalidate();
+    }
+
+    /**
+     * Adds a clause before the existing clauses of its predicate, which is
+     * created if it does not exist yet.
+     */
+    public void asserta(Rule clause) {
+        add(clause, false);
+    }
+
+    /**
+     * Removes a clause, which is compared by identity. Its predicate remains,
+     * even if it has no clauses left.
+     *
+     * @return Whether the clause was found.
+     */
+    public boolean retract(Rule clause) {
+        if (clause == null)
+            throw new IllegalArgumentException("clause must not be null");
+
+        Predicate predicate = getPredicate(clause.getHead().getFunctor());
+        if (predicate == null || !predicate.remove(clause))
+            return false;
+
+        answerTables.invalidate();
+        return true;
+    }
+
+    /**
+     * Declares the predicate with the given functor as tabled, as a table
+     * directive does. This is only possible before the predicate exists, and
+     * not for fact tables.
+     *
+     * @return Whether the predicate is tabled now.
+     */
+    public synchronized boolean table(Functor functor) {
+        Predicate predicate = getPredicate(functor);
+        if (predicate != null)
+            return predicate.isTabled();
+        if (getFactTable(functor) != null)
+            return false;
+
+        tabledPredicates.add(functor);
+        return true;
+    }
+
+    /**
+     * Returns the predicates in the order in which they were first defined.
+     */
+    Predicate[] getPredicates() {
+        return predicates.toArray(new Predicate[0]);
+    }
+
+    /**
+     * Returns the functors declared as tabled, including those of predicates
+     * which do not exist yet.
+     */
+    synchronized Functor[] getTabledPredicates() {
+        return tabledPredicates.toArray(new Functor[tabledPredicates.size()]);
+    }
+
+    synchronized boolean isTabled(Functor functor) {
+        return tabledPredicates.contains(functor);
+    }
+
+    /**
+     * Returns the number of clauses of all predicates, including the rows of
+     * the fact tables.
+     */
+    public long getNumClauses() {
+        long result = 0;
+        for (Predicate predicate : predicates)
+            result += predicate.getClauses().length;
+        for (FactTable factTable : factTables)
+            result += factTable.getNumRows();
+        return result;
+    }
+
+    public AnswerTables getAnswerTables() {
+        return answerTables;
+    }
+
+    /**
+     * Returns an estimate of the number of bytes used by the clause indexes of
+     * all predicates.
+     */
+    public long getIndexMemory() {
+        long result = 0;
+        for (Predicate predicate : predicates)
+            result += predicate.getIndexMemory();
+        return result;
+    }
+
+    private void add(Rule clause, boolean atEnd) {
+        if (clause == null)
+            throw new IllegalArgumentException("clause must not be null");
+
+        getOrCreatePredicate(clause.getHead().getFunctor()).add(clause, atEnd);
+        answerTables.invalidate();
+    }
+
+    private Predicate getOrCreatePredicate(Functor functor) {
+        Predicate predicate = getPredicate(functor);
+        if (predicate != null)
+            return predicate;
+
+        synchronized (this) {
+            // Another thread may have created it in the meantime
+            predicate = getPredicate(functor);
+            if (predicate != null)
+                return predicate;
+            if (getFactTable(functor) != null)
+                throw new IllegalArgumentException("the facts of the fact table " +
+                        functor.getFullName() + " can not be changed");
+
+            predicate = new Predicate(functor, tabledPredicates.contains(functor));
+
+            predicates.add(predicate);
+            predicatesById.set(functor, predicate);
+            return predicate;
+        }
+    }
+
+    private static Predicate[] createPredicates(Rule[] rules, HashSet<Functor> tabledPredicates) {
+        LinkedHashMap<Functor, ArrayList<Rule>> rulesByFunctor = groupRules(rules);
+
+        Predicate[] result = new Predicate[rulesByFunctor.size()];
+        int i = 0;
+        for (Map.Entry<Functor, ArrayList<Rule>> entry : rulesByFunctor.entrySet()) {
+            Rule[] ruleArray = new Rule[entry.getValue().size()];
+            result[i++] = new Predicate(entry.getValue().toArray(ruleArray),
+                    tabledPredicates.contains(entry.getKey()));
+        }
+        return result;
     }
 
-    private static HashMap<String, ArrayList<Rule>> groupRules(Rule[] rules) {
-        HashMap<String, ArrayList<Rule>> result = new HashMap<String, ArrayList<Rule>>();
+    private static LinkedHashMap<Functor, ArrayList<Rule>> groupRules(Rule[] rules) {
+        LinkedHashMap<Functor, ArrayList<Rule>> result = new LinkedHashMap<Functor, ArrayList<Rule>>();
 
         for (Rule rule : rules) {
             assert rule != null;
 
-            ArrayList<Rule> list = result.get(rule.getHead().getFullName());
+            ArrayList<Rule> list = result.get(rule.getHead().getFunctor());
             if (list == null) {
                 list = new ArrayList<Rule>();
-                result.put(rule.getHead().getFullName(), list);
+                result.put(rule.getHead().getFunctor(), list);
             }
             list.add(rule);
         }
@@ -0,0 +1,230 @@
+package jlogic;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import jlogic.read.Lexer;
+import jlogic.read.Parser;
+import jlogic.read.ReadException;
+import jlogic.term.Functor;
+
+/**
+ * Loads the rules and facts of a file into a knowledge base while parsing it,
+ * so that even files of several gigabytes never have to be held in memory as
+ * a whole besides the knowledge base itself.
+ *
+ * The clauses of each predicate are collected and added in batches. A batch
+ * is added once it has a quarter of the predicate's size, so that the
+ * predicate's clauses are copied only a constant number of times on average,
+ * while the batches and the index entries built for them stay small compared
+ * to the predicates. Clauses only become visible to queries once their batch
+ * is added.
+ *
+ * The facts of predicates declared by a fact_table directive are collected
+ * in fact tables, which are added once the whole file has been read.
+ */
+public final class KnowledgeLoader {
+    /**
+     * Receives the progress of loading a file.
+     */
+    public interface Progress {
+        /**
+         * @param numClauses
+         *        The number of clauses read so far.
+         * @param numBytes
+         *        The number of bytes read so far.
+         * @param totalBytes
+         *        The size of the file.
+         */
+        void report(long numClauses, long numBytes, long totalBytes) throws IOException;
+    }
+
+    // Smallest number of clauses added to a predicate at once
+    private static final int MIN_BATCH_SIZE = 4096;
+
+    // Number of clauses between two progress reports
+    private static final long PROGRESS_INTERVAL = 1000000;
+
+    /**
+     * Counts the bytes read from a stream.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count = 0;
+
+        public CountingInputStream(InputStream input) {
+            super(input);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result = super.read();
+            if (result != -1)
+                ++count;
+            return result;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int result = super.read(buffer, offset, length);
+            if (result != -1)
+                count += result;
+            return result;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long result = super.skip(n);
+            count += result;
+            return result;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+
+    private final Knowledge knowledge;
+
+    // Clauses which have not been added yet, by predicate
+    private final LinkedHashMap<Functor, ArrayList<Rule>> pending =
+            new LinkedHashMap<Functor, ArrayList<Rule>>();
+
+    // Facts of the fact tables declared so far, which are added at the end
+    private final LinkedHashMap<Functor, FactTable.Builder> builders =
+            new LinkedHashMap<Functor, FactTable.Builder>();
+
+    private long numClauses = 0;
+
+    private KnowledgeLoader(Knowledge knowledge) {
+        this.knowledge = knowledge;
+    }
+
+    /**
+     * Adds the clauses of a file to the given knowledge base, after the
+     * existing clauses of their predicates. If the file can not be read
+     * completely, the clauses before the error are added nevertheless.
+     *
+     * @param progress
+     *        Receives a report every million clauses, or null.
+     * @return The number of clauses added.
+     */
+    public static long load(Knowledge knowledge, String path, Progress progress)
+            throws ReadException, IOException {
+        if (knowledge == null)
+            throw new IllegalArgumentException("knowledge must not be null");
+
+        long totalBytes = new File(path).length();
+
+        CountingInputStream stream = new CountingInputStream(new FileInputStream(path));
+        KnowledgeLoader loader = new KnowledgeLoader(knowledge);
+        try {
+            Lexer lexer = new Lexer(path, new InputStreamReader(stream));
+            Parser parser = new Parser(lexer);
+            ArrayList<Functor> tabledPredicates = new ArrayList<Functor>();
+            ArrayList<Functor> factTables = new ArrayList<Functor>();
+
+            while (true) {
+                Rule rule = parser.parseNextRule(tabledPredicates, factTables);
+                loader.createFactTables(factTables, parser);
+                loader.table(tabledPredicates, parser);
+                if (rule == null)
+                    break;
+
+                FactTable.Builder builder = loader.builders.get(rule.getHead().getFunctor());
+                if (builder != null) {
+                    parser.addFact(builder, rule);
+                    ++loader.numClauses;
+                } else
+                    loader.add(rule, parser);
+
+                if (progress != null && loader.numClauses % PROGRESS_INTERVAL == 0)
+                    progress.report(loader.numClauses, stream.getCount(), totalBytes);
+            }
+        } finally {
+            loader.flush();
+            stream.close();
+        }
+
+        return loader.numClauses;
+    }
+
+    /**
+     * Starts collecting the facts of the fact table directives read so far.
+     */
+    private void createFactTables(ArrayList<Functor> factTables, Parser parser)
+            throws ReadException, IOException {
+        for (Functor functor : factTables) {
+            if (builders.containsKey(functor))
+                continue;
+            if (knowledge.getPredicate(functor) != null || pending.containsKey(functor) ||
+                    knowledge.getFactTable(functor) != null)
+                throw new ReadException(parser.getLocation(), "Can not store " +
+                        functor.getFullName() + " in a fact table, since it is defined already");
+            if (knowledge.isTabled(functor))
+                throw new ReadException(parser.getLocation(), "Can not store " +
+                        functor.getFullName() + " in a fact table, since it is tabled");
+
+            builders.put(functor, new FactTable.Builder(functor));
+        }
+        factTables.clear();
+    }
+
+    /**
+     * Declares the predicates of the table directives read so far as tabled.
+     */
+    private void table(ArrayList<Functor> tabledPredicates, Parser parser)
+            throws ReadException {
+        for (Functor functor : tabledPredicates) {
+            if (builders.containsKey(functor) || !knowledge.table(functor))
+                throw new ReadException(parser.getLocation(), "Can not table " +
+                        functor.getFullName() + ", which is defined already");
+        }
+        tabledPredicates.clear();
+    }
+
+    private void add(Rule rule, Parser parser) throws ReadException {
+        Functor functor = rule.getHead().getFunctor();
+        if (knowledge.getFactTable(functor) != null)
+            throw new ReadException(parser.getLocation(), "Can not add clauses to the fact table " +
+                    functor.getFullName());
+
+        ArrayList<Rule> list = pending.get(functor);
+        if (list == null) {
+            list = new ArrayList<Rule>();
+            pending.put(functor, list);
+        }
+        list.add(rule);
+        ++numClauses;
+
+        Predicate predicate = knowledge.getPredicate(functor);
+        int numExisting = predicate != null ? predicate.getClauses().length : 0;
+        if (list.size() >= Math.max(MIN_BATCH_SIZE, numExisting / 4)) {
+            knowledge.assertz(list.toArray(new Rule[list.size()]));
+            pending.remove(functor);
+        }
+    }
+
+    /**
+     * Adds all pending clauses, and the fact tables.
+     */
+    private void flush() throws IOException {
+        ArrayList<Rule> rules = new ArrayList<Rule>();
+        for (Map.Entry<Functor, ArrayList<Rule>> entry : pending.entrySet())
+            rules.addAll(entry.getValue());
+        pending.clear();
+
+        if (!rules.isEmpty())
+            knowledge.assertz(rules.toArray(new Rule[rules.size()]));
+
+        for (FactTable.Builder builder : builders.values())
+            knowledge.addFactTable(builder.build());
+        builders.clear();
+    }
+}
@@ -0,0 +1,641 @@
+package jlogic;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+
+import jlogic.term.AnonymousVariable;
+import jlogic.term.Atom;
+import jlogic.term.Functor;
+import jlogic.term.IntegerTerm;
+import jlogic.term.ListTerm;
+import jlogic.term.SlotVariable;
+import jlogic.term.Structure;
+import jlogic.term.SymbolTable;
+import jlogic.term.Term;
+import jlogic.term.TermFactory;
+
+/**
+ * A binary image of a knowledge base, which can be loaded much faster than
+ * its source since nothing has to be parsed, grouped or indexed.
+ *
+ * A snapshot holds the names of the atoms, functors and variables it uses,
+ * followed by the predicates with their compiled clauses and all indexes
+ * built so far, and the rows of the fact tables. Symbols are referred to by
+ * their position in the snapshot, since symbol ids differ between runs, and
+ * are interned when it is loaded. Ground structures and lists occurring more
+ * than once as arguments are stored once and shared by all their
+ * occurrences. Integers are stored with a variable number of bytes, so small
+ * ones take a single byte.
+ *
+ * A snapshot is read through a memory map of the file, and only creates the
+ * objects making up the knowledge base itself. It is only valid for the
+ * version of this class that wrote it.
+ */
+public final class KnowledgeSnapshot {
+    private static final int MAGIC = 0x4A4C4B53;
+    private static final int FORMAT_VERSION = 2;
+
+    // Size of the part of the file which is mapped at once
+    private static final long WINDOW_SIZE = 1L << 30;
+
+    // Bytes which a number may take at most
+    private static final int MAX_NUMBER_SIZE = 10;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // Tags of the terms
+    private static final byte ATOM = 0;
+    private static final byte STRUCTURE = 1;
+    private static final byte LIST = 2;
+    private static final byte INTEGER = 3;
+    private static final byte BIG_INTEGER = 4;
+    private static final byte VARIABLE = 5;
+    private static final byte ANONYMOUS_VARIABLE = 6;
+    // A term which is stored for later references, and a reference to one
+    private static final byte SHARED = 7;
+    private static final byte REFERENCE = 8;
+
+    // Flags of the clauses
+    private static final byte FACT = 1;
+    private static final byte CUTTING = 2;
+
+    // Static class
+    private KnowledgeSnapshot() {
+        assert false;
+    }
+
+    /**
+     * Writes a snapshot of the given knowledge base. Predicates which are
+     * changed in the meantime are written in either state, but complete.
+     */
+    public static void write(Knowledge knowledge, String path) throws IOException {
+        if (knowledge == null)
+            throw new IllegalArgumentException("knowledge must not be null");
+
+        Predicate[] predicates = knowledge.getPredicates();
+        Rule[][] clauses = new Rule[predicates.length][];
+        for (int i = 0; i < predicates.length; ++i)
+            clauses[i] = predicates[i].getClauses();
+        Functor[] tabledPredicates = knowledge.getTabledPredicates();
+        FactTable[] factTables = knowledge.getFactTables();
+
+        Writer writer = new Writer(path);
+        try {
+            writer.writeSymbols(predicates, clauses, tabledPredicates, factTables);
+
+            writer.writeNumber(tabledPredicates.length);
+            for (Functor functor : tabledPredicates)
+                writer.writeNumber(writer.functors.get(functor));
+
+            writer.writeNumber(predicates.length);
+            for (int i = 0; i < predicates.length; ++i)
+                writer.writePredicate(predicates[i], clauses[i]);
+
+            writer.writeNumber(factTables.length);
+            for (FactTable factTable : factTables)
+                writer.writeFactTable(factTable);
+        } finally {
+            writer.output.close();
+        }
+    }
+
+    /**
+     * Loads a knowledge base from a snapshot.
+     *
+     * @throws IOException
+     *         If the file can not be read, or is not a valid snapshot.
+     */
+    public static Knowledge read(String path) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "r");
+        try {
+            Reader reader = new Reader(path, file.getChannel());
+            try {
+                return reader.readKnowledge();
+            } catch (BufferUnderflowException e) {
+                throw reader.createException("it ends unexpectedly");
+            } catch (IllegalArgumentException e) {
+                throw reader.createException(e.getMessage());
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    private static final class Writer {
+        final DataOutputStream output;
+
+        // Positions of the symbols in the snapshot
+        final LinkedHashMap<Atom, Integer> atoms = new LinkedHashMap<Atom, Integer>();
+        final LinkedHashMap<Functor, Integer> functors = new LinkedHashMap<Functor, Integer>();
+        final LinkedHashMap<String, Integer> names = new LinkedHashMap<String, Integer>();
+
+        // Positions of the shared terms written so far
+        final HashMap<Term, Integer> sharedTerms = new HashMap<Term, Integer>();
+
+        Writer(String path) throws IOException {
+            output = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(path), BUFFER_SIZE));
+        }
+
+        void writeSymbols(Predicate[] predicates, Rule[][] clauses, Functor[] tabledPredicates,
+                FactTable[] factTables) throws IOException {
+            for (Functor functor : tabledPredicates)
+                addFunctor(functor);
+            for (int i = 0; i < predicates.length; ++i) {
+                addFunctor(predicates[i].getFunctor());
+                for (Rule clause : clauses[i]) {
+                    addSymbols(clause.getHead());
+                    if (!clause.isFact()) {
+                        for (Term goal : clause.getBody())
+                            addSymbols(goal);
+                    }
+                }
+            }
+            for (FactTable factTable : factTables) {
+                addFunctor(factTable.getFunctor());
+                for (int row = 0; row < factTable.getNumRows(); ++row) {
+                    for (int i = 0; i < factTable.getFunctor().getArity(); ++i)
+                        addSymbols(factTable.getTerm(row, i));
+                }
+            }
+
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+
+            writeNumber(atoms.size());
+            for (Atom atom : atoms.keySet())
+                writeString(atom.getName());
+
+            writeNumber(functors.size());
+            for (Functor functor : functors.keySet()) {
+                writeNumber(atoms.get(functor.getAtom()));
+                writeNumber(functor.getArity());
+            }
+
+            writeNumber(names.size());
+            for (String name : names.keySet())
+                writeString(name);
+        }
+
+        void addSymbols(Term term) {
+            if (term instanceof Atom) {
+                addAtom((Atom) term);
+            } else if (term instanceof Structure) {
+                Structure structure = (Structure) term;
+                addFunctor(structure.getFunctor());
+                for (Term argument : structure.getArguments())
+                    addSymbols(argument);
+            } else if (term instanceof ListTerm) {
+                ListTerm list = (ListTerm) term;
+                for (int i = 0; i < list.size(); ++i)
+                    addSymbols(list.get(i));
+                addSymbols(list.getTail());
+            } else if (term instanceof SlotVariable) {
+                String name = ((SlotVariable) term).getName();
+                if (!names.containsKey(name))
+                    names.put(name, names.size());
+            }
+        }
+
+        void addAtom(Atom atom) {
+            if (!atoms.containsKey(atom))
+                atoms.put(atom, atoms.size());
+        }
+
+        void addFunctor(Functor functor) {
+            addAtom(functor.getAtom());
+            if (!functors.containsKey(functor))
+                functors.put(functor, functors.size());
+        }
+
+        void writePredicate(Predicate predicate, Rule[] clauses) throws IOException {
+            writeNumber(functors.get(predicate.getFunctor()));
+            output.writeBoolean(predicate.isTabled());
+
+            writeNumber(clauses.length);
+            IdentityHashMap<Rule, Integer> positions = new IdentityHashMap<Rule, Integer>();
+            for (int i = 0; i < clauses.length; ++i) {
+                writeClause(clauses[i]);
+                positions.put(clauses[i], i);
+            }
+
+            // No indexes are written if the clauses were changed since, so
+            // that the first argument is indexed when reading
+            ClauseIndex[] indexes = predicate.getIndexes(clauses);
+            if (indexes == null) {
+                writeNumber(0);
+                return;
+            }
+
+            writeNumber(indexes.length);
+            for (ClauseIndex index : indexes) {
+                int[] arguments = index.getArguments();
+                writeNumber(arguments.length);
+                for (int argument : arguments)
+                    writeNumber(argument);
+
+                writeClauses(index.getVariableClauses(), positions);
+                Rule[][] entries = index.getEntries();
+                writeNumber(entries.length);
+                for (Rule[] entry : entries)
+                    writeClauses(entry, positions);
+            }
+        }
+
+        /**
+         * Writes the rows of a fact table. Its indexes are not written, since
+         * they are outside of the heap anyway.
+         */
+        void writeFactTable(FactTable factTable) throws IOException {
+            writeNumber(functors.get(factTable.getFunctor()));
+            writeNumber(factTable.getNumRows());
+            for (int row = 0; row < factTable.getNumRows(); ++row) {
+                for (int i = 0; i < factTable.getFunctor().getArity(); ++i)
+                    writeTerm(factTable.getTerm(row, i), false);
+            }
+        }
+
+        void writeClause(Rule clause) throws IOException {
+            output.writeByte((clause.isFact() ? FACT : 0) | (clause.isCutting() ? CUTTING : 0));
+            writeNumber(clause.getNumVariables());
+
+            writeTerm(clause.getHead(), false);
+            if (!clause.isFact()) {
+                writeNumber(clause.getBody().length);
+                for (Term goal : clause.getBody())
+                    writeTerm(goal, false);
+            }
+        }
+
+        /**
+         * Writes the positions of some clauses, which are in their original
+         * order, as the differences between them.
+         */
+        void writeClauses(Rule[] clauses, IdentityHashMap<Rule, Integer> positions)
+                throws IOException {
+            writeNumber(clauses.length);
+            int previous = 0;
+            for (Rule clause : clauses) {
+                int position = positions.get(clause);
+                writeNumber(position - previous);
+                previous = position;
+            }
+        }
+
+        /**
+         * @param shareable
+         *        Whether the term is an argument, which is stored only once
+         *        if it is ground.
+         */
+        void writeTerm(Term term, boolean shareable) throws IOException {
+            if (shareable && isGroundCompound(term)) {
+                Integer position = sharedTerms.get(term);
+                if (position != null) {
+                    output.writeByte(REFERENCE);
+                    writeNumber(position);
+                    return;
+                }
+                output.writeByte(SHARED);
+            }
+
+            if (term instanceof Atom) {
+                output.writeByte(ATOM);
+                writeNumber(atoms.get(term));
+            } else if (term instanceof Structure) {
+                Structure structure = (Structure) term;
+                output.writeByte(STRUCTURE);
+                writeNumber(functors.get(structure.getFunctor()));
+                for (Term argument : structure.getArguments())
+                    writeTerm(argument, true);
+            } else if (term instanceof ListTerm) {
+                ListTerm list = (ListTerm) term;
+                output.writeByte(LIST);
+                writeNumber(list.size());
+                for (int i = 0; i < list.size(); ++i)
+                    writeTerm(list.get(i), true);
+                writeTerm(list.getTail(), true);
+            } else if (term instanceof IntegerTerm) {
+                IntegerTerm integer = (IntegerTerm) term;
+                if (integer.isSmall()) {
+                    output.writeByte(INTEGER);
+                    // Zigzag encoding, so that small negative values are short
+                    long value = integer.longValue();
+                    writeNumber((value << 1) ^ (value >> 63));
+                } else {
+                    byte[] bytes = integer.bigIntegerValue().toByteArray();
+                    output.writeByte(BIG_INTEGER);
+                    writeNumber(bytes.length);
+                    output.write(bytes);
+                }
+            } else if (term instanceof SlotVariable) {
+                SlotVariable variable = (SlotVariable) term;
+                output.writeByte(VARIABLE);
+                writeNumber(variable.getSlot());
+                writeNumber(names.get(variable.getName()));
+            } else if (term instanceof AnonymousVariable) {
+                output.writeByte(ANONYMOUS_VARIABLE);
+            } else
+                throw new IllegalArgumentException("clauses must not contain " + term);
+
+            // Shared terms are numbered after the terms they contain, in the
+            // order in which reading them completes
+            if (shareable && isGroundCompound(term))
+                sharedTerms.put(term, sharedTerms.size());
+        }
+
+        void writeString(String string) throws IOException {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            writeNumber(bytes.length);
+            output.write(bytes);
+        }
+
+        /**
+         * Writes a non-negative number with seven bits per byte, the lowest
+         * first. The highest bit of a byte is set if more bytes follow.
+         */
+        void writeNumber(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                output.writeByte((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            output.writeByte((int) value);
+        }
+    }
+
+    private static boolean isGroundCompound(Term term) {
+        return (term instanceof Structure && ((Structure) term).isGround())
+                || (term instanceof ListTerm && ((ListTerm) term).isGround());
+    }
+
+    private static final class Reader {
+        private final String path;
+        private final FileChannel channel;
+        private final long size;
+
+        // The mapped part of the file, and its offset in the file
+        private MappedByteBuffer buffer;
+        private long offset = 0;
+
+        private Atom[] atoms;
+        private Functor[] functors;
+        private String[] names;
+
+        private Term[] sharedTerms = new Term[16];
+        private int numSharedTerms = 0;
+
+        // Variables of the clause being read, indexed by their slot
+        private SlotVariable[] variables;
+
+        Reader(String path, FileChannel channel) throws IOException {
+            this.path = path;
+            this.channel = channel;
+
+            size = channel.size();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, WINDOW_SIZE));
+        }
+
+        IOException createException(String reason) {
+            return new IOException(path + " is not a valid knowledge snapshot: " + reason);
+        }
+
+        Knowledge readKnowledge() throws IOException {
+            require(8);
+            if (buffer.getInt() != MAGIC)
+                throw createException("it does not start like one");
+            if (buffer.getInt() != FORMAT_VERSION)
+                throw createException("it has an unsupported format version");
+
+            atoms = new Atom[readCount()];
+            for (int i = 0; i < atoms.length; ++i)
+                atoms[i] = SymbolTable.getAtom(readString());
+
+            functors = new Functor[readCount()];
+            for (int i = 0; i < functors.length; ++i) {
+                Atom atom = get(atoms, readCount());
+                functors[i] = atom.getFunctor(readCount());
+            }
+
+            names = new String[readCount()];
+            for (int i = 0; i < names.length; ++i)
+                names[i] = readString();
+
+            Functor[] tabledPredicates = new Functor[readCount()];
+            for (int i = 0; i < tabledPredicates.length; ++i)
+                tabledPredicates[i] = get(functors, readCount());
+
+            Predicate[] predicates = new Predicate[readCount()];
+            for (int i = 0; i < predicates.length; ++i)
+                predicates[i] = readPredicate();
+
+            Knowledge knowledge = new Knowledge(predicates, tabledPredicates);
+            int numFactTables = readCount();
+            for (int i = 0; i < numFactTables; ++i)
+                knowledge.addFactTable(readFactTable());
+            return knowledge;
+        }
+
+        private FactTable readFactTable() throws IOException {
+            FactTable.Builder builder = new FactTable.Builder(get(functors, readCount()));
+            int numRows = readCount();
+
+            Term[] arguments = new Term[builder.getFunctor().getArity()];
+            for (int row = 0; row < numRows; ++row) {
+                for (int i = 0; i < arguments.length; ++i)
+                    arguments[i] = readTerm();
+                builder.add(arguments);
+            }
+            return builder.build();
+        }
+
+        private Predicate readPredicate() throws IOException {
+            Functor functor = get(functors, readCount());
+            require(1);
+            boolean tabled = buffer.get() != 0;
+
+            Rule[] clauses = new Rule[readCount()];
+            for (int i = 0; i < clauses.length; ++i) {
+                clauses[i] = readClause();
+                if (clauses[i].getHead().getFunctor() != functor)
+                    throw createException("a clause belongs to the wrong predicate");
+            }
+
+            int numIndexes = readCount();
+            if (numIndexes == 0)
+                return new Predicate(functor, clauses, tabled, null);
+
+            ClauseIndex[] indexes = new ClauseIndex[numIndexes];
+            for (int i = 0; i < indexes.length; ++i) {
+                int[] arguments = new int[readCount()];
+                for (int j = 0; j < arguments.length; ++j) {
+                    arguments[j] = readCount();
+                    if (arguments[j] >= functor.getArity())
+                        throw createException("an index is on a missing argument");
+                }
+
+                Rule[] variableClauses = readClauses(clauses);
+                Rule[][] entries = new Rule[readCount()][];
+                for (int j = 0; j < entries.length; ++j)
+                    entries[j] = readClauses(clauses);
+
+                indexes[i] = ClauseIndex.fromEntries(clauses, arguments, entries, variableClauses);
+            }
+            return new Predicate(functor, clauses, tabled, indexes);
+        }
+
+        private Rule readClause() throws IOException {
+            require(1);
+            byte flags = buffer.get();
+            variables = new SlotVariable[readCount()];
+
+            Term head = readTerm();
+            if (!(head instanceof Structure))
+                throw createException("a clause has an invalid head");
+
+            Term[] body = null;
+            if ((flags & FACT) == 0) {
+                body = new Term[readCount()];
+                for (int i = 0; i < body.length; ++i)
+                    body[i] = readTerm();
+            }
+
+            return new Rule((Structure) head, body, variables.length, (flags & CUTTING) != 0);
+        }
+
+        private Rule[] readClauses(Rule[] clauses) throws IOException {
+            Rule[] result = new Rule[readCount()];
+            int position = 0;
+            for (int i = 0; i < result.length; ++i) {
+                position += readCount();
+                result[i] = get(clauses, position);
+            }
+            return result;
+        }
+
+        private Term readTerm() throws IOException {
+            require(1);
+            byte tag = buffer.get();
+            switch (tag) {
+                case ATOM:
+                    return get(atoms, readCount());
+                case STRUCTURE: {
+                    Functor functor = get(functors, readCount());
+                    Term[] arguments = new Term[functor.getArity()];
+                    for (int i = 0; i < arguments.length; ++i)
+                        arguments[i] = readTerm();
+                    return TermFactory.createStructure(functor, arguments);
+                }
+                case LIST: {
+                    Term[] elements = new Term[readCount()];
+                    for (int i = 0; i < elements.length; ++i)
+                        elements[i] = readTerm();
+                    return new ListTerm(elements, readTerm());
+                }
+                case INTEGER: {
+                    long value = readNumber();
+                    return IntegerTerm.valueOf((value >>> 1) ^ -(value & 1));
+                }
+                case BIG_INTEGER: {
+                    byte[] bytes = new byte[readCount()];
+                    require(bytes.length);
+                    buffer.get(bytes);
+                    return IntegerTerm.valueOf(new BigInteger(bytes));
+                }
+                case VARIABLE: {
+                    int slot = readCount();
+                    String name = get(names, readCount());
+                    SlotVariable variable = get(variables, slot);
+                    if (variable == null) {
+                        variable = new SlotVariable(name, slot);
+                        variables[slot] = variable;
+                    }
+                    return variable;
+                }
+                case ANONYMOUS_VARIABLE:
+                    return new AnonymousVariable();
+                case SHARED: {
+                    Term term = readTerm();
+                    if (numSharedTerms == sharedTerms.length) {
+                        Term[] newSharedTerms = new Term[sharedTerms.length * 2];
+                        System.arraycopy(sharedTerms, 0, newSharedTerms, 0, numSharedTerms);
+                        sharedTerms = newSharedTerms;
+                    }
+                    sharedTerms[numSharedTerms++] = term;
+                    return term;
+                }
+                case REFERENCE: {
+                    int position = readCount();
+                    if (position >= numSharedTerms)
+                        throw createException("a term refers to a missing term");
+                    return sharedTerms[position];
+                }
+                default:
+                    throw createException("it contains an unknown term");
+            }
+        }
+
+        private String readString() throws IOException {
+            int length = readCount();
+            require(length);
+
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Reads a number which is used as a count or position.
+         */
+        private int readCount() throws IOException {
+            long value = readNumber();
+            if (value > Integer.MAX_VALUE)
+                throw createException("it contains a number out of range");
+            return (int) value;
+        }
+
+        private long readNumber() throws IOException {
+            require(MAX_NUMBER_SIZE);
+
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = buffer.get();
+                result |= (long) (b & 0x7F) << shift;
+                if (b >= 0)
+                    return result;
+            }
+            throw createException("it contains a number out of range");
+        }
+
+        private <T> T get(T[] array, int position) throws IOException {
+            if (position >= array.length)
+                throw createException("it refers to a missing symbol or clause");
+            return array[position];
+        }
+
+        /**
+         * Makes sure that the given number of bytes are mapped, unless the
+         * file ends before.
+         */
+        private void require(int numBytes) throws IOException {
+            if (buffer.remaining() >= numBytes || offset + buffer.limit() == size)
+                return;
+
+            if (numBytes > WINDOW_SIZE)
+                throw createException("it contains a value which is too long");
+
+            offset += buffer.position();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                    Math.min(size - offset, WINDOW_SIZE));
+        }
+    }
+}
@@ -1,31 +1,65 @@
 package jlogic;
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 
-import jlogic.read.Lexer;
-import jlogic.read.Parser;
 import jlogic.read.ReadException;
 
 public final class Main {
+    private static final String DEFAULT_FILE = "test.jl";
+
+    private static final String USAGE = "" +
+            "Usage: jlogic.Main [file]\n" +
+            "       jlogic.Main --load-snapshot snapshot\n" +
+            "       jlogic.Main --write-snapshot snapshot [file]\n\n" +
+            "Loads the program in `file', or test.jl, and starts the REPL on it.\n" +
+            "--load-snapshot starts the REPL on a snapshot written by --write-snapshot instead,\n" +
+            "which loads much faster than the program it was written from.\n";
+
+    /**
+     * Loads a program, or a snapshot of one, and starts the REPL on it, or
+     * writes a snapshot of a program. See USAGE for the arguments.
+     */
     public static void main(String[] args) throws ReadException, IOException, InterruptedException {
-        Knowledge knowledge = readFile("test.jl");
+        Knowledge knowledge;
+
+        String option = args.length > 0 && args[0].startsWith("--") ? args[0] : null;
+
+        if (option == null && args.length <= 1) {
+            knowledge = readFile(args.length > 0 ? args[0] : DEFAULT_FILE);
+        } else if ("--load-snapshot".equals(option) && args.length == 2) {
+            long start = System.nanoTime();
+            knowledge = KnowledgeSnapshot.read(args[1]);
+            System.out.println("Loaded " + knowledge.getNumClauses() + " clauses from snapshot " +
+                    args[1] + " in " + getMilliseconds(start) + " ms.");
+        } else if ("--write-snapshot".equals(option) && (args.length == 2 || args.length == 3)) {
+            String path = args.length == 3 ? args[2] : DEFAULT_FILE;
+
+            long start = System.nanoTime();
+            knowledge = readFile(path);
+            System.out.println("Loaded " + knowledge.getNumClauses() + " clauses from " + path +
+                    " in " + getMilliseconds(start) + " ms.");
+
+            start = System.nanoTime();
+            KnowledgeSnapshot.write(knowledge, args[1]);
+            System.out.println("Wrote snapshot " + args[1] + " in " + getMilliseconds(start) + " ms.");
+            return;
+        } else {
+            System.err.print(USAGE);
+            System.exit(1);
+            return;
+        }
+
         REPL repl = new REPL(knowledge, System.in, System.out);
         repl.run();
     }
 
     private static Knowledge readFile(String path) throws ReadException, IOException {
-        FileInputStream stream = null;
-        try {
-            stream = new FileInputStream("test.jl");
-            Lexer lexer = new Lexer(path, new InputStreamReader(stream));
-            Parser parser = new Parser(lexer);
-            return parser.parseKnowledge();
-        } finally {
-            if (stream != null)
-                stream.close();
-        }
+        Knowledge knowledge = new Knowledge(new Rule[0]);
+        KnowledgeLoader.load(knowledge, path, null);
+        return knowledge;
     }
 
+    private static long getMilliseconds(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1000000;
+    }
 }
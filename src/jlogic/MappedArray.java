@@ -0,0 +1,121 @@
+package jlogic;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * An array of ints or longs outside of the heap, in a temporary file which is
+ * mapped into memory in segments. The operating system pages it in and out as
+ * needed, so it may be much larger than the heap. It grows as elements are
+ * set, and elements which were never set are zero.
+ *
+ * Setting elements is not synchronized. Once the array has been safely
+ * published, any number of threads may read it.
+ */
+final class MappedArray {
+    public static final int INT_SIZE = 4;
+    public static final int LONG_SIZE = 8;
+
+    // Each segment is mapped separately, since a mapping holds at most 2 GB
+    private static final int SEGMENT_BITS = 27;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+    // Smallest part of a segment which is mapped
+    private static final long MIN_MAPPING = 1 << 16;
+
+    private final int elementShift;
+    private final RandomAccessFile file;
+    private MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+    public MappedArray(int elementSize) throws IOException {
+        if (elementSize != INT_SIZE && elementSize != LONG_SIZE)
+            throw new IllegalArgumentException("elementSize must be INT_SIZE or LONG_SIZE");
+
+        elementShift = elementSize == INT_SIZE ? 2 : 3;
+
+        // The file is removed right away where the system allows it, so that
+        // it disappears with the mapping
+        File path = File.createTempFile("jlogic", ".array");
+        file = new RandomAccessFile(path, "rw");
+        if (!path.delete())
+            path.deleteOnExit();
+    }
+
+    public int getInt(long index) {
+        assert elementShift == 2;
+
+        long offset = index << 2;
+        MappedByteBuffer segment = getSegment(offset, INT_SIZE);
+        return segment != null ? segment.getInt((int) (offset & SEGMENT_MASK)) : 0;
+    }
+
+    public long getLong(long index) {
+        assert elementShift == 3;
+
+        long offset = index << 3;
+        MappedByteBuffer segment = getSegment(offset, LONG_SIZE);
+        return segment != null ? segment.getLong((int) (offset & SEGMENT_MASK)) : 0;
+    }
+
+    public void setInt(long index, int value) throws IOException {
+        assert elementShift == 2;
+
+        long offset = index << 2;
+        mapSegment(offset, INT_SIZE).putInt((int) (offset & SEGMENT_MASK), value);
+    }
+
+    public void setLong(long index, long value) throws IOException {
+        assert elementShift == 3;
+
+        long offset = index << 3;
+        mapSegment(offset, LONG_SIZE).putLong((int) (offset & SEGMENT_MASK), value);
+    }
+
+    /**
+     * Ends setting elements. The mapping stays valid until the array is
+     * garbage collected.
+     */
+    public void finish() throws IOException {
+        file.close();
+    }
+
+    /**
+     * Returns the segment holding the element at the given offset, or null
+     * if it has not been mapped that far.
+     */
+    private MappedByteBuffer getSegment(long offset, int size) {
+        int segment = (int) (offset >>> SEGMENT_BITS);
+        if (segment >= segments.length || segments[segment] == null ||
+                segments[segment].capacity() < (offset & SEGMENT_MASK) + size)
+            return null;
+        return segments[segment];
+    }
+
+    /**
+     * Maps the segment holding the element at the given offset at least that
+     * far. Segments are mapped in parts growing by doubling, so that small
+     * arrays only take little space in the file.
+     */
+    private MappedByteBuffer mapSegment(long offset, int size) throws IOException {
+        int segment = (int) (offset >>> SEGMENT_BITS);
+        if (segment >= segments.length)
+            segments = Arrays.copyOf(segments, Math.max(segment + 1, segments.length * 2));
+
+        long end = (offset & SEGMENT_MASK) + size;
+        MappedByteBuffer buffer = segments[segment];
+        if (buffer == null || buffer.capacity() < end) {
+            long length = buffer != null ? buffer.capacity() : MIN_MAPPING;
+            while (length < end)
+                length *= 2;
+
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE,
+                    (long) segment << SEGMENT_BITS, Math.min(length, 1L << SEGMENT_BITS));
+            segments[segment] = buffer;
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,46 @@
+package jlogic;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import jlogic.term.CopyTerm;
+import jlogic.term.SlotVariable;
+import jlogic.term.Term;
+import jlogic.term.Variable;
+
+/**
+ * Replaces every variable in some terms by a slot variable. Equal variables
+ * get the same slot, and slots are numbered in the order in which the
+ * variables first occur. Terms numbered this way are equal exactly if they
+ * are variants of each other.
+ */
+public final class NumberVariables extends CopyTerm {
+    private final HashMap<Variable, SlotVariable> slots = new HashMap<Variable, SlotVariable>();
+    private final ArrayList<Variable> variables = new ArrayList<Variable>();
+
+    public NumberVariables() {
+        super(false);
+    }
+
+    public int getNumSlots() {
+        return slots.size();
+    }
+
+    /**
+     * Returns the replaced variables, indexed by their slot.
+     */
+    public Variable[] getVariables() {
+        return variables.toArray(new Variable[variables.size()]);
+    }
+
+    @Override
+    protected Term replace(Variable variable) {
+        SlotVariable slotVariable = slots.get(variable);
+        if (slotVariable == null) {
+            slotVariable = new SlotVariable(variable.getName(), slots.size());
+            slots.put(variable, slotVariable);
+            variables.add(variable);
+        }
+        return slotVariable;
+    }
+}
@@ -1,29 +1,156 @@
 package jlogic;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import jlogic.term.Functor;
+import jlogic.term.Term;
+
+/**
+ * All clauses with the same name and arity.
+ *
+ * Besides the index on the first argument, which is built right away, indexes
+ * on other arguments and on combinations of arguments are built just in time:
+ * every call records which of its arguments are bound, and once an argument or
+ * a combination of arguments has been bound often enough without a sufficiently
+ * selective index, an index for it is created. Indexes are immutable and
+ * published atomically, so they may be built while other threads are running
+ * queries on this predicate.
+ *
+ * Clauses may be added and removed while queries are running. Every change
+ * publishes a new version, holding a new array of clauses and indexes which
+ * were updated from the previous ones. Versions are never modified, except
+ * for adding indexes, so a call keeps seeing the clauses of the version it
+ * started with: the logical update view. Changes are serialized, but calls
+ * never wait for them.
+ */
 public final class Predicate {
-    private final Rule[] clauses;
-    private final String name;
-    private final String fullName;
-    private final int arity;
+    // Number of calls with an argument bound before it is indexed
+    private static final int INDEX_THRESHOLD = 8;
+
+    // Only calls which have more candidate clauses than this are recorded
+    private static final int SELECTIVE_CLAUSES = 4;
+
+    // Arguments beyond this position are never indexed, so that a combination
+    // of arguments can be represented as an int mask
+    private static final int MAX_INDEXED_ARGUMENTS = 32;
+
+    /**
+     * The clauses of a predicate at one point in time, with their indexes.
+     */
+    private static final class Version {
+        final Rule[] clauses;
+
+        // Whether a clause contains a cut, which removes the alternative
+        // clauses. Once set, it stays set in later versions, so that calls
+        // which started with an earlier version may check it as well.
+        final boolean cutting;
+
+        // One index per argument position, null until it has been built
+        final AtomicReferenceArray<ClauseIndex> argumentIndexes;
+
+        // Indexes on combinations of arguments, keyed by the mask of their
+        // argument positions
+        final ConcurrentHashMap<Integer, ClauseIndex> combinedIndexes =
+                new ConcurrentHashMap<Integer, ClauseIndex>();
+
+        Version(Rule[] clauses, boolean cutting, int numIndexable) {
+            this.clauses = clauses;
+            this.cutting = cutting;
+            argumentIndexes = new AtomicReferenceArray<ClauseIndex>(numIndexable);
+        }
+    }
+
+    private final Functor functor;
+
+    // Whether calls are answered from answer tables instead of by resolution
+    private final boolean tabled;
+
+    private volatile Version version;
+
+    // Number of calls in which the argument at the position was bound
+    // without being indexed
+    private final AtomicIntegerArray boundCalls;
+
+    // How often combinations of arguments were called without being indexed
+    private final ConcurrentHashMap<Integer, AtomicInteger> combinedCalls =
+            new ConcurrentHashMap<Integer, AtomicInteger>();
 
     public Predicate(Rule[] clauses) {
-        if (clauses == null || clauses.length == 0)
-            throw new IllegalArgumentException("must supply at least one clause per predicate");
+        this(clauses, false);
+    }
+
+    public Predicate(Rule[] clauses, boolean tabled) {
+        this(getFunctor(clauses), clauses, tabled);
+
         if (!isUniformFullName(clauses))
             throw new IllegalArgumentException("every clause in a predicate must have the same arity");
+    }
+
+    /**
+     * Creates a predicate without clauses, which may be added later.
+     */
+    public Predicate(Functor functor, boolean tabled) {
+        this(functor, new Rule[0], tabled);
+    }
+
+    private Predicate(Functor functor, Rule[] clauses, boolean tabled) {
+        this(functor, clauses, tabled, null);
+    }
+
+    /**
+     * Creates a predicate with indexes which were built already, e.g. read
+     * from a snapshot. Indexes on one argument become argument indexes, the
+     * others combined ones. If indexes is null, the first argument is indexed.
+     */
+    Predicate(Functor functor, Rule[] clauses, boolean tabled, ClauseIndex[] indexes) {
+        if (functor == null)
+            throw new IllegalArgumentException("functor must not be null");
+
+        this.functor = functor;
+        this.tabled = tabled;
+
+        boolean cutting = false;
+        for (Rule clause : clauses)
+            cutting = cutting || clause.isCutting();
+
+        int arity = functor.getArity();
+        int numIndexable = Math.min(arity, MAX_INDEXED_ARGUMENTS);
+        version = new Version(clauses, cutting, numIndexable);
+        boundCalls = new AtomicIntegerArray(numIndexable);
+
+        if (indexes == null) {
+            if (arity > 0)
+                version.argumentIndexes.set(0, new ClauseIndex(clauses, 0));
+            return;
+        }
 
-        this.clauses = clauses;
+        for (ClauseIndex index : indexes) {
+            int[] arguments = index.getArguments();
+            int mask = 0;
+            for (int argument : arguments) {
+                if (argument >= numIndexable)
+                    throw new IllegalArgumentException("indexes must be on arguments of " + getFullName());
+                mask |= 1 << argument;
+            }
 
-        name = clauses[0].getHead().getFunctor().getName();
-        fullName = clauses[0].getHead().getFullName();
-        arity = clauses[0].getHead().getArity();
+            if (arguments.length == 1)
+                version.argumentIndexes.set(arguments[0], index);
+            else
+                version.combinedIndexes.put(mask, index);
+        }
     }
 
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
 
-        for (Rule clause : clauses) {
+        for (Rule clause : version.clauses) {
             builder.append(clause);
             builder.append("\n");
         }
@@ -31,27 +158,305 @@ public final class Predicate {
         return builder.toString();
     }
 
+    public Functor getFunctor() {
+        return functor;
+    }
+
+    /**
+     * Returns whether calls to this predicate are evaluated with tabling, as
+     * declared by a table directive.
+     */
+    public boolean isTabled() {
+        return tabled;
+    }
+
+    /**
+     * Returns whether some clause of this predicate contains a cut, so that
+     * its clauses must be tried one after another.
+     */
+    public boolean isCutting() {
+        return version.cutting;
+    }
+
     public String getName() {
-        return name;
+        return functor.getName();
     }
 
+    /**
+     * Returns the current clauses. The array must not be modified.
+     */
     public Rule[] getClauses() {
-        return clauses;
+        return version.clauses;
+    }
+
+    /**
+     * Returns the clauses which can match a goal with the given arguments, in
+     * their original order. The arguments must already be dereferenced.
+     *
+     * The most selective of the available indexes is used, and the call is
+     * recorded in order to build better indexes in the future.
+     */
+    public Rule[] getClauses(Term[] arguments) {
+        assert arguments.length == functor.getArity();
+
+        Version version = this.version;
+        AtomicReferenceArray<ClauseIndex> argumentIndexes = version.argumentIndexes;
+        Rule[] result = version.clauses;
+        int boundMask = 0;
+        int numBound = 0;
+
+        for (int i = 0; i < argumentIndexes.length(); ++i) {
+            if (ClauseIndex.getKey(arguments[i]) == ClauseIndex.NO_KEY)
+                continue;
+
+            boundMask |= 1 << i;
+            ++numBound;
+
+            ClauseIndex index = argumentIndexes.get(i);
+            if (index != null) {
+                Rule[] candidates = index.getClauses(arguments);
+                if (candidates.length < result.length)
+                    result = candidates;
+            }
+        }
+
+        if (numBound > 1) {
+            ClauseIndex index = version.combinedIndexes.get(boundMask);
+            if (index != null) {
+                Rule[] candidates = index.getClauses(arguments);
+                if (candidates.length < result.length)
+                    result = candidates;
+            }
+        }
+
+        if (result.length > SELECTIVE_CLAUSES)
+            recordCall(version, boundMask, numBound);
+
+        return result;
+    }
+
+    /**
+     * Adds a clause as the first or last one. Calls which have started
+     * already do not see it.
+     */
+    public synchronized void add(Rule clause, boolean atEnd) {
+        if (clause == null || clause.getHead().getFunctor() != functor)
+            throw new IllegalArgumentException("clause must belong to " + getFullName());
+
+        Version previous = version;
+        Rule[] clauses = new Rule[previous.clauses.length + 1];
+        System.arraycopy(previous.clauses, 0, clauses, atEnd ? 0 : 1, previous.clauses.length);
+        clauses[atEnd ? previous.clauses.length : 0] = clause;
+
+        Version next = new Version(clauses, previous.cutting || clause.isCutting(),
+                previous.argumentIndexes.length());
+        for (int i = 0; i < next.argumentIndexes.length(); ++i) {
+            ClauseIndex index = previous.argumentIndexes.get(i);
+            if (index != null)
+                next.argumentIndexes.set(i, index.add(clauses, clause, atEnd));
+        }
+        for (Map.Entry<Integer, ClauseIndex> entry : previous.combinedIndexes.entrySet())
+            next.combinedIndexes.put(entry.getKey(), entry.getValue().add(clauses, clause, atEnd));
+
+        version = next;
+    }
+
+    /**
+     * Adds clauses after the existing ones. The indexes are updated once for
+     * all of them, which is much cheaper than adding them one by one.
+     */
+    public synchronized void addAll(Rule[] newClauses) {
+        if (newClauses.length == 1) {
+            add(newClauses[0], true);
+            return;
+        }
+
+        Version previous = version;
+        Rule[] clauses = Arrays.copyOf(previous.clauses, previous.clauses.length + newClauses.length);
+        boolean cutting = previous.cutting;
+        for (int i = 0; i < newClauses.length; ++i) {
+            if (newClauses[i] == null || newClauses[i].getHead().getFunctor() != functor)
+                throw new IllegalArgumentException("clauses must belong to " + getFullName());
+
+            clauses[previous.clauses.length + i] = newClauses[i];
+            cutting = cutting || newClauses[i].isCutting();
+        }
+
+        Version next = new Version(clauses, cutting, previous.argumentIndexes.length());
+        for (int i = 0; i < next.argumentIndexes.length(); ++i) {
+            ClauseIndex index = previous.argumentIndexes.get(i);
+            if (index != null)
+                next.argumentIndexes.set(i, index.addAll(newClauses));
+        }
+        for (Map.Entry<Integer, ClauseIndex> entry : previous.combinedIndexes.entrySet())
+            next.combinedIndexes.put(entry.getKey(), entry.getValue().addAll(newClauses));
+
+        version = next;
+    }
+
+    /**
+     * Removes a clause, which is compared by identity. Calls which have
+     * started already still see it.
+     *
+     * @return Whether the clause was found.
+     */
+    public synchronized boolean remove(Rule clause) {
+        Version previous = version;
+        if (!Arrays.asList(previous.clauses).contains(clause))
+            return false;
+
+        Rule[] clauses = ClauseIndex.delete(previous.clauses, clause);
+
+        Version next = new Version(clauses, previous.cutting, previous.argumentIndexes.length());
+        for (int i = 0; i < next.argumentIndexes.length(); ++i) {
+            ClauseIndex index = previous.argumentIndexes.get(i);
+            if (index != null)
+                next.argumentIndexes.set(i, index.remove(clause));
+        }
+        for (Map.Entry<Integer, ClauseIndex> entry : previous.combinedIndexes.entrySet())
+            next.combinedIndexes.put(entry.getKey(), entry.getValue().remove(clause));
+
+        version = next;
+        return true;
     }
 
     public int getArity() {
-        return arity;
+        return functor.getArity();
     }
 
     public String getFullName() {
-        return fullName;
+        return functor.getFullName();
+    }
+
+    /**
+     * Returns the number of indexes which have been built for this predicate.
+     */
+    public int getNumIndexes() {
+        Version version = this.version;
+        AtomicReferenceArray<ClauseIndex> argumentIndexes = version.argumentIndexes;
+        int result = version.combinedIndexes.size();
+        for (int i = 0; i < argumentIndexes.length(); ++i) {
+            if (argumentIndexes.get(i) != null)
+                ++result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the indexes of the given clauses, on single arguments first, or
+     * null if they are not the current clauses anymore.
+     */
+    ClauseIndex[] getIndexes(Rule[] clauses) {
+        Version version = this.version;
+        if (version.clauses != clauses)
+            return null;
+
+        AtomicReferenceArray<ClauseIndex> argumentIndexes = version.argumentIndexes;
+        ArrayList<ClauseIndex> result = new ArrayList<ClauseIndex>();
+        for (int i = 0; i < argumentIndexes.length(); ++i) {
+            if (argumentIndexes.get(i) != null)
+                result.add(argumentIndexes.get(i));
+        }
+        result.addAll(version.combinedIndexes.values());
+        return result.toArray(new ClauseIndex[result.size()]);
+    }
+
+    /**
+     * Returns an estimate of the number of bytes used by the indexes of this
+     * predicate.
+     */
+    public long getIndexMemory() {
+        Version version = this.version;
+        AtomicReferenceArray<ClauseIndex> argumentIndexes = version.argumentIndexes;
+        long result = 0;
+        for (int i = 0; i < argumentIndexes.length(); ++i) {
+            ClauseIndex index = argumentIndexes.get(i);
+            if (index != null)
+                result += index.getMemory();
+        }
+        for (ClauseIndex index : version.combinedIndexes.values())
+            result += index.getMemory();
+        return result;
+    }
+
+    /**
+     * Records a call to the given version which was not answered selectively
+     * by its indexes, building new indexes once the threshold is reached.
+     * They are added to the current version, and carried over to the later
+     * ones when it is changed next.
+     *
+     * A change may copy the indexes of the current version just before a new
+     * index is added to it, and then replace it. The new index is lost then,
+     * so it is built again by a later call: the count of calls binding an
+     * argument is not reset, and the count of a combination starts over.
+     */
+    private void recordCall(Version version, int boundMask, int numBound) {
+        if (numBound == 0)
+            return;
+
+        AtomicReferenceArray<ClauseIndex> argumentIndexes = version.argumentIndexes;
+        ConcurrentHashMap<Integer, ClauseIndex> combinedIndexes = version.combinedIndexes;
+
+        boolean allIndexed = true;
+        for (int i = 0; i < argumentIndexes.length(); ++i) {
+            if ((boundMask & (1 << i)) == 0 || argumentIndexes.get(i) != null)
+                continue;
+
+            allIndexed = false;
+            if (boundCalls.incrementAndGet(i) >= INDEX_THRESHOLD) {
+                // If another thread builds the same index concurrently, one
+                // of them simply wins
+                Version current = this.version;
+                if (current.argumentIndexes.get(i) == null) {
+                    current.argumentIndexes.compareAndSet(i, null,
+                            new ClauseIndex(current.clauses, i));
+                }
+            }
+        }
+
+        // Only combine arguments when each of them is indexed already and
+        // still not selective enough on its own
+        if (numBound < 2 || !allIndexed || combinedIndexes.containsKey(boundMask))
+            return;
+
+        AtomicInteger calls = combinedCalls.get(boundMask);
+        if (calls == null) {
+            AtomicInteger newCalls = new AtomicInteger();
+            calls = combinedCalls.putIfAbsent(boundMask, newCalls);
+            if (calls == null)
+                calls = newCalls;
+        }
+
+        if (calls.incrementAndGet() == INDEX_THRESHOLD) {
+            Version current = this.version;
+            current.combinedIndexes.putIfAbsent(boundMask,
+                    new ClauseIndex(current.clauses, getPositions(boundMask, numBound)));
+            combinedCalls.remove(boundMask);
+        }
+    }
+
+    private static int[] getPositions(int mask, int numBound) {
+        int[] result = new int[numBound];
+        int j = 0;
+        for (int i = 0; i < MAX_INDEXED_ARGUMENTS; ++i) {
+            if ((mask & (1 << i)) != 0)
+                result[j++] = i;
+        }
+        assert j == numBound;
+        return result;
+    }
+
+    private static Functor getFunctor(Rule[] clauses) {
+        if (clauses == null || clauses.length == 0)
+            throw new IllegalArgumentException("must supply at least one clause per predicate");
+        return clauses[0].getHead().getFunctor();
     }
 
     private static boolean isUniformFullName(Rule[] clauses) {
-        String fullName = clauses[0].getHead().getFullName();
+        Functor functor = clauses[0].getHead().getFunctor();
 
         for (int i = 1; i < clauses.length; ++i) {
-            if (!clauses[i].getHead().getFullName().equals(fullName))
+            if (clauses[i].getHead().getFunctor() != functor)
                 return false;
         }
 
@@ -13,6 +13,7 @@ import java.util.Map;
 import jlogic.interpret.DOT;
 import jlogic.interpret.Frame;
 import jlogic.interpret.SearchTree;
+import jlogic.interpret.TreeRecording;
 import jlogic.read.Lexer;
 import jlogic.read.Parser;
 import jlogic.read.ReadException;
@@ -30,14 +31,21 @@ public final class REPL {
             "\t:help\t\t\tPrint this help.\n" +
             "\t:consult file\t\tLoad rules and facts from `file'.\n" +
             "\t:knowledge\t\tPrint all known rules and facts.\n" +
-            "\t:savetree `file'\tCreate a PNG image named `file' containing the search tree of the last query.\n" +
+            "\t:tables [clear]\t\tPrint or remove the answer tables of tabled predicates.\n" +
+            "\t:record [on|off]\tEnable or disable recording the search trees of the following queries.\n" +
+            "\t:record nodes [depth]\tRecord at most `nodes' nodes of each search tree, up to the given depth.\n" +
+            "\t:savetree `file'\tCreate a PNG image named `file' containing the search tree of the last recorded query.\n" +
             "\t\t\t\tIf no `file' is supplied, the default name `searchtree.png' is assumed.\n";
 
+    // Budget used by `:record on'
+    private static final int DEFAULT_RECORDED_NODES = 1000;
+
     private Knowledge knowledge;
 
     private final BufferedReader input;
     private final Writer output;
 
+    private TreeRecording recording = TreeRecording.NONE;
     private SearchTree lastSearchTree = null;
     private boolean quitLoop = false;
 
@@ -57,13 +65,19 @@ public final class REPL {
     }
 
     private void evaluateAndPrint(Structure goal) throws IOException {
-        SearchTree searchTree = new SearchTree(knowledge, goal);
+        SearchTree searchTree = new SearchTree(knowledge, goal, recording);
 
         Frame frame;
         String line = null;
         boolean writeAll = false;
         do {
-            frame = searchTree.searchOne();
+            try {
+                frame = searchTree.searchOne();
+            } catch (IllegalStateException exception) {
+                // The query is abandoned, e.g. if an answer is a cyclic term
+                output.write("Error: " + exception.getMessage() + ".\n");
+                break;
+            }
             writeInstantiations(frame);
 
             if (frame == null)
@@ -86,7 +100,8 @@ public final class REPL {
         output.write("\n");
         output.flush();
 
-        lastSearchTree = searchTree;
+        // Don't hold on to search trees which can't be drawn anyway
+        lastSearchTree = searchTree.isRecorded() ? searchTree : null;
     }
 
     // TODO: Read multiple goals at once
@@ -115,7 +130,7 @@ public final class REPL {
                 Lexer lexer = new Lexer("repl", new StringReader(line));
                 Parser parser = new Parser(lexer);
 
-                return parser.parseStructure();
+                return parser.parseQuery();
             } catch (ReadException exception) {
                 output.write("Syntax error: " + exception.getMessage() + ".");
                 output.write("\n\n");
@@ -137,9 +152,13 @@ public final class REPL {
         else if (arguments[0].equals("help"))
             output.write(helpString);
         else if (arguments[0].equals("consult"))
-            output.write("Not implemented yet.");
+            handleConsultCommand(arguments);
         else if (arguments[0].equals("knowledge"))
             output.write(knowledge.toString());
+        else if (arguments[0].equals("tables"))
+            handleTablesCommand(arguments);
+        else if (arguments[0].equals("record"))
+            handleRecordCommand(arguments);
         else if (arguments[0].startsWith("savetree")) {
             if (lastSearchTree != null) {
                 String filename;
@@ -153,7 +172,7 @@ public final class REPL {
 
                 output.write("Saved tree to " + filename);
             } else {
-                output.write("No query was issued yet.");
+                output.write("No query was recorded yet. Use :record to enable recording.");
             }
         } else
             output.write("Unknown command: " + command);
@@ -162,6 +181,72 @@ public final class REPL {
         output.flush();
     }
 
+    private void handleConsultCommand(String[] arguments) throws IOException {
+        if (arguments.length < 2) {
+            output.write("No file supplied.");
+            return;
+        }
+
+        final String path = arguments[1];
+        long start = System.nanoTime();
+        try {
+            long numClauses = KnowledgeLoader.load(knowledge, path, new KnowledgeLoader.Progress() {
+                @Override
+                public void report(long numClauses, long numBytes, long totalBytes)
+                        throws IOException {
+                    long percent = totalBytes > 0 ? numBytes * 100 / totalBytes : 100;
+                    output.write("Read " + numClauses + " clauses (" + percent + "% of " +
+                            path + ")\n");
+                    output.flush();
+                }
+            });
+
+            long milliseconds = (System.nanoTime() - start) / 1000000;
+            output.write("Loaded " + numClauses + " clauses from " + path + " in " +
+                    milliseconds + " ms.");
+        } catch (ReadException exception) {
+            output.write("Syntax error at " + exception.getLocation() + ": " +
+                    exception.getMessage() + ". The clauses before it were loaded.");
+        } catch (IOException exception) {
+            output.write("Could not read " + path + ": " + exception.getMessage());
+        }
+    }
+
+    private void handleTablesCommand(String[] arguments) throws IOException {
+        AnswerTables tables = knowledge.getAnswerTables();
+
+        if (arguments.length > 1 && arguments[1].equals("clear")) {
+            tables.clear();
+            output.write("Cleared all answer tables.");
+        } else {
+            output.write(tables.toString());
+            output.write(tables.getNumTables() + " tables, " + tables.getNumAnswers() +
+                    " answers, about " + tables.getMemory() + " bytes.");
+        }
+    }
+
+    private void handleRecordCommand(String[] arguments) throws IOException {
+        if (arguments.length > 1) {
+            if (arguments[1].equals("on"))
+                recording = new TreeRecording(DEFAULT_RECORDED_NODES, Integer.MAX_VALUE);
+            else if (arguments[1].equals("off"))
+                recording = TreeRecording.NONE;
+            else {
+                try {
+                    int maxNodes = Integer.parseInt(arguments[1]);
+                    int maxDepth = arguments.length > 2 ? Integer.parseInt(arguments[2])
+                            : Integer.MAX_VALUE;
+                    recording = new TreeRecording(maxNodes, maxDepth);
+                } catch (IllegalArgumentException exception) {
+                    // NumberFormatException is an IllegalArgumentException
+                    output.write("Invalid recording budget: " + exception.getMessage() + "\n");
+                }
+            }
+        }
+
+        output.write("Recording: " + recording);
+    }
+
     private void writeInstantiations(Frame frame) throws IOException {
         if (frame != null) {
             if (frame.getInstantiations().size() > 0) {
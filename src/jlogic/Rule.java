@@ -3,22 +3,60 @@ package jlogic;
 import jlogic.term.Structure;
 import jlogic.term.Term;
 
+/**
+ * A clause, compiled into a template: every variable in the head and body is
+ * replaced by a numbered slot variable, so that the interpreter can rename the
+ * clause cheaply.
+ */
 public final class Rule {
     private final Structure head;
     private final Term[] body;
+    private final int numVariables;
+
+    // Whether the body contains a cut, which must be replaced by a cut
+    // barrier whenever the clause is used
+    private final boolean cutting;
 
     public Rule(Structure head, Term[] body) {
         if (head == null)
             throw new IllegalArgumentException("head must not be null");
 
-        this.head = head;
-        this.body = body;
+        NumberVariables numberVariables = new NumberVariables();
+
+        this.head = (Structure) head.accept(numberVariables);
+
+        boolean cutting = false;
+        if (body != null) {
+            this.body = new Term[body.length];
+            for (int i = 0; i < body.length; ++i) {
+                this.body[i] = body[i].accept(numberVariables);
+                cutting = cutting || Control.containsCut(body[i]);
+            }
+        } else
+            this.body = null;
+        this.cutting = cutting;
+
+        numVariables = numberVariables.getNumSlots();
     }
 
     public Rule(Structure head) {
         this(head, null);
     }
 
+    /**
+     * Creates a clause from a head and body whose variables are numbered
+     * already, e.g. read from a snapshot.
+     */
+    Rule(Structure head, Term[] body, int numVariables, boolean cutting) {
+        if (head == null)
+            throw new IllegalArgumentException("head must not be null");
+
+        this.head = head;
+        this.body = body;
+        this.numVariables = numVariables;
+        this.cutting = cutting;
+    }
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
@@ -28,7 +66,7 @@ public final class Rule {
             builder.append(" :- ");
 
             for (int i = 0; i < body.length; ++i) {
-                builder.append(body[i]);
+                builder.append(Control.toString(body[i]));
 
                 if (i + 1 != body.length)
                     builder.append(", ");
@@ -44,6 +82,13 @@ public final class Rule {
         return body == null;
     }
 
+    /**
+     * Returns whether the body of this clause contains a cut.
+     */
+    public boolean isCutting() {
+        return cutting;
+    }
+
     public Structure getHead() {
         return head;
     }
@@ -51,4 +96,12 @@ public final class Rule {
     public Term[] getBody() {
         return body;
     }
+
+    /**
+     * Returns the number of distinct variables in this clause. The slots of
+     * the clause's variables range from zero to this number, exclusively.
+     */
+    public int getNumVariables() {
+        return numVariables;
+    }
 }
@@ -0,0 +1,258 @@
+package jlogic.interpret;
+
+import jlogic.term.Functor;
+import jlogic.term.IntegerTerm;
+import jlogic.term.Structure;
+import jlogic.term.SymbolTable;
+import jlogic.term.Term;
+import jlogic.term.Variable;
+
+/**
+ * The built-in arithmetic predicates is/2, the comparisons </2, >/2, =</2,
+ * >=/2, =:=/2 and =\=/2, between/3 and succ/2. They are solved directly on
+ * integer terms, without resolution.
+ *
+ * Expressions are built from integers with +, -, *, // (rounding towards
+ * zero), mod, unary minus, abs, min and max. Evaluating an expression which
+ * contains an unbound variable or divides by zero fails, like calling an
+ * unknown predicate.
+ */
+final class Arithmetic {
+    public static final Functor IS = SymbolTable.getFunctor("is", 2);
+    public static final Functor LESS = SymbolTable.getFunctor("<", 2);
+    public static final Functor GREATER = SymbolTable.getFunctor(">", 2);
+    public static final Functor LESS_OR_EQUAL = SymbolTable.getFunctor("=<", 2);
+    public static final Functor GREATER_OR_EQUAL = SymbolTable.getFunctor(">=", 2);
+    public static final Functor EQUAL = SymbolTable.getFunctor("=:=", 2);
+    public static final Functor NOT_EQUAL = SymbolTable.getFunctor("=\\=", 2);
+    public static final Functor BETWEEN = SymbolTable.getFunctor("between", 3);
+    public static final Functor SUCC = SymbolTable.getFunctor("succ", 2);
+
+    private static final Functor ADD = SymbolTable.getFunctor("+", 2);
+    private static final Functor SUBTRACT = SymbolTable.getFunctor("-", 2);
+    private static final Functor MULTIPLY = SymbolTable.getFunctor("*", 2);
+    private static final Functor DIVIDE = SymbolTable.getFunctor("//", 2);
+    private static final Functor MOD = SymbolTable.getFunctor("mod", 2);
+    private static final Functor MIN = SymbolTable.getFunctor("min", 2);
+    private static final Functor MAX = SymbolTable.getFunctor("max", 2);
+    private static final Functor NEGATE = SymbolTable.getFunctor("-", 1);
+    private static final Functor ABS = SymbolTable.getFunctor("abs", 1);
+
+    // Upper bounds of between/3 meaning that there is none
+    private static final Term INF = SymbolTable.getAtom("inf");
+    private static final Term INFINITE = SymbolTable.getAtom("infinite");
+
+    private static final IntegerTerm ONE = IntegerTerm.valueOf(1);
+
+    // Static class
+    private Arithmetic() {
+        assert false;
+    }
+
+    /**
+     * Returns whether the given goal is a call of a built-in arithmetic
+     * predicate.
+     */
+    public static boolean isBuiltin(Term goal) {
+        if (!(goal instanceof Structure))
+            return false;
+
+        Functor functor = ((Structure) goal).getFunctor();
+        return functor == IS || isComparison(functor) || functor == BETWEEN ||
+                functor == SUCC;
+    }
+
+    /**
+     * Returns whether the given call of between/3 has more than one solution
+     * to enumerate, i.e. whether its third argument is unbound.
+     */
+    public static boolean isEnumeration(Bindings bindings, Structure goal) {
+        return goal.getFunctor() == BETWEEN &&
+                bindings.dereference(goal.getArguments()[2]) instanceof Variable;
+    }
+
+    /**
+     * Returns the solutions of a call of between/3 with an unbound third
+     * argument, in ascending order.
+     */
+    public static Solutions enumerate(Bindings bindings, final Structure goal) {
+        assert isEnumeration(bindings, goal);
+
+        final IntegerTerm low = getLowerBound(bindings, goal);
+        final IntegerTerm high = getUpperBound(bindings, goal);
+        final boolean unbounded = isUnbounded(bindings, goal);
+
+        return new Solutions() {
+            private IntegerTerm nextValue = low;
+
+            @Override
+            public boolean hasNext() {
+                return nextValue != null && (unbounded ||
+                        (high != null && nextValue.compareTo(high) <= 0));
+            }
+
+            @Override
+            public boolean isLast() {
+                return !unbounded && nextValue.compareTo(high) == 0;
+            }
+
+            @Override
+            public boolean next(Bindings bindings,
+                    InternalVariableFactory internalVariableFactory) {
+                IntegerTerm value = nextValue;
+                nextValue = value.add(ONE);
+                return Match.match(bindings, goal.getArguments()[2], value);
+            }
+        };
+    }
+
+    /**
+     * Solves a call of a built-in predicate which has at most one solution,
+     * instantiating its variables.
+     *
+     * @return Whether the call succeeded. If not, some instantiations may
+     *         have been made already, as with Match.match().
+     */
+    public static boolean solve(Bindings bindings, Structure goal) {
+        Functor functor = goal.getFunctor();
+        Term[] arguments = goal.getArguments();
+
+        if (functor == IS) {
+            IntegerTerm value = evaluate(bindings, arguments[1]);
+            return value != null && Match.match(bindings, arguments[0], value);
+        }
+
+        if (isComparison(functor)) {
+            IntegerTerm left = evaluate(bindings, arguments[0]);
+            IntegerTerm right = evaluate(bindings, arguments[1]);
+            return left != null && right != null && compare(functor, left, right);
+        }
+
+        if (functor == SUCC) {
+            Term first = bindings.dereference(arguments[0]);
+            if (first instanceof IntegerTerm) {
+                IntegerTerm integer = (IntegerTerm) first;
+                return integer.signum() >= 0 &&
+                        Match.match(bindings, arguments[1], integer.add(ONE));
+            }
+
+            Term second = bindings.dereference(arguments[1]);
+            if (!(second instanceof IntegerTerm) || ((IntegerTerm) second).signum() <= 0)
+                return false;
+            return Match.match(bindings, first, ((IntegerTerm) second).subtract(ONE));
+        }
+
+        assert functor == BETWEEN && !isEnumeration(bindings, goal);
+
+        Term value = bindings.dereference(arguments[2]);
+        if (!(value instanceof IntegerTerm))
+            return false;
+
+        IntegerTerm integer = (IntegerTerm) value;
+        IntegerTerm low = getLowerBound(bindings, goal);
+        if (low == null || integer.compareTo(low) < 0)
+            return false;
+        if (isUnbounded(bindings, goal))
+            return true;
+
+        IntegerTerm high = getUpperBound(bindings, goal);
+        return high != null && integer.compareTo(high) <= 0;
+    }
+
+    /**
+     * Returns the lower bound of a call of between/3, or null if it is not
+     * an integer.
+     */
+    private static IntegerTerm getLowerBound(Bindings bindings, Structure goal) {
+        Term low = bindings.dereference(goal.getArguments()[0]);
+        return low instanceof IntegerTerm ? (IntegerTerm) low : null;
+    }
+
+    /**
+     * Returns the upper bound of a call of between/3, or null if it is not
+     * an integer.
+     */
+    private static IntegerTerm getUpperBound(Bindings bindings, Structure goal) {
+        Term high = bindings.dereference(goal.getArguments()[1]);
+        return high instanceof IntegerTerm ? (IntegerTerm) high : null;
+    }
+
+    /**
+     * Returns whether a call of between/3 has no upper bound.
+     */
+    private static boolean isUnbounded(Bindings bindings, Structure goal) {
+        Term high = bindings.dereference(goal.getArguments()[1]);
+        return high == INF || high == INFINITE;
+    }
+
+    /**
+     * Returns the value of an arithmetic expression, or null if it can not
+     * be evaluated.
+     */
+    public static IntegerTerm evaluate(Bindings bindings, Term expression) {
+        expression = bindings.dereference(expression);
+
+        if (expression instanceof IntegerTerm)
+            return (IntegerTerm) expression;
+        if (!(expression instanceof Structure))
+            return null;
+
+        Structure structure = (Structure) expression;
+        Functor functor = structure.getFunctor();
+        Term[] arguments = structure.getArguments();
+
+        IntegerTerm left = evaluate(bindings, arguments[0]);
+        if (left == null)
+            return null;
+
+        if (functor == NEGATE)
+            return left.negate();
+        if (functor == ABS)
+            return left.signum() < 0 ? left.negate() : left;
+        if (arguments.length != 2)
+            return null;
+
+        IntegerTerm right = evaluate(bindings, arguments[1]);
+        if (right == null)
+            return null;
+
+        if (functor == ADD)
+            return left.add(right);
+        if (functor == SUBTRACT)
+            return left.subtract(right);
+        if (functor == MULTIPLY)
+            return left.multiply(right);
+        if (functor == DIVIDE)
+            return right.signum() != 0 ? left.divide(right) : null;
+        if (functor == MOD)
+            return right.signum() != 0 ? left.mod(right) : null;
+        if (functor == MIN)
+            return left.compareTo(right) <= 0 ? left : right;
+        if (functor == MAX)
+            return left.compareTo(right) >= 0 ? left : right;
+        return null;
+    }
+
+    private static boolean isComparison(Functor functor) {
+        return functor == LESS || functor == GREATER || functor == LESS_OR_EQUAL ||
+                functor == GREATER_OR_EQUAL || functor == EQUAL || functor == NOT_EQUAL;
+    }
+
+    private static boolean compare(Functor functor, IntegerTerm left, IntegerTerm right) {
+        int comparison = left.compareTo(right);
+
+        if (functor == LESS)
+            return comparison < 0;
+        if (functor == GREATER)
+            return comparison > 0;
+        if (functor == LESS_OR_EQUAL)
+            return comparison <= 0;
+        if (functor == GREATER_OR_EQUAL)
+            return comparison >= 0;
+        if (functor == EQUAL)
+            return comparison == 0;
+
+        assert functor == NOT_EQUAL;
+        return comparison != 0;
+    }
+}
@@ -0,0 +1,190 @@
+package jlogic.interpret;
+
+import java.util.Arrays;
+
+import jlogic.term.InternalVariable;
+import jlogic.term.Term;
+
+/**
+ * Stores the variable instantiations of one search. Variables are bound in
+ * place and every binding is recorded on a trail, so that backtracking can
+ * cheaply undo all bindings made after a previously saved mark.
+ *
+ * Only internal variables can be instantiated. Their instantiations are kept
+ * in an array indexed by the variable ids.
+ */
+public final class Bindings {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private Term[] instantiations = new Term[INITIAL_CAPACITY];
+
+    private InternalVariable[] trail = new InternalVariable[INITIAL_CAPACITY];
+    private int trailSize = 0;
+
+    // Only instantiations of variables with a smaller id are trailed
+    private int trailBoundary = Integer.MAX_VALUE;
+
+    // Pairs of terms which Match.match() has yet to match, so that it needs
+    // neither recursion nor allocation for deep terms
+    private Term[] pendingMatches = new Term[INITIAL_CAPACITY];
+    private int numPendingMatches = 0;
+
+    @Override
+    public String toString() {
+        return createFrame(0).toString();
+    }
+
+    public void instantiate(InternalVariable variable, Term term) {
+        assert getInstantiation(variable) == null;
+
+        int id = variable.getId();
+        if (id >= instantiations.length)
+            instantiations = grow(instantiations, id);
+        instantiations[id] = term;
+
+        if (id < trailBoundary) {
+            if (trailSize == trail.length)
+                trail = grow(trail, trailSize);
+            trail[trailSize++] = variable;
+        }
+    }
+
+    /**
+     * Sets the id of the first variable whose instantiations need not be
+     * trailed. This is the case for variables that were created after the
+     * most recent choice point, since backtracking makes them unreachable.
+     * Such variables must be cleared by calling clear() when backtracking.
+     */
+    public void setTrailBoundary(int trailBoundary) {
+        this.trailBoundary = trailBoundary;
+    }
+
+    public Term getInstantiation(InternalVariable variable) {
+        int id = variable.getId();
+        return id < instantiations.length ? instantiations[id] : null;
+    }
+
+    /**
+     * Follows the instantiations of variables until either a non-variable
+     * term or an uninstantiated variable is reached.
+     */
+    public Term dereference(Term term) {
+        while (term instanceof InternalVariable) {
+            Term instantiation = getInstantiation((InternalVariable) term);
+            if (instantiation == null)
+                break;
+            term = instantiation;
+        }
+        return term;
+    }
+
+    /**
+     * Returns a mark which can later be passed to undo() in order to remove
+     * every instantiation made after this call.
+     */
+    public int getMark() {
+        return trailSize;
+    }
+
+    public void undo(int mark) {
+        assert mark <= trailSize;
+
+        while (trailSize > mark) {
+            InternalVariable variable = trail[--trailSize];
+            trail[trailSize] = null;
+            instantiations[variable.getId()] = null;
+        }
+    }
+
+    /**
+     * Removes the instantiations of the variables with ids in the given range,
+     * which includes the upper bound only exclusively.
+     */
+    public void clear(int fromId, int toId) {
+        toId = Math.min(toId, instantiations.length);
+        if (fromId < toId)
+            Arrays.fill(instantiations, fromId, toId, null);
+    }
+
+    /**
+     * Returns a frame containing the instantiations made after the given
+     * mark. Only trailed instantiations are included.
+     */
+    public Frame createFrame(int mark) {
+        Frame frame = new Frame();
+        for (int i = mark; i < trailSize; ++i)
+            frame.instantiate(trail[i], instantiations[trail[i].getId()]);
+        return frame;
+    }
+
+    /**
+     * Returns the variable trailed at the given position, which must be
+     * below the current mark.
+     */
+    InternalVariable getTrailed(int position) {
+        assert position < trailSize;
+
+        return trail[position];
+    }
+
+    /**
+     * Changes the instantiation of an instantiated variable, or instantiates
+     * a variable which need not be trailed, without trailing it.
+     */
+    void replaceInstantiation(InternalVariable variable, Term term) {
+        int id = variable.getId();
+        if (id >= instantiations.length)
+            instantiations = grow(instantiations, id);
+        instantiations[id] = term;
+    }
+
+    /**
+     * Removes the variables with ids from the given one on from the part of
+     * the trail after the given mark, keeping the order of the others.
+     */
+    void removeTrailed(int mark, int fromId) {
+        int size = mark;
+        for (int i = mark; i < trailSize; ++i) {
+            if (trail[i].getId() < fromId)
+                trail[size++] = trail[i];
+        }
+        Arrays.fill(trail, size, trailSize, null);
+        trailSize = size;
+    }
+
+    int getNumPendingMatches() {
+        return numPendingMatches;
+    }
+
+    void pushPendingMatch(Term a, Term b) {
+        if (numPendingMatches + 2 > pendingMatches.length)
+            pendingMatches = grow(pendingMatches, numPendingMatches + 1);
+        pendingMatches[numPendingMatches++] = a;
+        pendingMatches[numPendingMatches++] = b;
+    }
+
+    /**
+     * Removes the term pushed last from the pending matches and returns it.
+     */
+    Term popPendingMatch() {
+        Term term = pendingMatches[--numPendingMatches];
+        pendingMatches[numPendingMatches] = null;
+        return term;
+    }
+
+    /**
+     * Removes the pending matches pushed after there were the given number.
+     */
+    void dropPendingMatches(int numPendingMatches) {
+        Arrays.fill(pendingMatches, numPendingMatches, this.numPendingMatches, null);
+        this.numPendingMatches = numPendingMatches;
+    }
+
+    private static <T> T[] grow(T[] array, int minIndex) {
+        int length = array.length;
+        while (length <= minIndex)
+            length *= 2;
+
+        return Arrays.copyOf(array, length);
+    }
+}
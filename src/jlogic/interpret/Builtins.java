@@ -0,0 +1,59 @@
+package jlogic.interpret;
+
+import jlogic.Knowledge;
+import jlogic.term.Structure;
+import jlogic.term.Term;
+
+/**
+ * The predicates which are solved by the interpreter itself instead of by
+ * clauses. A call which has at most one solution is solved right away,
+ * otherwise its solutions are enumerated.
+ *
+ * A program may define its own predicates with the same names and arities,
+ * which are then used instead.
+ */
+final class Builtins {
+    // Static class
+    private Builtins() {
+        assert false;
+    }
+
+    public static boolean isBuiltin(Term goal) {
+        return Arithmetic.isBuiltin(goal) || Lists.isBuiltin(goal) || Database.isBuiltin(goal);
+    }
+
+    /**
+     * Returns whether the given call may have more than one solution, so
+     * that it must be solved by enumerate() rather than solve().
+     */
+    public static boolean isEnumeration(Bindings bindings, Structure goal) {
+        if (Arithmetic.isBuiltin(goal))
+            return Arithmetic.isEnumeration(bindings, goal);
+        if (Database.isBuiltin(goal))
+            return Database.isEnumeration(goal);
+        return Lists.isEnumeration(bindings, goal);
+    }
+
+    /**
+     * Solves a call which has at most one solution.
+     *
+     * @return Whether the call succeeded. If not, some instantiations may
+     *         have been made already, as with Match.match().
+     */
+    public static boolean solve(Knowledge knowledge, Bindings bindings,
+            InternalVariableFactory internalVariableFactory, Structure goal) {
+        if (Arithmetic.isBuiltin(goal))
+            return Arithmetic.solve(bindings, goal);
+        if (Database.isBuiltin(goal))
+            return Database.solve(knowledge, bindings, goal);
+        return Lists.solve(bindings, internalVariableFactory, goal);
+    }
+
+    public static Solutions enumerate(Knowledge knowledge, Bindings bindings, Structure goal) {
+        if (Arithmetic.isBuiltin(goal))
+            return Arithmetic.enumerate(bindings, goal);
+        if (Database.isBuiltin(goal))
+            return Database.enumerate(knowledge, bindings, goal);
+        return Lists.enumerate(bindings, goal);
+    }
+}
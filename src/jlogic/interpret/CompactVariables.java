@@ -0,0 +1,150 @@
+package jlogic.interpret;
+
+import jlogic.term.CopyTerm;
+import jlogic.term.InternalVariable;
+import jlogic.term.Term;
+import jlogic.term.Variable;
+
+/**
+ * Reclaims the variables created since a choice point which are no longer
+ * reachable. The reachable ones are moved down to the lowest ids from the
+ * choice point's variable mark on, keeping their order, and the ids and
+ * instantiations of all the others are reused. A search which reuses its
+ * node for every deterministic step keeps creating variables, most of which
+ * only its earlier steps referred to, so this lets it run in constant memory.
+ *
+ * The variables reachable are the ones occurring in the remaining goals, or
+ * in the instantiation of a reachable variable. Older variables are not
+ * moved, but those instantiated since the choice point are on the trail,
+ * and their instantiations may refer to newer variables. Terms in which no
+ * variable moved are kept as they are, so reachable variables which are not
+ * preceded by unreachable ones cost no copies.
+ */
+final class CompactVariables extends CopyTerm {
+    private final int firstId;
+
+    // The variables reached so far by their ids minus firstId, and the ids
+    // minus firstId of those whose instantiations are yet to be marked
+    private final InternalVariable[] reached;
+    private final int[] pending;
+    private int numPending = 0;
+
+    // The greatest id minus firstId of the variables in the instantiations
+    // of the reached variables, or -1 if there are none, and of the term
+    // being marked
+    private final int[] maxIndexes;
+    private int maxIndex;
+
+    // Null while marking, then the moved variables by their old ids minus
+    // firstId. Variables which keep their ids are not included.
+    private InternalVariable[] moved;
+
+    private CompactVariables(int firstId, int endId) {
+        super(false);
+
+        this.firstId = firstId;
+        this.reached = new InternalVariable[endId - firstId];
+        this.pending = new int[endId - firstId];
+        this.maxIndexes = new int[endId - firstId];
+    }
+
+    /**
+     * Compacts the variables from the given id on, which must all have been
+     * created after the trail had the given mark, so that only the variables
+     * the given goals can reach are left. Returns the goals with their
+     * variables renamed.
+     */
+    public static Goals compact(Goals goals, Bindings bindings,
+            InternalVariableFactory internalVariableFactory, int firstId, int trailMark) {
+        int endId = internalVariableFactory.getMark();
+        CompactVariables compaction = new CompactVariables(firstId, endId);
+
+        // Mark the reachable variables
+        for (Term goal : goals)
+            goal.accept(compaction);
+        int trailSize = bindings.getMark();
+        for (int i = trailMark; i < trailSize; ++i) {
+            InternalVariable variable = bindings.getTrailed(i);
+            if (variable.getId() < firstId)
+                bindings.getInstantiation(variable).accept(compaction);
+        }
+        InternalVariable[] reached = compaction.reached;
+        while (compaction.numPending != 0) {
+            int index = compaction.pending[--compaction.numPending];
+            Term instantiation = bindings.getInstantiation(reached[index]);
+            compaction.maxIndex = -1;
+            if (instantiation != null)
+                instantiation.accept(compaction);
+            compaction.maxIndexes[index] = compaction.maxIndex;
+        }
+
+        // Assign the new ids in the order of the old ones
+        compaction.moved = new InternalVariable[reached.length];
+        int numReached = 0;
+        int firstMoved = reached.length;
+        for (int i = 0; i < reached.length; ++i) {
+            if (reached[i] == null)
+                continue;
+            if (numReached != i) {
+                compaction.moved[i] = new InternalVariable(firstId + numReached);
+                firstMoved = Math.min(firstMoved, i);
+            }
+            ++numReached;
+        }
+
+        Goals result = goals;
+        if (firstMoved != reached.length) {
+            result = goals.copy(compaction);
+            for (int i = trailMark; i < trailSize; ++i) {
+                InternalVariable variable = bindings.getTrailed(i);
+                if (variable.getId() < firstId) {
+                    bindings.replaceInstantiation(variable,
+                            bindings.getInstantiation(variable).accept(compaction));
+                }
+            }
+
+            // A variable only moves to a lower id, which belongs to a variable
+            // whose instantiation has been read already. Variables which keep
+            // their ids and refer to no moved variables are left alone.
+            for (int i = 0; i < reached.length; ++i) {
+                if (reached[i] == null ||
+                        compaction.moved[i] == null && compaction.maxIndexes[i] < firstMoved)
+                    continue;
+                Term instantiation = bindings.getInstantiation(reached[i]);
+                if (instantiation != null)
+                    instantiation = instantiation.accept(compaction);
+                bindings.replaceInstantiation(compaction.moved[i] != null
+                        ? compaction.moved[i] : reached[i], instantiation);
+            }
+        }
+        bindings.clear(firstId + numReached, endId);
+
+        // The moved variables need not be trailed, since backtracking to the
+        // choice point clears them anyway
+        bindings.removeTrailed(trailMark, firstId);
+        internalVariableFactory.reset(firstId + numReached);
+
+        return result;
+    }
+
+    @Override
+    protected Term replace(Variable variable) {
+        if (!(variable instanceof InternalVariable))
+            return variable;
+
+        int index = ((InternalVariable) variable).getId() - firstId;
+        if (index < 0)
+            return variable;
+
+        if (moved == null) {
+            maxIndex = Math.max(maxIndex, index);
+            if (reached[index] == null) {
+                reached[index] = (InternalVariable) variable;
+                pending[numPending++] = index;
+            }
+            return variable;
+        }
+
+        return moved[index] != null ? moved[index] : variable;
+    }
+}
@@ -4,13 +4,15 @@ import java.util.Map;
 
 import jlogic.term.AnonymousVariable;
 import jlogic.term.Atom;
+import jlogic.term.CutBarrier;
+import jlogic.term.IntegerTerm;
+import jlogic.term.ListTerm;
 import jlogic.term.Structure;
 import jlogic.term.Term;
 import jlogic.term.Variable;
 import jlogic.term.Visitor;
 
 import fj.F;
-import fj.F2;
 import fj.data.List;
 
 public final class DOT {
@@ -18,6 +20,9 @@ public final class DOT {
     private int idCounter;
 
     public DOT(SearchTree searchTree) {
+        if (!searchTree.isRecorded())
+            throw new IllegalArgumentException("search tree must be recorded");
+
         this.searchTree = searchTree;
     }
 
@@ -38,31 +43,17 @@ public final class DOT {
     private List<Map.Entry<Variable, Term>> frameDeltaToParent(SearchNode node) {
         assert node != null;
 
-        SearchNode parent = node.getParent();
-        assert parent != null;
-
-        Frame frame = node.getFrame();
-        Frame parentFrame = parent.getFrame();
-
         List<Map.Entry<Variable, Term>> delta = List.nil();
-        for (Map.Entry<Variable, Term> entry : frame.getInstantiations().entrySet()) {
-            Term parentTerm = parentFrame.getInstantiation(entry.getKey());
-            if (parentTerm == null || !parentTerm.equals(entry.getValue())) {
-                entry.setValue(entry.getValue().accept(new Instantiate(frame)));
-                delta = delta.cons(entry);
-            }
-        }
+        for (Map.Entry<Variable, Term> entry : node.getFrame().getInstantiations().entrySet())
+            delta = delta.cons(entry);
         return delta;
     }
 
     /**
      * Filters a list of variable instantiations, returning only those variables
-     * which are explicitly referred to in the parent's goal list.
+     * which are explicitly referred to in the goal list of the given parent.
      */
-    private List<Map.Entry<Variable, Term>> filterFrameDelta(SearchNode node, List<Map.Entry<Variable, Term>> delta) {
-        assert node != null;
-
-        final SearchNode parent = node.getParent();
+    private List<Map.Entry<Variable, Term>> filterFrameDelta(final SearchNode parent, List<Map.Entry<Variable, Term>> delta) {
         assert parent != null;
 
         return delta.filter(new F<Map.Entry<Variable, Term>, Boolean>() {
@@ -79,6 +70,24 @@ public final class DOT {
                         return false;
                     }
 
+                    @Override
+                    public Boolean visit(CutBarrier cutBarrier) {
+                        return false;
+                    }
+
+                    @Override
+                    public Boolean visit(IntegerTerm integer) {
+                        return false;
+                    }
+
+                    @Override
+                    public Boolean visit(ListTerm list) {
+                        Boolean result = list.getTail().accept(this);
+                        for (int i = 0; i < list.size(); ++i)
+                            result = result || list.get(i).accept(this);
+                        return result;
+                    }
+
                     @Override
                     public Boolean visit(Structure structure) {
                         Boolean result = false;
@@ -92,14 +101,11 @@ public final class DOT {
                         return variable.equals(entry.getKey());
                     }
 
-                    public Boolean visit(List<Term> terms) {
-                        final Visitor<Boolean> outer = this;
-                        return terms.foldLeft(new F2<Boolean, Term, Boolean>() {
-                            @Override
-                            public Boolean f(Boolean b, Term term) {
-                                return b || term.accept(outer);
-                            }
-                        }, false);
+                    public Boolean visit(Goals goals) {
+                        Boolean result = false;
+                        for (Term goal : goals)
+                            result = result || goal.accept(this);
+                        return result;
                     }
                 };
 
@@ -129,7 +135,11 @@ public final class DOT {
             // Remove last comma and newline if existing
             builder.delete(builder.length() - 3, builder.length());
         } else {
-            Frame resultFrame = searchTree.createResultFrame(node.getFrame());
+            // Nodes are always given control right after being created, so
+            // there has to be a result for an empty goal list
+            Frame resultFrame = node.getResultFrame();
+            assert resultFrame != null;
+
             for (Map.Entry<Variable, Term> entry : resultFrame.getInstantiations().entrySet()) {
                 builder.append(entry.getKey());
                 builder.append(" = ");
@@ -142,14 +152,14 @@ public final class DOT {
 
         if (node.getGoals().isEmpty())
             builder.append(" color=green");
-        else if (node.getChildren().isEmpty())
+        else if (node.getChildren().isEmpty() && !node.isTruncated())
             builder.append(" color=red");
 
         builder.append("];\n");
 
         for (SearchNode child : node.getChildren()) {
             int childId = generateNodeDOT(builder, child);
-            List<Map.Entry<Variable, Term>> delta = filterFrameDelta(child,
+            List<Map.Entry<Variable, Term>> delta = filterFrameDelta(node,
                     frameDeltaToParent(child));
 
             builder.append("\tN");
@@ -170,6 +180,20 @@ public final class DOT {
             builder.append("\"];\n");
         }
 
+        if (node.isTruncated()) {
+            // Some children were not recorded, hint at that
+            int truncatedId = idCounter++;
+
+            builder.append("\tN");
+            builder.append(truncatedId);
+            builder.append(" [label=\"...\" color=gray];\n");
+            builder.append("\tN");
+            builder.append(thisId);
+            builder.append(" -> N");
+            builder.append(truncatedId);
+            builder.append(" [style=dashed];\n");
+        }
+
         return thisId;
     }
 }
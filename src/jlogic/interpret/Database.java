@@ -0,0 +1,175 @@
+package jlogic.interpret;
+
+import jlogic.Control;
+import jlogic.Knowledge;
+import jlogic.Predicate;
+import jlogic.Rule;
+import jlogic.term.Atom;
+import jlogic.term.Functor;
+import jlogic.term.Structure;
+import jlogic.term.SymbolTable;
+import jlogic.term.Term;
+
+/**
+ * The built-in predicates assert/1, asserta/1, assertz/1 and retract/1, which
+ * change the clauses of the knowledge base. A clause is given as a term
+ * "(Head :- Body)", or as just the head for a fact. assert/1 is the same as
+ * assertz/1.
+ *
+ * retract/1 removes the first clause which unifies with the given term, and
+ * the following ones on backtracking. It only considers the clauses which
+ * existed when it was called, like every other call.
+ */
+final class Database {
+    public static final Functor ASSERT = SymbolTable.getFunctor("assert", 1);
+    public static final Functor ASSERTA = SymbolTable.getFunctor("asserta", 1);
+    public static final Functor ASSERTZ = SymbolTable.getFunctor("assertz", 1);
+    public static final Functor RETRACT = SymbolTable.getFunctor("retract", 1);
+
+    public static final Functor CLAUSE = SymbolTable.getFunctor(":-", 2);
+
+    // Static class
+    private Database() {
+        assert false;
+    }
+
+    public static boolean isBuiltin(Term goal) {
+        if (!(goal instanceof Structure))
+            return false;
+
+        Functor functor = ((Structure) goal).getFunctor();
+        return functor == ASSERT || functor == ASSERTA || functor == ASSERTZ ||
+                functor == RETRACT;
+    }
+
+    /**
+     * Returns whether the given call may have more than one solution, which
+     * is the case for retract/1.
+     */
+    public static boolean isEnumeration(Structure goal) {
+        return goal.getFunctor() == RETRACT;
+    }
+
+    /**
+     * Adds the clause given by a call of assert/1, asserta/1 or assertz/1.
+     *
+     * @return Whether the argument is a valid clause, which was added. Clauses
+     *         of fact tables are not valid.
+     */
+    public static boolean solve(Knowledge knowledge, Bindings bindings, Structure goal) {
+        assert !isEnumeration(goal);
+
+        // Variables which are still unbound become the clause's variables
+        Term term = goal.getArguments()[0].accept(new Instantiate(bindings));
+        Rule clause = createRule(term);
+        if (clause == null)
+            return false;
+
+        // The facts of fact tables can not be changed
+        if (knowledge.getFactTable(clause.getHead().getFunctor()) != null)
+            return false;
+
+        if (goal.getFunctor() == ASSERTA)
+            knowledge.asserta(clause);
+        else
+            knowledge.assertz(clause);
+        return true;
+    }
+
+    /**
+     * Returns the solutions of a call of retract/1, each of which removes the
+     * clause it unified with.
+     */
+    public static Solutions enumerate(final Knowledge knowledge, Bindings bindings,
+            Structure goal) {
+        assert isEnumeration(goal);
+
+        Term head = bindings.dereference(goal.getArguments()[0]);
+        Term body = Control.TRUE;
+        if (head instanceof Structure && ((Structure) head).getFunctor() == CLAUSE) {
+            Term[] arguments = ((Structure) head).getArguments();
+            head = bindings.dereference(arguments[0]);
+            body = arguments[1];
+        }
+
+        final Rule[] clauses = getClauses(knowledge, bindings, head);
+        final Term clauseHead = head;
+        final Term clauseBody = body;
+
+        return new Solutions() {
+            private int position = 0;
+
+            @Override
+            public boolean hasNext() {
+                return position < clauses.length;
+            }
+
+            @Override
+            public boolean isLast() {
+                return position == clauses.length - 1;
+            }
+
+            @Override
+            public boolean next(Bindings bindings,
+                    InternalVariableFactory internalVariableFactory) {
+                Rule clause = clauses[position];
+                ++position;
+
+                RenameClause renaming = new RenameClause(internalVariableFactory,
+                        clause.getNumVariables());
+                Term body = clause.isFact()
+                        ? Control.TRUE : Control.createConjunction(clause.getBody());
+                if (!Match.matchTemplate(bindings, clauseHead, clause.getHead(), renaming) ||
+                        !Match.matchTemplate(bindings, clauseBody, body, renaming))
+                    return false;
+
+                // Another call may have removed the clause in the meantime
+                return knowledge.retract(clause);
+            }
+        };
+    }
+
+    /**
+     * Returns the clauses of the predicate of the given head which may match
+     * it, or none if the head is not a structure.
+     */
+    private static Rule[] getClauses(Knowledge knowledge, Bindings bindings, Term head) {
+        if (!(head instanceof Structure))
+            return new Rule[0];
+
+        Structure structure = (Structure) head;
+        Predicate predicate = knowledge.getPredicate(structure.getFunctor());
+        if (predicate == null)
+            return new Rule[0];
+
+        Term[] arguments = new Term[structure.getArity()];
+        for (int i = 0; i < arguments.length; ++i)
+            arguments[i] = bindings.dereference(structure.getArguments()[i]);
+        return predicate.getClauses(arguments);
+    }
+
+    /**
+     * Creates a clause from a term "(Head :- Body)" or "Head", or returns
+     * null if the term is not a valid clause.
+     */
+    private static Rule createRule(Term term) {
+        Term head = term;
+        Term body = null;
+        if (term instanceof Structure && ((Structure) term).getFunctor() == CLAUSE) {
+            head = ((Structure) term).getArguments()[0];
+            body = ((Structure) term).getArguments()[1];
+        }
+
+        if (!(head instanceof Structure) || Control.isControl(head))
+            return null;
+        if (body == null)
+            return new Rule((Structure) head);
+
+        Term[] goals = Control.getConjuncts(body);
+        for (Term bodyGoal : goals) {
+            if (!(bodyGoal instanceof Structure) && !(bodyGoal instanceof Atom))
+                return null;
+        }
+        return new Rule((Structure) head, goals);
+    }
+}
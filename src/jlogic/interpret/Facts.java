@@ -0,0 +1,63 @@
+package jlogic.interpret;
+
+import jlogic.FactTable;
+import jlogic.term.Structure;
+import jlogic.term.Term;
+
+/**
+ * Answers calls to a fact table. The table finds the rows whose cells equal
+ * the call's bound arguments, and only the cells of those rows are turned
+ * into terms, to be matched with the call's other arguments.
+ */
+final class Facts {
+    // Static class
+    private Facts() {
+        assert false;
+    }
+
+    public static Solutions enumerate(final FactTable factTable, Bindings bindings,
+            Structure goal) {
+        final Term[] arguments = new Term[goal.getArity()];
+        for (int i = 0; i < arguments.length; ++i)
+            arguments[i] = bindings.dereference(goal.getArguments()[i]);
+
+        final FactTable.Rows rows = factTable.find(arguments);
+
+        return new Solutions() {
+            private int row = rows.next();
+
+            // The row after the next one, once isLast() has looked it up
+            private int followingRow = -2;
+
+            @Override
+            public boolean hasNext() {
+                return row != -1;
+            }
+
+            @Override
+            public boolean isLast() {
+                if (followingRow == -2)
+                    followingRow = rows.next();
+                return followingRow == -1;
+            }
+
+            @Override
+            public boolean next(Bindings bindings,
+                    InternalVariableFactory internalVariableFactory) {
+                int current = row;
+                row = followingRow != -2 ? followingRow : rows.next();
+                followingRow = -2;
+
+                // The bound arguments are equal to their cells already. A
+                // variable occurring more than once may be bound by now, so
+                // it is dereferenced again when matching.
+                for (int i = 0; i < arguments.length; ++i) {
+                    if (!FactTable.isStorable(arguments[i]) &&
+                            !Match.match(bindings, arguments[i], factTable.getTerm(current, i)))
+                        return false;
+                }
+                return true;
+            }
+        };
+    }
+}
@@ -0,0 +1,125 @@
+package jlogic.interpret;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import jlogic.term.Term;
+import jlogic.term.Visitor;
+
+/**
+ * The goals of a search node, as a stack of frames. Each frame holds an
+ * array of goals, usually the renamed body of a clause, the position of its
+ * first goal which is left, and the frame below it. Pushing goals takes one
+ * new frame, no matter how many goals there are, and solving a goal takes at
+ * most one new frame.
+ *
+ * Frames are never changed, so the goals below a frame are shared by all the
+ * nodes which continue with them, such as sibling choice points.
+ */
+final class Goals implements Iterable<Term> {
+    public static final Goals EMPTY = new Goals(new Term[0], 0, null);
+
+    // Only the empty frame has no goals left
+    private final Term[] goals;
+    private final int position;
+    private final Goals next;
+
+    private Goals(Term[] goals, int position, Goals next) {
+        this.goals = goals;
+        this.position = position;
+        this.next = next;
+    }
+
+    public boolean isEmpty() {
+        return position == goals.length;
+    }
+
+    /**
+     * Returns the first goal, which must exist.
+     */
+    public Term head() {
+        assert !isEmpty();
+
+        return goals[position];
+    }
+
+    /**
+     * Returns the goals after the first one, which must exist.
+     */
+    public Goals tail() {
+        assert !isEmpty();
+
+        if (position + 1 == goals.length)
+            return next;
+        return new Goals(goals, position + 1, next);
+    }
+
+    /**
+     * Returns the given goal followed by these goals.
+     */
+    public Goals push(Term goal) {
+        return new Goals(new Term[] { goal }, 0, this);
+    }
+
+    /**
+     * Returns the given goals followed by these goals. The array is shared,
+     * so it must not be changed afterwards.
+     */
+    public Goals push(Term[] goals) {
+        if (goals.length == 0)
+            return this;
+        return new Goals(goals, 0, this);
+    }
+
+    /**
+     * Returns the goals copied by the given visitor, in a single frame.
+     */
+    public Goals copy(Visitor<Term> visitor) {
+        Term[] result = toArray();
+        for (int i = 0; i < result.length; ++i)
+            result[i] = result[i].accept(visitor);
+        return EMPTY.push(result);
+    }
+
+    public int size() {
+        int result = 0;
+        for (Goals frame = this; frame != null; frame = frame.next)
+            result += frame.goals.length - frame.position;
+        return result;
+    }
+
+    public Term[] toArray() {
+        Term[] result = new Term[size()];
+        int i = 0;
+        for (Term goal : this)
+            result[i++] = goal;
+        return result;
+    }
+
+    @Override
+    public Iterator<Term> iterator() {
+        return new Iterator<Term>() {
+            private Goals frame = Goals.this;
+            private int position = Goals.this.position;
+
+            @Override
+            public boolean hasNext() {
+                // Skip to the next frame once this one is done, or stop at
+                // the empty frame at the bottom
+                while (position == frame.goals.length && frame.next != null) {
+                    frame = frame.next;
+                    position = frame.position;
+                }
+                return position != frame.goals.length;
+            }
+
+            @Override
+            public Term next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+
+                return frame.goals[position++];
+            }
+        };
+    }
+}
@@ -0,0 +1,255 @@
+package jlogic.interpret;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import jlogic.NumberVariables;
+import jlogic.term.Term;
+import jlogic.term.Variable;
+
+/**
+ * Groups of goals which share no unbound variables, so that each group can be
+ * solved on its own. Every group is solved by a separate task, and the
+ * results of all goals are the cross product of the groups' answers.
+ *
+ * An answer of a group only contains the instantiations of the group's
+ * variables which occur in the query, with their own variables replaced by
+ * slot variables. They are renamed when the answer is used, like the answers
+ * of a tabled call. Groups without such variables only count their answers.
+ */
+final class IndependentGoals {
+    private final SearchTask[] tasks;
+
+    // The query's variables in each group
+    private final Variable[][] outputs;
+
+    // Filled by join()
+    private int[] numAnswers;
+    private Term[][][] answers;
+    private int[] maxAnswerVariables;
+
+    private IndependentGoals(SearchTask[] tasks, Variable[][] outputs) {
+        this.tasks = tasks;
+        this.outputs = outputs;
+    }
+
+    /**
+     * Splits the given goals into independent groups and creates a task
+     * solving each group.
+     *
+     * @param queryFrame
+     *        The instantiations of the query's variables at the goals.
+     * @param contiguous
+     *        Whether the goals must only be split if each group is a
+     *        contiguous part of the goals. In that case, the cross product of
+     *        the answers is in the same order as the results of solving the
+     *        goals sequentially.
+     * @return The groups being solved, or null if there are fewer than two
+     *         groups.
+     */
+    public static IndependentGoals fork(SearchTask task, int treeForkDepth,
+            Goals goals, Frame queryFrame, int variableMark, boolean contiguous) {
+        Term[] goalArray = goals.toArray();
+
+        int[] group = partition(goalArray);
+
+        int numGroups = 0;
+        for (int i = 0; i < goalArray.length; ++i) {
+            if (group[i] == i)
+                ++numGroups;
+            else if (contiguous && group[i] != group[i - 1])
+                return null;
+        }
+        if (numGroups < 2)
+            return null;
+
+        HashSet<Variable> queryVariables = new HashSet<Variable>();
+        for (Term value : queryFrame.getInstantiations().values())
+            addVariables(value, queryVariables);
+
+        SearchTask[] tasks = new SearchTask[numGroups];
+        Variable[][] outputs = new Variable[numGroups][];
+        int numForked = 0;
+        for (int first = 0; first < goalArray.length; ++first) {
+            if (group[first] != first)
+                continue;
+
+            ArrayList<Term> groupGoals = new ArrayList<Term>();
+            NumberVariables groupVariables = new NumberVariables();
+            for (int i = goalArray.length - 1; i >= first; --i) {
+                if (group[i] == first) {
+                    groupGoals.add(goalArray[i]);
+                    goalArray[i].accept(groupVariables);
+                }
+            }
+
+            // Goals in the order in which they appear
+            Collections.reverse(groupGoals);
+
+            Frame groupFrame = new Frame();
+            ArrayList<Variable> groupOutputs = new ArrayList<Variable>();
+            for (Variable variable : groupVariables.getVariables()) {
+                if (queryVariables.contains(variable)) {
+                    groupFrame.instantiate(variable, variable);
+                    groupOutputs.add(variable);
+                }
+            }
+
+            outputs[numForked] = groupOutputs.toArray(new Variable[groupOutputs.size()]);
+            tasks[numForked] = task.forkGoals(treeForkDepth, groupFrame,
+                    Goals.EMPTY.push(groupGoals.toArray(new Term[groupGoals.size()])),
+                    variableMark);
+            ++numForked;
+        }
+
+        return new IndependentGoals(tasks, outputs);
+    }
+
+    /**
+     * Waits for the answers of all groups.
+     */
+    public void join() {
+        numAnswers = new int[tasks.length];
+        answers = new Term[tasks.length][][];
+        maxAnswerVariables = new int[tasks.length];
+
+        for (int i = 0; i < tasks.length; ++i) {
+            tasks[i].join();
+
+            ArrayList<Frame> results = new ArrayList<Frame>();
+            tasks[i].collectResults(results);
+            numAnswers[i] = results.size();
+
+            if (outputs[i].length == 0)
+                continue;
+
+            answers[i] = new Term[results.size()][];
+            for (int j = 0; j < results.size(); ++j) {
+                NumberVariables numberVariables = new NumberVariables();
+                Term[] answer = new Term[outputs[i].length];
+                for (int k = 0; k < answer.length; ++k) {
+                    answer[k] = results.get(j).getInstantiation(outputs[i][k]).
+                            accept(numberVariables);
+                }
+
+                answers[i][j] = answer;
+                maxAnswerVariables[i] = Math.max(maxAnswerVariables[i],
+                        numberVariables.getNumSlots());
+            }
+        }
+    }
+
+    /**
+     * Returns whether the cross product is empty. Only valid after join().
+     */
+    public boolean isEmpty() {
+        for (int n : numAnswers) {
+            if (n == 0)
+                return true;
+        }
+        return false;
+    }
+
+    public int getNumGroups() {
+        return tasks.length;
+    }
+
+    /**
+     * Returns whether the given combination of answers is the last one in
+     * the cross product.
+     */
+    public boolean isLastCombination(int[] combination) {
+        for (int i = 0; i < combination.length; ++i) {
+            if (combination[i] != numAnswers[i] - 1)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Advances to the next combination of answers, varying the answer of the
+     * last group fastest.
+     */
+    public void nextCombination(int[] combination) {
+        assert !isLastCombination(combination);
+
+        int i = combination.length - 1;
+        while (combination[i] == numAnswers[i] - 1) {
+            combination[i] = 0;
+            --i;
+        }
+        ++combination[i];
+    }
+
+    /**
+     * Instantiates the query's variables with the given combination of
+     * answers, renaming the answers' variables.
+     *
+     * @return Whether the instantiations are consistent.
+     */
+    public boolean instantiate(Bindings bindings,
+            InternalVariableFactory internalVariableFactory, int[] combination) {
+        for (int i = 0; i < tasks.length; ++i) {
+            if (outputs[i].length == 0)
+                continue;
+
+            Term[] answer = answers[i][combination[i]];
+            RenameClause renaming = new RenameClause(internalVariableFactory,
+                    maxAnswerVariables[i]);
+            for (int j = 0; j < answer.length; ++j) {
+                if (!Match.matchTemplate(bindings, outputs[i][j], answer[j], renaming))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns for each goal the position of the first goal in its group.
+     * Goals are in one group if they share variables, directly or through
+     * other goals.
+     */
+    private static int[] partition(Term[] goals) {
+        int[] parent = new int[goals.length];
+        HashMap<Variable, Integer> firstGoals = new HashMap<Variable, Integer>();
+
+        for (int i = 0; i < goals.length; ++i) {
+            parent[i] = i;
+
+            HashSet<Variable> variables = new HashSet<Variable>();
+            addVariables(goals[i], variables);
+            for (Variable variable : variables) {
+                Integer first = firstGoals.get(variable);
+                if (first == null)
+                    firstGoals.put(variable, i);
+                else {
+                    // Join the groups, keeping the smaller root
+                    int a = find(parent, first);
+                    int b = find(parent, i);
+                    parent[Math.max(a, b)] = Math.min(a, b);
+                }
+            }
+        }
+
+        for (int i = 0; i < goals.length; ++i)
+            parent[i] = find(parent, i);
+        return parent;
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private static void addVariables(Term term, HashSet<Variable> variables) {
+        NumberVariables numberVariables = new NumberVariables();
+        term.accept(numberVariables);
+        for (Variable variable : numberVariables.getVariables())
+            variables.add(variable);
+    }
+}
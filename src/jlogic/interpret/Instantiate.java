@@ -1,56 +1,29 @@
 package jlogic.interpret;
 
-import jlogic.term.AnonymousVariable;
-import jlogic.term.Atom;
-import jlogic.term.Structure;
+import jlogic.term.CopyTerm;
+import jlogic.term.InternalVariable;
 import jlogic.term.Term;
 import jlogic.term.Variable;
-import jlogic.term.Visitor;
 
-import fj.F;
-import fj.data.List;
+/**
+ * Replaces the instantiated variables in a term by their instantiations,
+ * which are instantiated in turn.
+ */
+public final class Instantiate extends CopyTerm {
+    private final Bindings instantiations;
 
-public final class Instantiate implements Visitor<Term> {
-    private Frame instantiations;
+    public Instantiate(Bindings instantiations) {
+        super(true);
 
-    public Instantiate(Frame instantiations) {
         this.instantiations = instantiations;
     }
 
     @Override
-    public Term visit(AnonymousVariable anonymousVariable) {
-        return anonymousVariable;
-    }
-
-    @Override
-    public Term visit(Atom atom) {
-        return atom;
-    }
-
-    @Override
-    public Term visit(Structure structure) {
-        Term[] newArguments = new Term[structure.getArity()];
-        for (int i = 0; i < structure.getArity(); ++i) {
-            newArguments[i] = structure.getArguments()[i].accept(this);
-        }
-
-        return new Structure(structure.getFunctor(), newArguments);
-    }
-
-    @Override
-    public Term visit(Variable variable) {
-        Term instantiation = instantiations.getInstantiation(variable);
-        if (instantiation != null)
-            return instantiation.accept(this);
-        return variable;
-    }
+    protected Term replace(Variable variable) {
+        // Only internal variables can be instantiated
+        if (!(variable instanceof InternalVariable))
+            return variable;
 
-    public List<Term> visit(List<Term> terms) {
-        return terms.map(new F<Term, Term>() {
-            @Override
-            public Term f(Term term) {
-                return term.accept(Instantiate.this);
-            }
-        });
+        return instantiations.dereference(variable);
     }
 }
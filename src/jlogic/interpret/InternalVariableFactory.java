@@ -1,13 +1,54 @@
 package jlogic.interpret;
 
-import jlogic.term.Variable;
+import jlogic.term.InternalVariable;
 
 // Every Java project needs at least one factory
 public final class InternalVariableFactory {
-    private int counter = 0;
+    private int counter;
 
-    public Variable create() {
-        // TODO: Subclass Variable for internal variables?
-        return new Variable("_G" + counter++);
+    public InternalVariableFactory() {
+        this(0);
+    }
+
+    /**
+     * Creates a factory whose variables have ids starting at the given one,
+     * so that they do not conflict with the variables of another factory
+     * created before that id.
+     */
+    public InternalVariableFactory(int firstId) {
+        if (firstId < 0)
+            throw new IllegalArgumentException("firstId must not be negative");
+
+        counter = firstId;
+    }
+
+    public InternalVariable create() {
+        if (counter == Integer.MAX_VALUE)
+            throw new IllegalStateException("too many internal variables alive");
+
+        return new InternalVariable(counter++);
+    }
+
+    /**
+     * Returns a mark which can later be passed to reset() in order to reuse
+     * the ids of every variable created after this call.
+     */
+    public int getMark() {
+        return counter;
+    }
+
+    /**
+     * Reuses the ids of the variables created after the given mark. This is
+     * only valid once none of these variables are referenced anymore, which
+     * is the case after backtracking to a point before they were created, or
+     * after the variables still reachable were renamed below the mark.
+     * Backtracking alone does not bound the number of ids in use, since a
+     * deterministic search never backtracks. SearchTree compacts the
+     * variables of such a search from time to time instead.
+     */
+    public void reset(int mark) {
+        assert mark <= counter;
+
+        counter = mark;
     }
 }
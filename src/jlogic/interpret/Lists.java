@@ -0,0 +1,407 @@
+package jlogic.interpret;
+
+import jlogic.term.Functor;
+import jlogic.term.IntegerTerm;
+import jlogic.term.ListTerm;
+import jlogic.term.Structure;
+import jlogic.term.SymbolTable;
+import jlogic.term.Term;
+import jlogic.term.Variable;
+
+/**
+ * The built-in list predicates append/3, member/2, length/2 and nth/3. They
+ * walk their lists in loops, whether the lists are ListTerms or chains of
+ * cons structures, instead of taking one resolution step per element.
+ *
+ * nth/3 counts from one, as in nth(1, [a, b], a). member/2 only enumerates
+ * the elements a list already has, without extending a partial list.
+ */
+final class Lists {
+    public static final Functor APPEND = SymbolTable.getFunctor("append", 3);
+    public static final Functor MEMBER = SymbolTable.getFunctor("member", 2);
+    public static final Functor LENGTH = SymbolTable.getFunctor("length", 2);
+    public static final Functor NTH = SymbolTable.getFunctor("nth", 3);
+
+    // Static class
+    private Lists() {
+        assert false;
+    }
+
+    /**
+     * A position in a list, which may consist of ListTerms and cons
+     * structures.
+     */
+    private static final class Cursor {
+        private final Bindings bindings;
+
+        // The dereferenced rest of the list. If it is a ListTerm, its
+        // elements before index have been passed already.
+        private Term rest;
+        private int index = 0;
+
+        public Cursor(Bindings bindings, Term list) {
+            this.bindings = bindings;
+            rest = bindings.dereference(list);
+        }
+
+        /**
+         * Returns whether there are no more elements. The list is proper if
+         * getRest() is nil then.
+         */
+        public boolean atEnd() {
+            return !Match.isCons(rest);
+        }
+
+        /**
+         * Returns whether the current element is the last one.
+         */
+        public boolean atLast() {
+            assert !atEnd();
+
+            if (rest instanceof ListTerm && index + 1 < ((ListTerm) rest).size())
+                return false;
+            return !Match.isCons(bindings.dereference(getTail()));
+        }
+
+        /**
+         * Returns the list from the current element on.
+         */
+        public Term getRest() {
+            if (index == 0)
+                return rest;
+            return ((ListTerm) rest).drop(index);
+        }
+
+        public Term getElement() {
+            assert !atEnd();
+
+            if (rest instanceof ListTerm)
+                return ((ListTerm) rest).get(index);
+            return ((Structure) rest).getArguments()[0];
+        }
+
+        public void advance() {
+            assert !atEnd();
+
+            if (rest instanceof ListTerm && index + 1 < ((ListTerm) rest).size()) {
+                ++index;
+                return;
+            }
+
+            rest = bindings.dereference(getTail());
+            index = 0;
+        }
+
+        /**
+         * Advances past all elements, returning their number.
+         */
+        public long skipAll() {
+            long count = 0;
+            while (!atEnd()) {
+                count += rest instanceof ListTerm ? ((ListTerm) rest).size() - index : 1;
+                rest = bindings.dereference(getTail());
+                index = 0;
+            }
+            return count;
+        }
+
+        /**
+         * Advances by up to n elements, returning the number of elements
+         * skipped.
+         */
+        public long skip(long n) {
+            long count = 0;
+            while (count < n && !atEnd()) {
+                if (rest instanceof ListTerm) {
+                    int remaining = ((ListTerm) rest).size() - index;
+                    if (n - count < remaining) {
+                        index += (int) (n - count);
+                        return n;
+                    }
+                    count += remaining;
+                } else
+                    ++count;
+
+                rest = bindings.dereference(getTail());
+                index = 0;
+            }
+            return count;
+        }
+
+        /**
+         * Copies all elements into the given array, which must have room for
+         * them, and advances past them.
+         */
+        public void copyAll(Term[] into) {
+            int position = 0;
+            while (!atEnd()) {
+                if (rest instanceof ListTerm) {
+                    ListTerm list = (ListTerm) rest;
+                    for (int i = index; i < list.size(); ++i)
+                        into[position++] = list.get(i);
+                } else
+                    into[position++] = getElement();
+
+                rest = bindings.dereference(getTail());
+                index = 0;
+            }
+        }
+
+        private Term getTail() {
+            if (rest instanceof ListTerm)
+                return ((ListTerm) rest).getTail();
+            return ((Structure) rest).getArguments()[1];
+        }
+    }
+
+    public static boolean isBuiltin(Term goal) {
+        if (!(goal instanceof Structure))
+            return false;
+
+        Functor functor = ((Structure) goal).getFunctor();
+        return functor == APPEND || functor == MEMBER || functor == LENGTH || functor == NTH;
+    }
+
+    /**
+     * Returns whether the given call may have more than one solution.
+     */
+    public static boolean isEnumeration(Bindings bindings, Structure goal) {
+        Functor functor = goal.getFunctor();
+        Term[] arguments = goal.getArguments();
+
+        if (functor == MEMBER)
+            return true;
+        if (functor == NTH)
+            return bindings.dereference(arguments[0]) instanceof Variable;
+        if (functor == APPEND)
+            return !isProper(bindings, arguments[0]);
+
+        assert functor == LENGTH;
+        Cursor cursor = new Cursor(bindings, arguments[0]);
+        cursor.skipAll();
+        return cursor.getRest() instanceof Variable &&
+                bindings.dereference(arguments[1]) instanceof Variable;
+    }
+
+    /**
+     * Solves a call which has at most one solution.
+     *
+     * @return Whether the call succeeded. If not, some instantiations may
+     *         have been made already, as with Match.match().
+     */
+    public static boolean solve(Bindings bindings,
+            InternalVariableFactory internalVariableFactory, Structure goal) {
+        Functor functor = goal.getFunctor();
+        Term[] arguments = goal.getArguments();
+
+        if (functor == APPEND) {
+            // Copy the elements of the first list in front of the second
+            Term[] elements = new Term[(int) new Cursor(bindings, arguments[0]).skipAll()];
+            new Cursor(bindings, arguments[0]).copyAll(elements);
+
+            Term result = createList(elements, arguments[1]);
+            return Match.match(bindings, arguments[2], result);
+        }
+
+        if (functor == NTH) {
+            IntegerTerm position = toInteger(bindings, arguments[0]);
+            if (position == null || position.signum() <= 0 || !position.isSmall())
+                return false;
+
+            Cursor cursor = new Cursor(bindings, arguments[1]);
+            long n = position.longValue() - 1;
+            if (cursor.skip(n) != n || cursor.atEnd())
+                return false;
+            return Match.match(bindings, arguments[2], cursor.getElement());
+        }
+
+        assert functor == LENGTH;
+
+        Cursor cursor = new Cursor(bindings, arguments[0]);
+        long count = cursor.skipAll();
+        Term tail = cursor.getRest();
+        if (tail == ListTerm.NIL)
+            return Match.match(bindings, arguments[1], IntegerTerm.valueOf(count));
+        if (!(tail instanceof Variable))
+            return false;
+
+        // Complete the partial list with new variables
+        IntegerTerm length = toInteger(bindings, arguments[1]);
+        if (length == null || !length.isSmall() || length.longValue() < count ||
+                length.longValue() - count > Integer.MAX_VALUE)
+            return false;
+        return Match.match(bindings, tail, createList(createVariables(
+                internalVariableFactory, (int) (length.longValue() - count)), ListTerm.NIL));
+    }
+
+    /**
+     * Returns the solutions of a call which may have more than one.
+     */
+    public static Solutions enumerate(Bindings bindings, final Structure goal) {
+        assert isEnumeration(bindings, goal);
+
+        final Functor functor = goal.getFunctor();
+        final Term[] arguments = goal.getArguments();
+
+        if (functor == MEMBER || functor == NTH) {
+            final Cursor cursor = new Cursor(bindings, arguments[1]);
+            return new Solutions() {
+                private long position = 1;
+
+                @Override
+                public boolean hasNext() {
+                    return !cursor.atEnd();
+                }
+
+                @Override
+                public boolean isLast() {
+                    return cursor.atLast();
+                }
+
+                @Override
+                public boolean next(Bindings bindings,
+                        InternalVariableFactory internalVariableFactory) {
+                    Term element = cursor.getElement();
+                    cursor.advance();
+
+                    if (functor == MEMBER)
+                        return Match.match(bindings, arguments[0], element);
+
+                    IntegerTerm index = IntegerTerm.valueOf(position);
+                    ++position;
+                    return Match.match(bindings, arguments[0], index) &&
+                            Match.match(bindings, arguments[2], element);
+                }
+            };
+        }
+
+        if (functor == LENGTH) {
+            // Complete the partial list with ever more new variables
+            Cursor cursor = new Cursor(bindings, arguments[0]);
+            final long count = cursor.skipAll();
+            final Term tail = cursor.getRest();
+
+            return new Solutions() {
+                private int numVariables = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return true;
+                }
+
+                @Override
+                public boolean isLast() {
+                    return false;
+                }
+
+                @Override
+                public boolean next(Bindings bindings,
+                        InternalVariableFactory internalVariableFactory) {
+                    Term variables = createList(createVariables(internalVariableFactory,
+                            numVariables), ListTerm.NIL);
+                    IntegerTerm length = IntegerTerm.valueOf(count + numVariables);
+                    ++numVariables;
+
+                    return Match.match(bindings, tail, variables) &&
+                            Match.match(bindings, arguments[1], length);
+                }
+            };
+        }
+
+        assert functor == APPEND;
+
+        if (isProper(bindings, arguments[2])) {
+            // Split the third list at every position
+            final Term[] elements = new Term[(int) new Cursor(bindings, arguments[2]).skipAll()];
+            new Cursor(bindings, arguments[2]).copyAll(elements);
+            final Cursor suffix = new Cursor(bindings, arguments[2]);
+
+            return new Solutions() {
+                private int prefixLength = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return prefixLength <= elements.length;
+                }
+
+                @Override
+                public boolean isLast() {
+                    return prefixLength == elements.length;
+                }
+
+                @Override
+                public boolean next(Bindings bindings,
+                        InternalVariableFactory internalVariableFactory) {
+                    Term[] prefixElements = new Term[prefixLength];
+                    System.arraycopy(elements, 0, prefixElements, 0, prefixLength);
+                    Term prefix = createList(prefixElements, ListTerm.NIL);
+                    Term rest = suffix.getRest();
+
+                    ++prefixLength;
+                    if (!suffix.atEnd())
+                        suffix.advance();
+
+                    return Match.match(bindings, arguments[0], prefix) &&
+                            Match.match(bindings, arguments[1], rest);
+                }
+            };
+        }
+
+        // Neither list is known, so there are infinitely many solutions: the
+        // first list consists of ever more new variables, which are the
+        // first elements of the third list as well
+        return new Solutions() {
+            private int prefixLength = 0;
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public boolean isLast() {
+                return false;
+            }
+
+            @Override
+            public boolean next(Bindings bindings,
+                    InternalVariableFactory internalVariableFactory) {
+                Term[] variables = createVariables(internalVariableFactory, prefixLength);
+                ++prefixLength;
+
+                return Match.match(bindings, arguments[0], createList(variables, ListTerm.NIL)) &&
+                        Match.match(bindings, arguments[2], createList(variables, arguments[1]));
+            }
+        };
+    }
+
+    private static boolean isProper(Bindings bindings, Term list) {
+        Cursor cursor = new Cursor(bindings, list);
+        cursor.skipAll();
+        return cursor.getRest() == ListTerm.NIL;
+    }
+
+    private static IntegerTerm toInteger(Bindings bindings, Term term) {
+        term = bindings.dereference(term);
+        return term instanceof IntegerTerm ? (IntegerTerm) term : null;
+    }
+
+    private static Term[] createVariables(InternalVariableFactory internalVariableFactory,
+            int n) {
+        Term[] variables = new Term[n];
+        for (int i = 0; i < n; ++i)
+            variables[i] = internalVariableFactory.create();
+        return variables;
+    }
+
+    /**
+     * Creates a list of the given elements followed by the given tail, which
+     * is just the tail if there are no elements. The array may be shared by
+     * several lists, since it is never modified.
+     */
+    private static Term createList(Term[] elements, Term tail) {
+        if (elements.length == 0)
+            return tail;
+        return new ListTerm(elements, tail);
+    }
+}
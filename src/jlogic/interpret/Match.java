@@ -2,11 +2,18 @@ package jlogic.interpret;
 
 import jlogic.term.AnonymousVariable;
 import jlogic.term.Atom;
+import jlogic.term.IntegerTerm;
+import jlogic.term.InternalVariable;
+import jlogic.term.ListTerm;
+import jlogic.term.SlotVariable;
 import jlogic.term.Structure;
 import jlogic.term.Term;
 import jlogic.term.Variable;
 
 public final class Match {
+    // Depth of the compound terms which are matched recursively
+    private static final int MAX_RECURSION_DEPTH = 64;
+
     // Static class
     private Match() {
         assert false;
@@ -14,68 +21,323 @@ public final class Match {
 
     /**
      * Try to match two terms, instantiating variables as needed.
-     * 
-     * @param frame
-     *        A frame containing pre-existing instantiations. This frame is not
-     *        modified.
+     *
+     * @param bindings
+     *        The instantiations of the current search. New instantiations are
+     *        added in place. If the match is unsuccessful, some of them may
+     *        already have been made, so the caller is expected to undo the
+     *        bindings to a mark taken before calling this method.
      * @param a
      * @param b
-     * @return Either a new frame or null, if the match was unsuccessful.
+     * @return Whether the match was successful.
+     */
+    public static boolean match(Bindings bindings, Term a, Term b) {
+        return match(bindings, a, b, 0);
+    }
+
+    /**
+     * Matches two terms which are nested in the given number of compound
+     * terms being matched recursively.
+     *
+     * Arguments are matched recursively up to a limited depth, which is
+     * fastest for the shallow terms of most programs. Below that depth, they
+     * are matched without recursion, so that terms of any depth can be
+     * matched.
      */
-    public static Frame match(Frame frame, Term a, Term b) {
-        // TODO: Is this still needed?
-        if (a.equals(b))
-            return frame;
+    private static boolean match(Bindings bindings, Term a, Term b, int depth) {
+        if (depth == MAX_RECURSION_DEPTH)
+            return matchDeep(bindings, a, b);
 
+        a = bindings.dereference(a);
+        b = bindings.dereference(b);
+
+        return a == b || matchDifferent(bindings, a, b, depth);
+    }
+
+    /**
+     * Matches two terms in a loop. The pairs of arguments which remain to be
+     * matched are pushed onto a stack in the bindings, in reverse order so
+     * that they are still matched from left to right.
+     */
+    private static boolean matchDeep(Bindings bindings, Term a, Term b) {
+        int base = bindings.getNumPendingMatches();
+
+        while (true) {
+            a = bindings.dereference(a);
+            b = bindings.dereference(b);
+
+            if (a != b && !matchDifferent(bindings, a, b, MAX_RECURSION_DEPTH)) {
+                bindings.dropPendingMatches(base);
+                return false;
+            }
+
+            if (bindings.getNumPendingMatches() == base)
+                return true;
+            b = bindings.popPendingMatch();
+            a = bindings.popPendingMatch();
+        }
+    }
+
+    /**
+     * Matches two dereferenced terms which are not the same. At the maximum
+     * depth, the arguments of compound terms are pushed as pending matches
+     * instead of being matched.
+     */
+    private static boolean matchDifferent(Bindings bindings, Term a, Term b, int depth) {
         // Emulate double dispatch
         if (a instanceof Atom && b instanceof Atom)
-            return matchAtoms(frame, (Atom) a, (Atom) b);
+            return matchAtoms((Atom) a, (Atom) b);
+        if (a instanceof IntegerTerm && b instanceof IntegerTerm)
+            return a.equals(b);
+        if ((a instanceof ListTerm || b instanceof ListTerm) && isCons(a) && isCons(b))
+            return matchLists(bindings, a, b, depth);
         if (a instanceof Structure && b instanceof Structure)
-            return matchStructures(frame, (Structure) a, (Structure) b);
+            return matchStructures(bindings, (Structure) a, (Structure) b, depth);
         if (a instanceof Variable)
-            return matchVariable(frame, (Variable) a, b);
+            return matchVariable(bindings, (Variable) a, b);
         if (b instanceof Variable)
-            return matchVariable(frame, (Variable) b, a);
+            return matchVariable(bindings, (Variable) b, a);
         if (a instanceof AnonymousVariable)
-            return frame;
+            return true;
         if (b instanceof AnonymousVariable)
-            return frame;
+            return true;
 
-        return null;
+        return false;
     }
 
-    private static Frame matchAtoms(Frame frame, Atom a, Atom b) {
-        return a.equals(b) ? frame : null;
+    /**
+     * Try to match a term against a term of a compiled clause without
+     * copying the clause term first. The clause's slot variables are filled in
+     * by the given renaming, which only has to copy those parts of the clause
+     * term that are matched against uninstantiated variables.
+     *
+     * @param bindings
+     *        As in match().
+     * @param term
+     *        A term which contains no slot variables.
+     * @param template
+     *        A term of the clause which is renamed by the given renaming.
+     * @param renaming
+     * @return Whether the match was successful.
+     */
+    public static boolean matchTemplate(Bindings bindings, Term term,
+            Term template, RenameClause renaming) {
+        if (template instanceof SlotVariable) {
+            int slot = ((SlotVariable) template).getSlot();
+
+            Term slotTerm = renaming.getSlot(slot);
+            if (slotTerm == null) {
+                // First occurrence of the variable in the clause: it simply
+                // becomes the term
+                renaming.setSlot(slot, term);
+                return true;
+            }
+            return match(bindings, slotTerm, term);
+        }
+
+        if (template instanceof ListTerm)
+            return matchListTemplate(bindings, term, (ListTerm) template, renaming);
+
+        if (!(template instanceof Structure) || ((Structure) template).isGround()) {
+            // There are no slot variables in the template
+            return match(bindings, term, template);
+        }
+
+        term = bindings.dereference(term);
+        Structure structure = (Structure) template;
+
+        if (term instanceof Variable)
+            return matchVariable(bindings, (Variable) term, structure.accept(renaming));
+        if (term instanceof AnonymousVariable)
+            return true;
+        if (term instanceof ListTerm && structure.getFunctor() == ListTerm.CONS) {
+            ListTerm list = (ListTerm) term;
+            Term[] templateArguments = structure.getArguments();
+            return matchTemplate(bindings, list.get(0), templateArguments[0], renaming)
+                    && matchTemplate(bindings, list.drop(1), templateArguments[1], renaming);
+        }
+        if (!(term instanceof Structure))
+            return false;
+
+        Structure termStructure = (Structure) term;
+        if (termStructure.getFunctor() != structure.getFunctor())
+            return false;
+
+        Term[] termArguments = termStructure.getArguments();
+        Term[] templateArguments = structure.getArguments();
+
+        for (int i = 0; i < termArguments.length; ++i) {
+            if (!matchTemplate(bindings, termArguments[i], templateArguments[i], renaming))
+                return false;
+        }
+
+        return true;
     }
 
-    private static Frame matchVariable(Frame frame, Variable variable, Term term) {
-        Term instantiation = frame.getInstantiation(variable);
-        if (instantiation != null)
-            return match(frame, instantiation, term);
+    /**
+     * Like matchTemplate(), for a template list. The template's elements are
+     * matched one by one, until the rest of the template contains no slot
+     * variables.
+     */
+    private static boolean matchListTemplate(Bindings bindings, Term term,
+            ListTerm template, RenameClause renaming) {
+        Term rest = template;
+        while (rest instanceof ListTerm) {
+            ListTerm list = (ListTerm) rest;
+            if (list.isGround())
+                return match(bindings, term, list);
+
+            term = bindings.dereference(term);
+            if (term instanceof Variable)
+                return matchVariable(bindings, (Variable) term, list.accept(renaming));
+            if (term instanceof AnonymousVariable)
+                return true;
+            if (!isCons(term))
+                return false;
+
+            if (!matchTemplate(bindings, getHead(term), list.get(0), renaming))
+                return false;
 
-        Frame newFrame = new Frame(frame);
-        newFrame.instantiate(variable, term);
-        return newFrame;
+            term = getRest(term);
+            rest = list.drop(1);
+        }
+
+        return matchTemplate(bindings, term, rest, renaming);
+    }
+
+    /**
+     * Matches two lists, each of which is a ListTerm or a cons structure.
+     * The lists are walked in a loop instead of recursively, and elements of
+     * ListTerms are matched array by array. At the maximum depth, the pairs
+     * of elements and rests are pushed instead.
+     */
+    private static boolean matchLists(Bindings bindings, Term a, Term b, int depth) {
+        if (depth == MAX_RECURSION_DEPTH) {
+            if (a instanceof ListTerm && b instanceof ListTerm) {
+                ListTerm listA = (ListTerm) a;
+                ListTerm listB = (ListTerm) b;
+                if (listA.isGround() && listB.isGround() && listA.equals(listB))
+                    return true;
+
+                int n = Math.min(listA.size(), listB.size());
+                bindings.pushPendingMatch(listA.drop(n), listB.drop(n));
+                for (int i = n - 1; i >= 0; --i)
+                    bindings.pushPendingMatch(listA.get(i), listB.get(i));
+            } else {
+                bindings.pushPendingMatch(getRest(a), getRest(b));
+                bindings.pushPendingMatch(getHead(a), getHead(b));
+            }
+            return true;
+        }
+
+        while (true) {
+            a = bindings.dereference(a);
+            b = bindings.dereference(b);
+
+            if (a instanceof ListTerm && b instanceof ListTerm) {
+                ListTerm listA = (ListTerm) a;
+                ListTerm listB = (ListTerm) b;
+                if (listA.isGround() && listB.isGround() && listA.equals(listB))
+                    return true;
+
+                int n = Math.min(listA.size(), listB.size());
+                for (int i = 0; i < n; ++i) {
+                    if (!match(bindings, listA.get(i), listB.get(i), depth + 1))
+                        return false;
+                }
+
+                a = listA.drop(n);
+                b = listB.drop(n);
+            } else if (isCons(a) && isCons(b)) {
+                if (!match(bindings, getHead(a), getHead(b), depth + 1))
+                    return false;
+
+                a = getRest(a);
+                b = getRest(b);
+            } else
+                return match(bindings, a, b, depth + 1);
+        }
+    }
+
+    /**
+     * Returns whether the given dereferenced term is a non-empty list, i.e.
+     * a ListTerm or a cons structure.
+     */
+    static boolean isCons(Term term) {
+        return term instanceof ListTerm || (term instanceof Structure &&
+                ((Structure) term).getFunctor() == ListTerm.CONS);
     }
 
-    private static Frame matchStructures(Frame frame, Structure a, Structure b) {
-        if (a.getArity() != b.getArity())
-            return null;
-        if (!a.getFunctor().equals(b.getFunctor()))
-            return null;
+    /**
+     * Returns the first element of a non-empty list.
+     */
+    static Term getHead(Term list) {
+        if (list instanceof ListTerm)
+            return ((ListTerm) list).get(0);
+        return ((Structure) list).getArguments()[0];
+    }
+
+    /**
+     * Returns a non-empty list without its first element.
+     */
+    static Term getRest(Term list) {
+        if (list instanceof ListTerm)
+            return ((ListTerm) list).drop(1);
+        return ((Structure) list).getArguments()[1];
+    }
+
+    private static boolean matchAtoms(Atom a, Atom b) {
+        // Atoms are interned
+        return a == b;
+    }
+
+    private static boolean matchVariable(Bindings bindings, Variable variable, Term term) {
+        // Only the renamed copies of clauses and queries are matched, which
+        // contain nothing but internal variables
+        assert variable instanceof InternalVariable : variable;
+
+        // The variable has been dereferenced already, so it can not have an
+        // instantiation at this point
+        InternalVariable internalVariable = (InternalVariable) variable;
+        assert bindings.getInstantiation(internalVariable) == null;
+
+        bindings.instantiate(internalVariable, term);
+        return true;
+    }
+
+    private static boolean matchStructures(Bindings bindings, Structure a, Structure b,
+            int depth) {
+        // Ground structures can not instantiate anything. Their equality check
+        // is cheap thanks to cached hash codes and shared instances. Lists
+        // unify with cons structures they are not equal to though, so those
+        // are compared argument by argument.
+        if (a.isGround() && b.isGround()) {
+            if (a.equals(b))
+                return true;
+            if (!a.containsLists() && !b.containsLists())
+                return false;
+        }
+
+        // Functors are interned and include the arity
+        if (a.getFunctor() != b.getFunctor())
+            return false;
 
         Term[] argumentsA = a.getArguments();
         Term[] argumentsB = b.getArguments();
 
         assert argumentsA.length == argumentsB.length;
 
-        Frame newFrame = new Frame(frame);
+        if (depth == MAX_RECURSION_DEPTH) {
+            for (int i = argumentsA.length - 1; i >= 0; --i)
+                bindings.pushPendingMatch(argumentsA[i], argumentsB[i]);
+            return true;
+        }
+
         for (int i = 0; i < argumentsA.length; ++i) {
-            newFrame = match(newFrame, argumentsA[i], argumentsB[i]);
-            if (newFrame == null)
-                return null;
+            if (!match(bindings, argumentsA[i], argumentsB[i], depth + 1))
+                return false;
         }
 
-        return newFrame;
+        return true;
     }
 }
@@ -0,0 +1,144 @@
+package jlogic.interpret;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import jlogic.Knowledge;
+import jlogic.term.Structure;
+
+/**
+ * Finds all results of queries using OR-parallelism: the alternative clauses
+ * of a choice point are handed to separate tasks of a ForkJoinPool, each of
+ * which searches with its own bindings.
+ *
+ * Granularity is controlled by splitting the alternatives of a choice point
+ * in halves, as long as there are enough of them and the number of nested
+ * splits is below a limit. This bounds the number of tasks, while work
+ * stealing balances the load between the pool's threads. Since where the
+ * search is split depends only on the query, the results are always
+ * collected in the same order. Optionally, they are in the order of the
+ * sequential search.
+ *
+ * Optionally, the search is AND-parallel as well: when the remaining goals of
+ * a node fall into groups which share no unbound variables, each group is
+ * solved by a separate task, and the node's results are the cross product of
+ * the groups' answers. This avoids backtracking into goals which cannot
+ * affect each other, but all answers of every group are computed first, so
+ * it must not be used for goals with infinitely many answers. In ordered
+ * mode, goals are only split if each group is a contiguous part of the goals,
+ * which keeps the results in sequential order.
+ */
+public final class ParallelSearch {
+    // Default number of alternatives a choice point must have to be split
+    private static final int DEFAULT_MIN_FORK_ALTERNATIVES = 2;
+
+    // By default, there are up to 2^4 tasks per thread of the pool
+    private static final int EXTRA_FORK_DEPTH = 4;
+
+    private final Knowledge knowledge;
+    private final ForkJoinPool pool;
+
+    private final int minForkAlternatives;
+    private final int maxForkDepth;
+    private final boolean ordered;
+    private final boolean andParallel;
+
+    /**
+     * Creates a parallel search with default granularity, collecting results
+     * in sequential order.
+     */
+    public ParallelSearch(Knowledge knowledge, ForkJoinPool pool) {
+        this(knowledge, pool, DEFAULT_MIN_FORK_ALTERNATIVES,
+                getDefaultMaxForkDepth(pool.getParallelism()), true);
+    }
+
+    /**
+     * @param pool
+     *        The pool running the tasks, which determines the parallelism.
+     * @param minForkAlternatives
+     *        The number of alternatives a choice point must have at least in
+     *        order to be split.
+     * @param maxForkDepth
+     *        The number of times a search may be split along one path. At most
+     *        2^maxForkDepth tasks are created.
+     * @param ordered
+     *        Whether the results are collected in the order in which the
+     *        sequential search would find them. Otherwise, each task's own
+     *        results come before the results of the tasks it created.
+     */
+    public ParallelSearch(Knowledge knowledge, ForkJoinPool pool,
+            int minForkAlternatives, int maxForkDepth, boolean ordered) {
+        this(knowledge, pool, minForkAlternatives, maxForkDepth, ordered, false);
+    }
+
+    /**
+     * @param andParallel
+     *        Whether independent goals are solved by separate tasks.
+     */
+    public ParallelSearch(Knowledge knowledge, ForkJoinPool pool,
+            int minForkAlternatives, int maxForkDepth, boolean ordered,
+            boolean andParallel) {
+        if (minForkAlternatives < 2)
+            throw new IllegalArgumentException("minForkAlternatives must be at least 2");
+        if (maxForkDepth < 0)
+            throw new IllegalArgumentException("maxForkDepth must not be negative");
+
+        this.knowledge = knowledge;
+        this.pool = pool;
+        this.minForkAlternatives = minForkAlternatives;
+        this.maxForkDepth = maxForkDepth;
+        this.ordered = ordered;
+        this.andParallel = andParallel;
+    }
+
+    /**
+     * Returns the frames of all matches of the given query.
+     */
+    public List<Frame> searchAll(Structure query) {
+        SearchTask task = new SearchTask(this, query);
+        pool.invoke(task);
+
+        ArrayList<Frame> results = new ArrayList<Frame>();
+        task.collectResults(results);
+        return results;
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    public boolean isOrdered() {
+        return ordered;
+    }
+
+    public boolean isAndParallel() {
+        return andParallel;
+    }
+
+    Knowledge getKnowledge() {
+        return knowledge;
+    }
+
+    /**
+     * Returns whether a choice point with the given number of alternatives
+     * is split in a search which has been split forkDepth times already.
+     */
+    boolean mayFork(int forkDepth, int numAlternatives) {
+        return forkDepth < maxForkDepth && numAlternatives >= minForkAlternatives;
+    }
+
+    /**
+     * Returns whether independent goals are split in a search which has been
+     * split forkDepth times already.
+     */
+    boolean mayForkGoals(int forkDepth) {
+        return andParallel && forkDepth < maxForkDepth;
+    }
+
+    private static int getDefaultMaxForkDepth(int parallelism) {
+        // Ceiling of the binary logarithm
+        int log = 32 - Integer.numberOfLeadingZeros(Math.max(parallelism - 1, 0));
+        return log + EXTRA_FORK_DEPTH;
+    }
+}
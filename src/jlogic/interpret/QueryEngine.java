@@ -0,0 +1,191 @@
+package jlogic.interpret;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jlogic.Knowledge;
+import jlogic.term.Structure;
+
+/**
+ * Runs many queries at once against one shared knowledge base. Every query is
+ * evaluated by its own SearchTree, which has its own bindings and
+ * InternalVariableFactory. Queries share the knowledge base, including its
+ * answer tables: a complete table computed by one query answers the calls of
+ * the others.
+ *
+ * Queries may change the knowledge base with assert and retract. A call sees
+ * the clauses of its predicate as they were when it started, and other
+ * queries see the changes from their next calls on. Every change drops the
+ * shared answer tables, so tabled calls started afterwards are evaluated
+ * again.
+ *
+ * The number of queries running at the same time is bounded. Queries
+ * submitted beyond that wait until a running query has finished. The time
+ * each query waited and ran is reported in its result, and totals are kept
+ * for all queries.
+ */
+public final class QueryEngine {
+    private final Knowledge knowledge;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+
+    // Bounds the number of queries running at once, in case the executor
+    // does not
+    private final Semaphore running;
+    private final int maxConcurrentQueries;
+
+    private final AtomicLong numCompleted = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    /**
+     * Creates an engine with a pool of the given number of threads, which
+     * is shut down by shutdown().
+     */
+    public QueryEngine(Knowledge knowledge, int maxConcurrentQueries) {
+        this(knowledge, createPool(maxConcurrentQueries), maxConcurrentQueries, true);
+    }
+
+    /**
+     * Creates an engine running queries on the given executor, for example
+     * one starting a virtual thread per task. The executor is not shut down
+     * by shutdown().
+     *
+     * @param maxConcurrentQueries
+     *        The number of queries which may run at the same time.
+     */
+    public QueryEngine(Knowledge knowledge, ExecutorService executor,
+            int maxConcurrentQueries) {
+        this(knowledge, executor, maxConcurrentQueries, false);
+    }
+
+    private QueryEngine(Knowledge knowledge, ExecutorService executor,
+            int maxConcurrentQueries, boolean ownsExecutor) {
+        if (knowledge == null)
+            throw new IllegalArgumentException("knowledge must not be null");
+        if (maxConcurrentQueries < 1)
+            throw new IllegalArgumentException("maxConcurrentQueries must be positive");
+
+        this.knowledge = knowledge;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.maxConcurrentQueries = maxConcurrentQueries;
+        running = new Semaphore(maxConcurrentQueries);
+    }
+
+    /**
+     * Submits a query for finding all of its matches.
+     */
+    public Future<QueryResult> submit(Structure query) {
+        return submit(query, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Submits a query for finding at most the given number of matches.
+     */
+    public Future<QueryResult> submit(final Structure query, final int maxResults) {
+        if (query == null)
+            throw new IllegalArgumentException("query must not be null");
+        if (maxResults < 0)
+            throw new IllegalArgumentException("maxResults must not be negative");
+
+        final long submitTime = System.nanoTime();
+        return executor.submit(new Callable<QueryResult>() {
+            @Override
+            public QueryResult call() throws InterruptedException {
+                running.acquire();
+                try {
+                    return run(query, maxResults, submitTime);
+                } finally {
+                    running.release();
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops accepting queries and waits for the submitted ones to finish, if
+     * the engine created its own pool.
+     */
+    public void shutdown() throws InterruptedException {
+        if (!ownsExecutor)
+            return;
+
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    public Knowledge getKnowledge() {
+        return knowledge;
+    }
+
+    public int getMaxConcurrentQueries() {
+        return maxConcurrentQueries;
+    }
+
+    /**
+     * Returns the number of queries which have finished.
+     */
+    public long getNumCompleted() {
+        return numCompleted.get();
+    }
+
+    /**
+     * Returns the average latency of the finished queries, or zero if none
+     * have finished.
+     */
+    public long getMeanLatencyNanos() {
+        long n = numCompleted.get();
+        return n == 0 ? 0 : totalLatencyNanos.get() / n;
+    }
+
+    public long getMaxLatencyNanos() {
+        return maxLatencyNanos.get();
+    }
+
+    private QueryResult run(Structure query, int maxResults, long submitTime) {
+        long startTime = System.nanoTime();
+
+        SearchTree tree = new SearchTree(knowledge, query);
+        ArrayList<Frame> frames = new ArrayList<Frame>();
+        boolean complete = false;
+
+        while (frames.size() < maxResults) {
+            Frame frame = tree.searchOne();
+            if (frame == null) {
+                complete = true;
+                break;
+            }
+            frames.add(frame);
+        }
+
+        long endTime = System.nanoTime();
+        QueryResult result = new QueryResult(query, frames, complete,
+                startTime - submitTime, endTime - startTime);
+        record(result.getLatencyNanos());
+        return result;
+    }
+
+    private void record(long latencyNanos) {
+        numCompleted.incrementAndGet();
+        totalLatencyNanos.addAndGet(latencyNanos);
+
+        long max;
+        do {
+            max = maxLatencyNanos.get();
+        } while (latencyNanos > max && !maxLatencyNanos.compareAndSet(max, latencyNanos));
+    }
+
+    private static ExecutorService createPool(int maxConcurrentQueries) {
+        if (maxConcurrentQueries < 1)
+            throw new IllegalArgumentException("maxConcurrentQueries must be positive");
+
+        return Executors.newFixedThreadPool(maxConcurrentQueries);
+    }
+}
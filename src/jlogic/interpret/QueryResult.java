@@ -0,0 +1,73 @@
+package jlogic.interpret;
+
+import java.util.Collections;
+import java.util.List;
+
+import jlogic.term.Structure;
+
+/**
+ * The results of a query run by a QueryEngine, along with how long it took.
+ */
+public final class QueryResult {
+    private final Structure query;
+    private final List<Frame> frames;
+    private final boolean complete;
+
+    private final long waitNanos;
+    private final long runNanos;
+
+    QueryResult(Structure query, List<Frame> frames, boolean complete,
+            long waitNanos, long runNanos) {
+        this.query = query;
+        this.frames = Collections.unmodifiableList(frames);
+        this.complete = complete;
+        this.waitNanos = waitNanos;
+        this.runNanos = runNanos;
+    }
+
+    @Override
+    public String toString() {
+        return query + ": " + frames.size() + (complete ? " results in " : "+ results in ") +
+                getLatencyNanos() / 1000 + "us";
+    }
+
+    public Structure getQuery() {
+        return query;
+    }
+
+    /**
+     * Returns the frames of the matches found, in the order of the search.
+     */
+    public List<Frame> getFrames() {
+        return frames;
+    }
+
+    /**
+     * Returns whether all matches were found. This is false if the search
+     * stopped at the maximum number of results.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Returns the time between submitting the query and starting its search.
+     */
+    public long getWaitNanos() {
+        return waitNanos;
+    }
+
+    /**
+     * Returns the time spent searching.
+     */
+    public long getRunNanos() {
+        return runNanos;
+    }
+
+    /**
+     * Returns the time between submitting the query and having its results.
+     */
+    public long getLatencyNanos() {
+        return waitNanos + runNanos;
+    }
+}
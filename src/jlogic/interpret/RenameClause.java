@@ -0,0 +1,47 @@
+package jlogic.interpret;
+
+import jlogic.term.CopyTerm;
+import jlogic.term.SlotVariable;
+import jlogic.term.Term;
+import jlogic.term.Variable;
+
+/**
+ * Copies the terms of a compiled clause, replacing its slot variables. A slot
+ * is either filled in while matching the clause's head against a goal, or
+ * with a new internal variable when it is first needed for copying.
+ */
+public final class RenameClause extends CopyTerm {
+    private final InternalVariableFactory internalVariableFactory;
+    private final Term[] slots;
+
+    public RenameClause(InternalVariableFactory internalVariableFactory,
+            int numSlots) {
+        super(false);
+
+        this.internalVariableFactory = internalVariableFactory;
+        this.slots = new Term[numSlots];
+    }
+
+    /**
+     * Returns the term in the given slot, or null if it has not been filled.
+     */
+    public Term getSlot(int slot) {
+        return slots[slot];
+    }
+
+    public void setSlot(int slot, Term term) {
+        assert slots[slot] == null;
+
+        slots[slot] = term;
+    }
+
+    @Override
+    protected Term replace(Variable variable) {
+        assert variable instanceof SlotVariable : variable;
+
+        int slot = ((SlotVariable) variable).getSlot();
+        if (slots[slot] == null)
+            slots[slot] = internalVariableFactory.create();
+        return slots[slot];
+    }
+}
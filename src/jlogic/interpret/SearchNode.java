@@ -1,92 +1,254 @@
 package jlogic.interpret;
 
-import jlogic.Knowledge;
+import java.util.Map;
+
+import jlogic.AnswerTable;
+import jlogic.Control;
+import jlogic.FactTable;
+import jlogic.NumberVariables;
 import jlogic.Predicate;
 import jlogic.Rule;
+import jlogic.term.Atom;
+import jlogic.term.CutBarrier;
+import jlogic.term.IntegerTerm;
+import jlogic.term.ListTerm;
 import jlogic.term.Structure;
 import jlogic.term.Term;
+import jlogic.term.Variable;
 
 import fj.data.List;
 
 final class SearchNode {
-    // These two references are invariant across all search nodes in one tree
-    private final Knowledge knowledge;
-    private final InternalVariableFactory internalVariableFactory;
+    private static final Term[] NO_GOALS = new Term[0];
+
+    // This reference is invariant across all search nodes in one tree
+    private final SearchTree tree;
+
+    // The node to give control to when backtracking from this node. This is
+    // the closest ancestor which still has clauses left to try, so that
+    // ancestors without alternatives are skipped and can be garbage collected.
+    // A cut replaces it by an older ancestor, which makes the choice points
+    // in between garbage as well.
+    private SearchNode choicePoint;
+
+    // When this node started with its goals, relative to the other nodes in
+    // the tree. Choice points with numbers at least as great as a cut
+    // barrier are removed by the cut.
+    private long number;
+
+    // Position of the bindings trail at the time this node was created.
+    // Before trying another clause, everything after it is undone.
+    private int trailMark;
 
-    private final SearchNode parent;
+    // Number of internal variables at the time this node was created. The
+    // variables created afterwards are unreachable after backtracking to this
+    // node, so their ids are reused.
+    private int variableMark;
+
+    // Whether this node is part of the recorded tree
+    private final boolean recorded;
+
+    // Distance to the root, only used to limit the depth of the recorded tree
+    private final int depth;
+
+    // Whether some of our children were not recorded
+    private boolean truncated = false;
+
+    // The instantiations made by our parent to create this node. They are
+    // only kept to create pretty graphs using toDOT, if this node is recorded.
     private final Frame frame;
 
-    // List of goals that must be fulfilled
-    private final List<Term> goals;
+    // The result frame, if this node has an empty goal list and is recorded
+    private Frame resultFrame = null;
+
+    // Stack of goals that must be fulfilled. The goals are not instantiated,
+    // so that a step does not copy the goals it leaves alone. Their variables
+    // are dereferenced in the bindings as the goals are solved.
+    private Goals goals;
 
-    // Null if goals is empty, head of goals otherwise
-    private final Term goal;
+    // Null if goals is empty, the dereferenced head of goals otherwise
+    private Term goal;
 
     // Null if goals is empty or there is no predicate of the name that
     // goal requires
-    private final Predicate goalPredicate;
+    private Predicate goalPredicate;
+
+    // Null unless goalPredicate is null and goal is answered by a fact table
+    private FactTable goalFactTable;
+
+    // The clauses of goalPredicate which can match goal according to the
+    // predicate's index
+    private Rule[] clauses;
+
+    private int numClauses;
+    private int currentClause;
+
+    // Whether our goals and clauses have not been considered for handing
+    // them to other tasks yet
+    private boolean mayFork;
+
+    // Set if our goals are solved as independent groups by other tasks, and
+    // the combination of the groups' answers to yield next
+    private IndependentGoals independentGoals;
+    private int[] combination;
+
+    // Whether goal is answered from its table if goalPredicate is tabled.
+    // This is only false for the root of a tree evaluating that table.
+    private boolean consumeTable;
+
+    // The table answering goal, once it has been looked up
+    private AnswerTable table;
+
+    // The variables of goal, in the order of the table's variant
+    private Variable[] callVariables;
+
+    private int currentAnswer;
 
-    private final int numClauses;
-    private int currentClause = 0;
+    // The goals replacing goal if it is a disjunction or an if-then, created
+    // when goal is first tried
+    private Term[] branches;
+    private int currentBranch;
 
-    // The children list is only used to create pretty graphs using toDOT.
-    // Since the actual evaluation is depth-first, control is always
-    // immediately given to newly created children. Hence, we don't need a
-    // list of children in the evaluation.
+    // The remaining solutions of goal if it is a call to a fact table or to
+    // a built-in predicate with more than one solution
+    private Solutions solutions;
+
+    // The children list is only used to create pretty graphs using toDOT, if
+    // this node is recorded. Since the actual evaluation is depth-first,
+    // control is always immediately given to newly created children. Hence,
+    // we don't need a list of children in the evaluation.
     private List<SearchNode> children = List.nil();
 
     private Predicate getPredicate(Term term) {
         if (term instanceof Structure) {
             Structure structure = (Structure) term;
-            return knowledge.getPredicate(structure.getFullName());
+            return tree.getKnowledge().getPredicate(structure.getFunctor());
         }
+        if (term instanceof Atom || term instanceof IntegerTerm || term instanceof ListTerm
+                || term instanceof CutBarrier)
+            return null;
         throw new AssertionError(term.toString()); // TODO
     }
 
-    // TODO: Hack
-    private static List<Term> getTerms(Rule rule) {
-        List<Term> result = List.nil();
+    private FactTable getFactTable(Term term) {
+        if (goalPredicate != null || !(term instanceof Structure))
+            return null;
+        return tree.getKnowledge().getFactTable(((Structure) term).getFunctor());
+    }
 
-        if (!rule.isFact()) {
-            for (Term term : rule.getBody()) {
-                result = result.append(List.single(term));
-            }
-        }
+    private Rule[] getClauses() {
+        if (goalPredicate == null)
+            return null;
 
-        return result;
+        Term[] arguments = ((Structure) goal).getArguments();
+        if (arguments.length == 0)
+            return goalPredicate.getClauses();
+
+        Term[] dereferenced = new Term[arguments.length];
+        for (int i = 0; i < arguments.length; ++i)
+            dereferenced[i] = tree.getBindings().dereference(arguments[i]);
+
+        return goalPredicate.getClauses(dereferenced);
     }
 
-    public SearchNode(Knowledge knowledge,
-            InternalVariableFactory internalVariableFactory, SearchNode parent,
-            Frame frame, List<Term> goals) {
-        this.knowledge = knowledge;
-        this.internalVariableFactory = internalVariableFactory;
-        this.parent = parent;
-        this.goals = goals;
+    public SearchNode(SearchTree tree, SearchNode choicePoint,
+            boolean recorded, int depth, Frame frame, Goals goals) {
+        this(tree, choicePoint, recorded, depth, frame, goals, true);
+    }
+
+    public SearchNode(SearchTree tree, SearchNode choicePoint,
+            boolean recorded, int depth, Frame frame, Goals goals,
+            boolean consumeTable) {
+        assert recorded == (frame != null);
+
+        this.tree = tree;
+        this.choicePoint = choicePoint;
+        this.recorded = recorded;
+        this.depth = depth;
         this.frame = frame;
 
-        goal = goals.isEmpty() ? null : goals.head();
-        goalPredicate = goal != null ? getPredicate(this.goal) : null;
-        numClauses = goalPredicate != null ? goalPredicate.getClauses().length : 0;
+        setGoals(goals);
+        this.consumeTable = consumeTable;
     }
 
-    public SearchNode getParent() {
-        return parent;
+    /**
+     * Creates the root of a tree which continues the search of a node in
+     * another tree with some of its clauses.
+     */
+    public SearchNode(SearchTree tree, Goals goals, Rule[] clauses,
+            int fromClause, int toClause) {
+        this(tree, null, false, 0, null, goals, false);
+
+        this.clauses = clauses;
+        this.currentClause = fromClause;
+        this.numClauses = toClause;
+    }
+
+    /**
+     * Makes this node start over with the given goals.
+     */
+    private void setGoals(Goals goals) {
+        this.goals = goals;
+
+        number = tree.startNode();
+        trailMark = tree.getBindings().getMark();
+        variableMark = tree.getInternalVariableFactory().getMark();
+
+        goal = goals.isEmpty() ? null : tree.getBindings().dereference(goals.head());
+        goalPredicate = goal != null ? getPredicate(this.goal) : null;
+        goalFactTable = goal != null ? getFactTable(this.goal) : null;
+        clauses = getClauses();
+        numClauses = clauses != null ? clauses.length : 0;
+        currentClause = 0;
+        mayFork = true;
+        independentGoals = null;
+        combination = null;
+
+        consumeTable = true;
+        table = null;
+        callVariables = null;
+        currentAnswer = 0;
+
+        branches = null;
+        currentBranch = 0;
+
+        solutions = null;
     }
 
+    /**
+     * Returns the recorded children of this node, in the order they were
+     * created.
+     */
     public List<SearchNode> getChildren() {
-        return children;
+        return children.reverse();
     }
 
-    public List<Term> getGoals() {
+    public Goals getGoals() {
         return goals;
     }
 
     /**
-     * Returns a copy of this node's frame.
+     * Returns whether some of this node's children were not recorded because
+     * the recording budget was exhausted.
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Returns the instantiations that were made by this node's parent in
+     * order to create this node. Null unless this node is recorded.
      */
     public Frame getFrame() {
-        return new Frame(frame);
+        return frame;
+    }
+
+    /**
+     * Returns the result frame of this node, or null if this node has not
+     * yielded a result or is not recorded.
+     */
+    public Frame getResultFrame() {
+        return resultFrame;
     }
 
     /**
@@ -94,66 +256,389 @@ final class SearchNode {
      * and backtracking as needed. This is the meat of the evaluation algorithm.
      */
     public SearchResult searchOne() {
+        Bindings bindings = tree.getBindings();
+
+        // Forget the instantiations and variables of our previous child, if
+        // any
+        backtrack();
+
         if (goals.isEmpty()) {
             // An empty goal list means that we have found a valid result.
-            // Hand control to our parent and return our frame of variable
-            // instantiations.
-            return SearchResult.returnOneResultAndYieldControl(frame, parent);
+            // Hand control to our choice point. The tree reads the result
+            // from the bindings, which stay as they are until our choice
+            // point backtracks.
+            if (recorded)
+                resultFrame = tree.createResultFrame();
+            return SearchResult.returnOneResultAndYieldControl(choicePoint);
+        }
+
+        if (Control.isControl(goal))
+            return searchControl();
+        if (goalFactTable != null)
+            return searchFacts();
+        if (goalPredicate == null && Builtins.isBuiltin(goal))
+            return searchBuiltin();
+
+        if (mayFork && independentGoals == null) {
+            independentGoals = tree.forkIndependentGoals(goals, variableMark);
+            if (independentGoals != null)
+                mayFork = false;
         }
+        if (independentGoals != null)
+            return searchCombination();
+
+        if (goalPredicate != null && goalPredicate.isTabled() && consumeTable)
+            return searchAnswer();
 
         if (currentClause == numClauses || goalPredicate == null) {
             // All clauses in our predicate were tried already, or our
-            // predicate does not exist: backtrack to parent.
-            return SearchResult.yieldControl(parent);
+            // predicate does not exist: backtrack.
+            return SearchResult.yieldControl(choicePoint);
+        }
+
+        if (mayFork) {
+            // Hand the earlier half of our clauses to another task as long as
+            // the granularity allows it, keeping the later half. A cut in
+            // one clause removes the later ones, so those must stay here.
+            mayFork = false;
+            while (numClauses - currentClause > 1 && !goalPredicate.isCutting()) {
+                int middle = currentClause + (numClauses - currentClause) / 2;
+                if (!tree.fork(goals, clauses, currentClause, middle, variableMark))
+                    break;
+                currentClause = middle;
+            }
         }
 
-        Frame matchFrame;
         do {
-            Rule clause = this.goalPredicate.getClauses()[currentClause];
+            Rule clause = clauses[currentClause];
             ++currentClause;
 
-            // Replace all free variables in the clause's arguments and body
-            // by internal variables before matching
-            Frame augmentedFrame = new Frame(frame);
-            InternalizeFreeVariables internalizer =
-                    new InternalizeFreeVariables(internalVariableFactory,
-                            augmentedFrame);
-            Instantiate instantiate = new Instantiate(augmentedFrame);
+            // If this is our last candidate clause, we are not a choice point
+            // anymore
+            boolean isChoicePoint = currentClause != numClauses;
+            setTrailBoundary(isChoicePoint);
 
-            Term clauseHead = clause.getHead().accept(internalizer);
-            List<Term> clauseBody = instantiate.visit(getTerms(clause));
-
-            matchFrame = Match.match(frame, goal, clauseHead);
+            // Match the clause's head against our goal, renaming its
+            // variables only as far as needed. The body is only renamed once
+            // the head has matched.
+            RenameClause renaming = new RenameClause(
+                    tree.getInternalVariableFactory(), clause.getNumVariables());
 
             // Create a new child with the first clause in our predicate
             // that matches
-            if (matchFrame != null) {
-                matchFrame = new Frame(matchFrame);
+            if (Match.matchTemplate(bindings, goal, clause.getHead(), renaming)) {
+                // The remaining goals are shared with this node as they are
+                return createChild(goals.tail().push(renameBody(clause, renaming)),
+                        isChoicePoint);
+            }
+
+            backtrack();
+        } while (currentClause != numClauses);
+
+        // No matching clause was found. Backtrack.
+        return SearchResult.yieldControl(choicePoint);
+    }
+
+    /**
+     * Solves our goal if it is a control construct, which is replaced by other
+     * goals or removes choice points.
+     */
+    private SearchResult searchControl() {
+        if (goal instanceof CutBarrier) {
+            // Skip the choice points created since the barrier. Nothing
+            // refers to them anymore, so they are garbage right away.
+            long barrier = ((CutBarrier) goal).getBarrier();
+            while (choicePoint != null && choicePoint.number >= barrier)
+                choicePoint = choicePoint.choicePoint;
+
+            return createChild(goals.tail(), false);
+        }
+
+        if (goal == Control.TRUE)
+            return createChild(goals.tail(), false);
+
+        Structure structure = (Structure) goal;
+        Term[] arguments = structure.getArguments();
+
+        if (structure.getFunctor() == Control.CONJUNCTION) {
+            return createChild(goals.tail().push(new Term[] { arguments[0], arguments[1] }),
+                    false);
+        }
+
+        if (branches == null) {
+            Term left = tree.getBindings().dereference(arguments[0]);
+            if (structure.getFunctor() == Control.IF_THEN)
+                branches = new Term[] { createIfThen(arguments[0], arguments[1]) };
+            else if (left instanceof Structure &&
+                    ((Structure) left).getFunctor() == Control.IF_THEN) {
+                Term[] ifThen = ((Structure) left).getArguments();
+                branches = new Term[] { createIfThen(ifThen[0], ifThen[1]), arguments[1] };
+            } else
+                branches = new Term[] { arguments[0], arguments[1] };
+        }
+
+        Term branch = branches[currentBranch];
+        ++currentBranch;
 
-                // Instantiate the new goal list with known variables,
-                // then replace all remaining free variables by internal
-                // variables
-                instantiate = new Instantiate(matchFrame);
-                internalizer =
-                        new InternalizeFreeVariables(internalVariableFactory,
-                                new Frame(matchFrame));
+        boolean isChoicePoint = currentBranch != branches.length;
+        return createChild(goals.tail().push(branch), isChoicePoint);
+    }
+
+    /**
+     * Solves our goal if it is a call to a built-in predicate.
+     */
+    private SearchResult searchBuiltin() {
+        Bindings bindings = tree.getBindings();
+        InternalVariableFactory internalVariableFactory = tree.getInternalVariableFactory();
+        Structure structure = (Structure) goal;
+
+        if (solutions == null && !Builtins.isEnumeration(bindings, structure)) {
+            setTrailBoundary(false);
+            if (Builtins.solve(tree.getKnowledge(), bindings, internalVariableFactory,
+                    structure))
+                return createChild(goals.tail(), false);
+
+            backtrack();
+            return SearchResult.yieldControl(choicePoint);
+        }
+
+        if (solutions == null)
+            solutions = Builtins.enumerate(tree.getKnowledge(), bindings, structure);
+
+        return searchSolutions();
+    }
+
+    /**
+     * Solves our goal if it is a call to a fact table.
+     */
+    private SearchResult searchFacts() {
+        if (solutions == null)
+            solutions = Facts.enumerate(goalFactTable, tree.getBindings(), (Structure) goal);
+
+        return searchSolutions();
+    }
+
+    /**
+     * Continues with the next of our goal's remaining solutions.
+     */
+    private SearchResult searchSolutions() {
+        Bindings bindings = tree.getBindings();
+        InternalVariableFactory internalVariableFactory = tree.getInternalVariableFactory();
+
+        while (solutions.hasNext()) {
+            boolean isChoicePoint = !solutions.isLast();
+            setTrailBoundary(isChoicePoint);
+
+            if (solutions.next(bindings, internalVariableFactory))
+                return createChild(goals.tail(), isChoicePoint);
+
+            backtrack();
+            if (!isChoicePoint)
+                break;
+        }
+
+        // No solutions are left. Backtrack.
+        return SearchResult.yieldControl(choicePoint);
+    }
+
+    /**
+     * Returns the goal solving the then branch of an if-then for the first
+     * solution of its condition only. The cut after the condition removes
+     * the condition's choice points and the else branch, so it must be
+     * created by the node holding the if-then.
+     */
+    private Term createIfThen(Term condition, Term then) {
+        // A cut in the condition only removes the condition's own choice
+        // points. Cuts may be bound to variables of the condition.
+        Term localCondition = Control.replaceCuts(
+                condition.accept(new Instantiate(tree.getBindings())),
+                new CutBarrier(tree.getNextNodeStart()));
+
+        Term cutThen = new Structure(Control.CONJUNCTION,
+                new Term[] { new CutBarrier(number), then });
+        return new Structure(Control.CONJUNCTION, new Term[] { localCondition, cutThen });
+    }
+
+    /**
+     * Renames the body of a clause whose head has matched our goal. Its cuts
+     * are replaced, so that they remove our remaining clauses and every
+     * choice point created since.
+     */
+    private Term[] renameBody(Rule clause, RenameClause renaming) {
+        if (clause.isFact())
+            return NO_GOALS;
+
+        Term[] body = clause.getBody();
+        Term[] result = new Term[body.length];
+        CutBarrier barrier = clause.isCutting() ? new CutBarrier(number) : null;
+        for (int i = 0; i < body.length; ++i) {
+            result[i] = body[i].accept(renaming);
+            if (barrier != null)
+                result[i] = Control.replaceCuts(result[i], barrier);
+        }
+        return result;
+    }
+
+    /**
+     * Answers our goal with the next answer from its table, evaluating the
+     * table first if necessary.
+     */
+    private SearchResult searchAnswer() {
+        Bindings bindings = tree.getBindings();
+
+        if (table == null) {
+            // Calls which are variants of each other share one table
+            NumberVariables numberVariables = new NumberVariables();
+            Term call = goal.accept(new Instantiate(bindings));
+            Structure variant = (Structure) call.accept(numberVariables);
+
+            callVariables = numberVariables.getVariables();
+            table = tree.getTabling().getTable(variant, callVariables.length);
+        }
 
-                clauseBody = internalizer.visit(clauseBody);
+        // An incomplete table may grow while we consume it. Answers added
+        // after we have given up are found when its evaluation is repeated.
+        while (currentAnswer < table.getNumAnswers()) {
+            Term[] answer = table.getAnswer(currentAnswer);
+            ++currentAnswer;
 
-                List<Term> childGoals = clauseBody.append(goals.tail());
-                childGoals = instantiate.visit(childGoals);
+            boolean isChoicePoint = currentAnswer != table.getNumAnswers();
+            setTrailBoundary(isChoicePoint);
 
-                SearchNode childNode = new SearchNode(knowledge,
-                        internalVariableFactory, this, matchFrame, childGoals);
-                children = children.append(List.single(childNode));
+            RenameClause renaming = new RenameClause(
+                    tree.getInternalVariableFactory(), table.getMaxAnswerVariables());
 
-                // Give control to our new child
-                return SearchResult.yieldControl(childNode);
+            boolean matches = true;
+            for (int i = 0; matches && i < answer.length; ++i)
+                matches = Match.matchTemplate(bindings, callVariables[i], answer[i], renaming);
+
+            if (matches)
+                return createChild(goals.tail(), isChoicePoint);
+
+            backtrack();
+        }
+
+        // No answers are left. Backtrack.
+        return SearchResult.yieldControl(choicePoint);
+    }
+
+    /**
+     * Yields the next result of our independent goals, which is a combination
+     * of the answers of their groups.
+     */
+    private SearchResult searchCombination() {
+        Bindings bindings = tree.getBindings();
+
+        if (combination == null) {
+            independentGoals.join();
+            if (independentGoals.isEmpty())
+                return SearchResult.yieldControl(choicePoint);
+
+            combination = new int[independentGoals.getNumGroups()];
+        }
+
+        while (true) {
+            boolean isChoicePoint = !independentGoals.isLastCombination(combination);
+            setTrailBoundary(isChoicePoint);
+
+            boolean matches = independentGoals.instantiate(bindings,
+                    tree.getInternalVariableFactory(), combination);
+            if (isChoicePoint)
+                independentGoals.nextCombination(combination);
+
+            if (matches) {
+                // All our goals are fulfilled
+                return SearchResult.returnOneResultAndYieldControl(
+                        isChoicePoint ? this : choicePoint);
             }
-        } while (matchFrame == null && currentClause != numClauses);
 
-        // No matching clause was found. Backtrack to our parent.
-        return SearchResult.yieldControl(parent);
+            backtrack();
+            if (!isChoicePoint)
+                return SearchResult.yieldControl(choicePoint);
+        }
+    }
+
+    /**
+     * Sets which instantiations need to be trailed for the next alternative.
+     * Instantiations of variables created since the most recent choice point
+     * need not be undone, so they are not trailed. Without a choice point,
+     * the instantiations of the query's variables are still trailed, so that
+     * compacting the variables finds them. Recording the tree needs all
+     * instantiations on the trail though.
+     */
+    private void setTrailBoundary(boolean isChoicePoint) {
+        Bindings bindings = tree.getBindings();
+
+        if (recorded)
+            bindings.setTrailBoundary(Integer.MAX_VALUE);
+        else if (isChoicePoint)
+            bindings.setTrailBoundary(variableMark);
+        else
+            bindings.setTrailBoundary(choicePoint != null ? choicePoint.variableMark
+                    : tree.getFirstVariableId());
+    }
+
+    /**
+     * Continues the search with the given goals, which result from the
+     * alternative just taken. The goals of recorded nodes are instantiated,
+     * so that the graph shows them as they were at the node.
+     */
+    private SearchResult createChild(Goals childGoals, boolean isChoicePoint) {
+        if (!recorded && !isChoicePoint) {
+            // Nothing refers to this node anymore, so instead of
+            // creating a child, reuse this node for the child's goals. The
+            // variables which only the goals solved so far could reach are
+            // reclaimed from time to time.
+            setGoals(choicePoint != null
+                    ? tree.compactVariables(childGoals, choicePoint.variableMark,
+                            choicePoint.trailMark)
+                    : tree.compactVariables(childGoals, tree.getFirstVariableId(), 0));
+            return SearchResult.yieldControl(this);
+        }
+
+        SearchNode childChoicePoint = isChoicePoint ? this : choicePoint;
+        boolean recordChild = recorded && tree.recordNode(depth + 1);
+        Frame childFrame = null;
+        if (recordChild) {
+            Instantiate instantiate = new Instantiate(tree.getBindings());
+            childFrame = createFrame(instantiate);
+            childGoals = childGoals.copy(instantiate);
+        }
+
+        SearchNode childNode = new SearchNode(tree, childChoicePoint,
+                recordChild, depth + 1, childFrame, childGoals);
+        if (recordChild)
+            children = children.cons(childNode);
+        else if (recorded)
+            truncated = true;
+
+        // Give control to our new child
+        return SearchResult.yieldControl(childNode);
     }
 
-}
\ No newline at end of file
+    /**
+     * Undoes all instantiations and forgets all variables made after this
+     * node was created.
+     */
+    private void backtrack() {
+        Bindings bindings = tree.getBindings();
+        InternalVariableFactory internalVariableFactory = tree.getInternalVariableFactory();
+
+        bindings.undo(trailMark);
+
+        // Variables created since then might have been instantiated without
+        // being trailed
+        bindings.clear(variableMark, internalVariableFactory.getMark());
+        internalVariableFactory.reset(variableMark);
+    }
+
+    /**
+     * Creates a frame of the instantiations made since this node was created.
+     */
+    private Frame createFrame(Instantiate instantiate) {
+        Frame result = tree.getBindings().createFrame(trailMark);
+        for (Map.Entry<Variable, Term> entry : result.getInstantiations().entrySet())
+            entry.setValue(entry.getValue().accept(instantiate));
+        return result;
+    }
+}
@@ -1,27 +1,29 @@
 package jlogic.interpret;
 
 final class SearchResult {
-    private final Frame frame;
+    // Whether a match has been found, whose instantiations are in the
+    // bindings until the search continues
+    private final boolean result;
     private final SearchNode node;
 
-    private SearchResult(Frame frame, SearchNode node) {
-        this.frame = frame;
+    private SearchResult(boolean result, SearchNode node) {
+        this.result = result;
         this.node = node;
     }
 
-    public static SearchResult returnOneResultAndYieldControl(Frame frame, SearchNode node) {
-        return new SearchResult(frame, node);
+    public static SearchResult returnOneResultAndYieldControl(SearchNode node) {
+        return new SearchResult(true, node);
     }
 
     public static SearchResult yieldControl(SearchNode node) {
-        return new SearchResult(null, node);
+        return new SearchResult(false, node);
     }
 
     public SearchNode getNode() {
         return node;
     }
 
-    public Frame getFrame() {
-        return frame;
+    public boolean isResult() {
+        return result;
     }
 }
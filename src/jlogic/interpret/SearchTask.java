@@ -0,0 +1,184 @@
+package jlogic.interpret;
+
+import java.util.ArrayList;
+import java.util.concurrent.RecursiveAction;
+
+import jlogic.Rule;
+import jlogic.term.Structure;
+
+/**
+ * Searches part of a tree in parallel with other tasks. A task either
+ * searches a whole query, or continues the search of another task's node with
+ * some of that node's clauses. A task is done once the tasks it created are
+ * done, and its results can then be collected.
+ */
+final class SearchTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final ParallelSearch search;
+
+    // Set if this task searches a whole query
+    private final Structure query;
+
+    // Otherwise, the instantiations of the query's variables at the node,
+    // and the node's goals and clauses. If clauses is null, the goals are
+    // searched from scratch.
+    private final Frame queryFrame;
+    private final Goals goals;
+    private final Rule[] clauses;
+    private final int fromClause;
+    private final int toClause;
+
+    // Variables with smaller ids may occur in the goals
+    private final int variableMark;
+
+    // Number of times the search has been split on the way to this task
+    private final int forkDepth;
+
+    private final ArrayList<Frame> results = new ArrayList<Frame>();
+
+    // The tasks created by this one, and the number of results we had found
+    // when creating them
+    private final ArrayList<SearchTask> forks = new ArrayList<SearchTask>();
+    private final ArrayList<Integer> forkPositions = new ArrayList<Integer>();
+
+    public SearchTask(ParallelSearch search, Structure query) {
+        this.search = search;
+        this.query = query;
+        this.queryFrame = null;
+        this.goals = null;
+        this.clauses = null;
+        this.fromClause = 0;
+        this.toClause = 0;
+        this.variableMark = 0;
+        this.forkDepth = 0;
+    }
+
+    public SearchTask(ParallelSearch search, Frame queryFrame, Goals goals,
+            Rule[] clauses, int fromClause, int toClause, int variableMark, int forkDepth) {
+        this.search = search;
+        this.query = null;
+        this.queryFrame = queryFrame;
+        this.goals = goals;
+        this.clauses = clauses;
+        this.fromClause = fromClause;
+        this.toClause = toClause;
+        this.variableMark = variableMark;
+        this.forkDepth = forkDepth;
+    }
+
+    @Override
+    protected void compute() {
+        SearchTree tree = query != null
+                ? new SearchTree(search.getKnowledge(), query, this)
+                : new SearchTree(search.getKnowledge(), this);
+
+        Frame frame;
+        while ((frame = tree.searchOne()) != null)
+            results.add(frame);
+
+        for (SearchTask fork : forks)
+            fork.join();
+    }
+
+    /**
+     * Adds the results of this task and the tasks it created to the given
+     * list. Must only be called once this task is done.
+     */
+    void collectResults(ArrayList<Frame> into) {
+        assert isDone();
+
+        if (search.isOrdered()) {
+            // The alternatives handed to a fork come before the ones we kept
+            int position = 0;
+            for (int i = 0; i < forks.size(); ++i) {
+                int forkPosition = forkPositions.get(i);
+                into.addAll(results.subList(position, forkPosition));
+                forks.get(i).collectResults(into);
+                position = forkPosition;
+            }
+            into.addAll(results.subList(position, results.size()));
+        } else {
+            into.addAll(results);
+            for (SearchTask fork : forks)
+                fork.collectResults(into);
+        }
+    }
+
+    /**
+     * Returns whether a choice point with the given number of alternatives
+     * in our tree is split, after the tree has been split treeForkDepth times.
+     */
+    boolean mayFork(int treeForkDepth, int numAlternatives) {
+        return search.mayFork(treeForkDepth, numAlternatives);
+    }
+
+    /**
+     * Hands some clauses of a node in our tree to a new task.
+     *
+     * @param treeForkDepth
+     *        The number of times the search has been split on the way to the
+     *        node.
+     */
+    void fork(int treeForkDepth, Frame nodeQueryFrame, Goals nodeGoals,
+            Rule[] nodeClauses, int from, int to, int nodeVariableMark) {
+        SearchTask task = new SearchTask(search, nodeQueryFrame, nodeGoals,
+                nodeClauses, from, to, nodeVariableMark, treeForkDepth + 1);
+        forks.add(task);
+        forkPositions.add(results.size());
+        task.fork();
+    }
+
+    /**
+     * Returns whether goals which share no variables are solved by separate
+     * tasks, after the tree has been split treeForkDepth times.
+     */
+    boolean mayForkGoals(int treeForkDepth) {
+        return search.mayForkGoals(treeForkDepth);
+    }
+
+    /**
+     * Creates a task which searches the given goals from scratch. Unlike the
+     * tasks created by fork(), its results are not part of ours, so it must
+     * be joined by the caller.
+     */
+    SearchTask forkGoals(int treeForkDepth, Frame goalsQueryFrame, Goals goals,
+            int goalsVariableMark) {
+        SearchTask task = new SearchTask(search, goalsQueryFrame, goals, null, 0, 0,
+                goalsVariableMark, treeForkDepth + 1);
+        task.fork();
+        return task;
+    }
+
+    boolean isOrdered() {
+        return search.isOrdered();
+    }
+
+    Frame getQueryFrame() {
+        return queryFrame;
+    }
+
+    Goals getGoals() {
+        return goals;
+    }
+
+    Rule[] getClauses() {
+        return clauses;
+    }
+
+    int getFromClause() {
+        return fromClause;
+    }
+
+    int getToClause() {
+        return toClause;
+    }
+
+    int getVariableMark() {
+        return variableMark;
+    }
+
+    int getForkDepth() {
+        return forkDepth;
+    }
+}
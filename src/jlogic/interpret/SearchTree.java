@@ -1,27 +1,91 @@
 package jlogic.interpret;
 
-import java.util.Map;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import jlogic.Control;
 import jlogic.Knowledge;
+import jlogic.NumberVariables;
+import jlogic.Rule;
+import jlogic.term.CutBarrier;
 import jlogic.term.Structure;
 import jlogic.term.Term;
 import jlogic.term.Variable;
 
-import fj.data.List;
 
 /**
  * Interprets queries on a knowledge base using a tree. Each node in the tree
  * contains a list of goals which must be fulfilled.
  * 
- * This implementation is quite inefficient as it copies terms every time their
- * variables are instantiated.
+ * Variable instantiations are stored in one set of bindings for the whole
+ * tree, which is unwound to a node's trail mark when backtracking to it.
+ * A deterministic search never backtracks, so the variables it can no longer
+ * reach are reclaimed by compacting the bindings from time to time.
+ *
+ * Only nodes which still have alternatives left are kept during the search,
+ * unless the tree is recorded in order to be drawn by DOT. In that case, the
+ * recorded nodes and the instantiations leading to them are kept, up to the
+ * budget given by a TreeRecording.
+ *
+ * Calls to tabled predicates are answered by Tabling, which evaluates each
+ * variant in a separate search tree.
+ *
+ * A tree may also be searched by a SearchTask of a ParallelSearch, in which
+ * case its choice points can hand some of their clauses to new tasks.
+ *
+ * Matches can be consumed one at a time by searchOne(), as an Iterator or a
+ * Stream, or in batches by searchMany(). All of these search lazily and share
+ * the state of the tree, so every match is returned only once.
  */
-public final class SearchTree {
+public final class SearchTree implements Iterable<Frame> {
+    // Number of variables created since the most recent choice point before
+    // the ones which are no longer reachable are first reclaimed
+    private static final int MIN_VARIABLES_TO_COMPACT = 1 << 16;
+
+    private final Knowledge knowledge;
     private final InternalVariableFactory internalVariableFactory;
+    private final Bindings bindings;
+
+    // Id of the first variable created by the search itself, after the ones
+    // of the query or of the goals the tree continues with
+    private final int firstVariableId;
+
+    // Number of variables created since the most recent choice point at
+    // which they are compacted next
+    private int variablesToCompact = MIN_VARIABLES_TO_COMPACT;
+
+    private final TreeRecording recording;
+    private int numRecordedNodes = 0;
+
+    // Shared by the trees evaluating tabled calls of one query. Created when
+    // the first tabled predicate is called.
+    private Tabling tabling;
+
+    // Null unless the tree is searched in parallel
+    private final SearchTask task;
+
+    // Number of times the search has been split on the way to the current
+    // node
+    private int forkDepth;
+
+    // Number of times a node has started with new goals. Cut barriers refer
+    // to these numbers.
+    private long numNodeStarts = 0;
 
+    // Null if the tree is not recorded
     private final SearchNode root;
     private final Frame queryFrame;
 
+    // The free variables of the query and the terms they were replaced by,
+    // in the order of their first occurrence
+    private final Variable[] queryVariables;
+    private final Term[] queryTerms;
+
     // Keeps track of where we are evaluating in the tree right now.
     // This allows us to resume evaluation at the right point after having
     // returned one result from searchOne() and then being asked for the next
@@ -29,17 +93,96 @@ public final class SearchTree {
     private SearchNode current;
 
     public SearchTree(Knowledge knowledge, Structure query) {
+        this(knowledge, query, TreeRecording.NONE);
+    }
+
+    /**
+     * @param recording
+     *        Determines how much of the search tree is kept, so that it can be
+     *        drawn by DOT.
+     */
+    public SearchTree(Knowledge knowledge, Structure query, TreeRecording recording) {
+        this(knowledge, query, recording, null, null);
+    }
+
+    /**
+     * Creates a tree which evaluates a call to a tabled predicate by
+     * resolution, answering the tabled calls made from it by the given
+     * tabling.
+     */
+    SearchTree(Knowledge knowledge, Structure variant, Tabling tabling) {
+        this(knowledge, variant, TreeRecording.NONE, tabling, null);
+    }
+
+    /**
+     * Creates a tree which searches the given query in parallel.
+     */
+    SearchTree(Knowledge knowledge, Structure query, SearchTask task) {
+        this(knowledge, query, TreeRecording.NONE, null, task);
+    }
+
+    /**
+     * Creates a tree which continues the search of a node in another tree, as
+     * described by the given task.
+     */
+    SearchTree(Knowledge knowledge, SearchTask task) {
+        this.knowledge = knowledge;
+        this.recording = TreeRecording.NONE;
+        this.tabling = null;
+        this.task = task;
+        forkDepth = task.getForkDepth();
+
+        // Our variables must not conflict with the ones in the node's goals.
+        // Those are not instantiated, since their instantiations at the node
+        // have been applied already.
+        internalVariableFactory = new InternalVariableFactory(task.getVariableMark());
+        bindings = new Bindings();
+        firstVariableId = task.getVariableMark();
+        queryFrame = task.getQueryFrame();
+        queryVariables = queryFrame.getInstantiations().keySet().toArray(
+                new Variable[queryFrame.getInstantiations().size()]);
+        queryTerms = getQueryTerms(queryFrame, queryVariables);
+
+        if (task.getClauses() != null) {
+            current = new SearchNode(this, task.getGoals(), task.getClauses(),
+                    task.getFromClause(), task.getToClause());
+        } else
+            current = new SearchNode(this, null, false, 0, null, task.getGoals());
+        root = null;
+    }
+
+    private SearchTree(Knowledge knowledge, Structure query, TreeRecording recording,
+            Tabling tabling, SearchTask task) {
+        this.knowledge = knowledge;
+        this.recording = recording;
+        this.tabling = tabling;
+        this.task = task;
         internalVariableFactory = new InternalVariableFactory();
+        bindings = new Bindings();
 
         // To prevent conflicts, first replace all free variables in the query
         // by internal variables. These instantiations are kept in `queryFrame'.
         queryFrame = new Frame();
         InternalizeFreeVariables internalizer =
                 new InternalizeFreeVariables(internalVariableFactory, queryFrame);
+        NumberVariables numberVariables = new NumberVariables();
+        query.accept(numberVariables);
+        queryVariables = numberVariables.getVariables();
+
         query = (Structure) internalizer.visit(query);
+        queryTerms = getQueryTerms(queryFrame, queryVariables);
+        firstVariableId = internalVariableFactory.getMark();
 
-        root = current = new SearchNode(knowledge, internalVariableFactory,
-                null, new Frame(), List.single((Term) query));
+        // The cuts of the query remove every choice point of the tree, which
+        // starts with the root
+        query = (Structure) Control.replaceCuts(query, new CutBarrier(getNextNodeStart()));
+
+        boolean recordRoot = recordNode(0);
+        // A tree evaluating a tabled call must not answer it from its own table
+        current = new SearchNode(this, null, recordRoot, 0,
+                recordRoot ? new Frame() : null, Goals.EMPTY.push(query),
+                tabling == null);
+        root = recordRoot ? current : null;
     }
 
     /**
@@ -48,40 +191,285 @@ public final class SearchTree {
      * was returned, it is futile to call searchOne() again.
      */
     public Frame searchOne() {
-        Frame frame = null;
-        while (current != null && frame == null) {
+        return searchNext() ? createResultFrame() : null;
+    }
+
+    /**
+     * Searches for as many matches as fit into the given buffer. Instead of
+     * creating a frame for each match, the instantiations of the query's
+     * variables are stored in the buffer's rows, in the order given by
+     * getQueryVariables(). This saves the allocations of searchOne() when
+     * consuming many matches.
+     *
+     * @param buffer
+     *        Rows of at least getQueryVariables().length elements.
+     * @return The number of rows filled. If it is smaller than the number of
+     *         rows, there are no more matches.
+     */
+    public int searchMany(Term[][] buffer) {
+        Instantiate instantiate = new Instantiate(bindings);
+
+        int numFilled = 0;
+        while (numFilled < buffer.length && searchNext()) {
+            Term[] row = buffer[numFilled];
+            for (int i = 0; i < queryTerms.length; ++i)
+                row[i] = queryTerms[i].accept(instantiate);
+            ++numFilled;
+        }
+
+        return numFilled;
+    }
+
+    /**
+     * Returns the free variables of the query, in the order of their first
+     * occurrence.
+     */
+    public Variable[] getQueryVariables() {
+        return queryVariables.clone();
+    }
+
+    /**
+     * Returns an iterator over the remaining matches, searching for the next
+     * one only when needed.
+     */
+    @Override
+    public Iterator<Frame> iterator() {
+        return new Iterator<Frame>() {
+            // The match found by hasNext() but not yet returned by next()
+            private Frame next = null;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null)
+                    next = searchOne();
+                return next != null;
+            }
+
+            @Override
+            public Frame next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+
+                Frame result = next;
+                next = null;
+                return result;
+            }
+        };
+    }
+
+    /**
+     * Returns a spliterator over the remaining matches. It does not split, as
+     * the search is sequential.
+     */
+    @Override
+    public Spliterator<Frame> spliterator() {
+        return new Spliterators.AbstractSpliterator<Frame>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super Frame> action) {
+                Frame frame = searchOne();
+                if (frame == null)
+                    return false;
+
+                action.accept(frame);
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns a sequential stream of the remaining matches. Short-circuiting
+     * operations such as limit() stop the search early.
+     */
+    public Stream<Frame> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Continues the search up to the next match, whose instantiations are
+     * then in the bindings. Returns false if there are no more matches.
+     */
+    private boolean searchNext() {
+        while (current != null) {
             SearchResult searchResult = current.searchOne();
 
-            frame = searchResult.getFrame();
             current = searchResult.getNode();
+            if (searchResult.isResult())
+                return true;
         }
 
-        if (frame != null)
-            return createResultFrame(frame);
-        else
-            return null;
+        return false;
     }
 
     /**
      * Creates a frame containing only the free variables in the original query,
-     * instantiated with the given frame of a successful match.
+     * instantiated with the current bindings of a successful match.
      */
-    Frame createResultFrame(Frame frame) {
+    Frame createResultFrame() {
         Frame result = new Frame();
 
-        Instantiate instantiate = new Instantiate(frame);
-        for (Map.Entry<Variable, Term> entry : queryFrame.getInstantiations().
-                entrySet()) {
-            Term term = frame.getInstantiation((Variable) entry.getValue());
-            Term instantiatedTerm = term.accept(instantiate);
+        Instantiate instantiate = new Instantiate(bindings);
+        for (int i = 0; i < queryVariables.length; ++i)
+            result.instantiate(queryVariables[i], queryTerms[i].accept(instantiate));
 
-            result.instantiate(entry.getKey(), instantiatedTerm);
-        }
+        return result;
+    }
+
+    private static Term[] getQueryTerms(Frame queryFrame, Variable[] queryVariables) {
+        Term[] result = new Term[queryVariables.length];
+        for (int i = 0; i < queryVariables.length; ++i)
+            result[i] = queryFrame.getInstantiation(queryVariables[i]);
+        return result;
+    }
+
+    public boolean isRecorded() {
+        return root != null;
+    }
+
+    /**
+     * Returns whether a new node at the given depth is recorded, counting it
+     * against the budget if so.
+     */
+    boolean recordNode(int depth) {
+        if (numRecordedNodes >= recording.getMaxNodes() || depth > recording.getMaxDepth())
+            return false;
+
+        ++numRecordedNodes;
+        return true;
+    }
+
+    /**
+     * Hands the given clauses of a node to a new task, if this tree is
+     * searched in parallel and the granularity allows it.
+     *
+     * @param variableMark
+     *        The node's variable mark. The bindings must be in the state in
+     *        which the node was created.
+     * @return Whether a new task was created.
+     */
+    boolean fork(Goals goals, Rule[] clauses, int fromClause, int toClause,
+            int variableMark) {
+        if (task == null || !task.mayFork(forkDepth, toClause - fromClause))
+            return false;
+
+        // The task searches with bindings of its own, so it gets the goals
+        // with our bindings applied
+        goals = goals.copy(new Instantiate(bindings));
+
+        // A cut must reach the choice points it removes, so the goals of a
+        // clause containing a cut are not split between tasks
+        if (containsCut(goals))
+            return false;
+
+        task.fork(forkDepth, createResultFrame(), goals, clauses, fromClause, toClause,
+                variableMark);
+        ++forkDepth;
+        return true;
+    }
+
+    /**
+     * Solves groups of the given goals which share no unbound variables by
+     * separate tasks, if this tree is searched AND-parallel and the
+     * granularity allows it.
+     *
+     * @param variableMark
+     *        The variable mark of the node holding the goals. The bindings
+     *        must be in the state in which the node was created.
+     * @return The groups being solved, or null if the goals were not split.
+     */
+    IndependentGoals forkIndependentGoals(Goals goals, int variableMark) {
+        if (task == null || !task.mayForkGoals(forkDepth) || goals.isEmpty()
+                || goals.tail().isEmpty())
+            return null;
+
+        goals = goals.copy(new Instantiate(bindings));
+        if (containsCut(goals))
+            return null;
 
+        IndependentGoals result = IndependentGoals.fork(task, forkDepth, goals,
+                createResultFrame(), variableMark, task.isOrdered());
+        if (result != null)
+            ++forkDepth;
         return result;
     }
 
+    /**
+     * Returns the number of a node starting with new goals. Nodes started
+     * later have greater numbers.
+     */
+    long startNode() {
+        return numNodeStarts++;
+    }
+
+    /**
+     * Returns the number the next node starting with new goals gets.
+     */
+    long getNextNodeStart() {
+        return numNodeStarts;
+    }
+
+    /**
+     * Reclaims the variables from the given id on which the given goals can
+     * no longer reach, once there are enough of them. The variables must
+     * have been created after the trail had the given mark. Returns the
+     * goals with their variables renamed.
+     *
+     * Variables are compacted whenever their number has doubled since the
+     * previous compaction, so that compacting takes constant time per
+     * variable created. If most of them were left, compacting them again
+     * soon hardly pays off, so their number has to quadruple then. The
+     * variables of recorded trees are never compacted, since their graphs
+     * refer to them.
+     */
+    Goals compactVariables(Goals goals, int firstId, int trailMark) {
+        int numVariables = internalVariableFactory.getMark() - firstId;
+        if (isRecorded() || numVariables < variablesToCompact)
+            return goals;
+
+        Goals result = CompactVariables.compact(goals, bindings, internalVariableFactory,
+                firstId, trailMark);
+        int numLeft = internalVariableFactory.getMark() - firstId;
+        int growth = 2 * numLeft > numVariables ? 4 : 2;
+        variablesToCompact = Math.max(MIN_VARIABLES_TO_COMPACT,
+                growth * (numLeft + result.size()));
+        return result;
+    }
+
+    /**
+     * Returns the id of the first variable created by the search itself.
+     * Older variables are part of the query.
+     */
+    int getFirstVariableId() {
+        return firstVariableId;
+    }
+
+    private static boolean containsCut(Goals goals) {
+        for (Term goal : goals) {
+            if (Control.containsCut(goal))
+                return true;
+        }
+        return false;
+    }
+
     SearchNode getRoot() {
         return root;
     }
+
+    Tabling getTabling() {
+        if (tabling == null)
+            tabling = new Tabling(knowledge);
+        return tabling;
+    }
+
+    Knowledge getKnowledge() {
+        return knowledge;
+    }
+
+    InternalVariableFactory getInternalVariableFactory() {
+        return internalVariableFactory;
+    }
+
+    Bindings getBindings() {
+        return bindings;
+    }
 }
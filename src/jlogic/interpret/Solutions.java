@@ -0,0 +1,28 @@
+package jlogic.interpret;
+
+/**
+ * The remaining solutions of a call to a built-in predicate which may have
+ * more than one. The node holding the call tries them one by one, and stays a
+ * choice point until the last one.
+ */
+abstract class Solutions {
+    /**
+     * Returns whether there are solutions left.
+     */
+    public abstract boolean hasNext();
+
+    /**
+     * Returns whether the next solution is the last one.
+     */
+    public abstract boolean isLast();
+
+    /**
+     * Instantiates the call's variables with the next solution.
+     *
+     * @return Whether the solution matches the call. If not, some
+     *         instantiations may have been made already, as with
+     *         Match.match().
+     */
+    public abstract boolean next(Bindings bindings,
+            InternalVariableFactory internalVariableFactory);
+}
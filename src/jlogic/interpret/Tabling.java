@@ -0,0 +1,161 @@
+package jlogic.interpret;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import jlogic.AnswerTable;
+import jlogic.Knowledge;
+import jlogic.term.SlotVariable;
+import jlogic.term.Structure;
+import jlogic.term.Term;
+import jlogic.term.Variable;
+
+/**
+ * Evaluates the calls to tabled predicates made by one query.
+ *
+ * When a variant is called for the first time, all of its answers are
+ * computed right away by a separate search tree resolving the variant against
+ * the predicate's clauses. Recursive calls to a variant which is being
+ * evaluated are not resolved again, but only consume the answers found so far.
+ * The evaluation is then repeated until it finds no new answers, so that left
+ * recursive predicates terminate as long as they have finitely many answers.
+ *
+ * Variants which consume each other's answers form a strongly connected
+ * component. Tables of a component are only complete once its leader, the
+ * variant whose evaluation started first, has reached its fixpoint. Until
+ * then, they are kept here and evaluated again when called. Complete tables
+ * are added to the knowledge base's answer tables, where later queries find
+ * them, unless the knowledge base has changed since the query started.
+ */
+final class Tabling {
+    private static final class Evaluation {
+        final AnswerTable table;
+
+        // Position in the order in which evaluations were created
+        final int creationIndex;
+
+        // Position on the evaluation stack, or -1 if not being evaluated
+        int stackIndex = -1;
+
+        // The lowest stack index of the evaluations whose answers were
+        // consumed during this evaluation
+        int lowLink;
+
+        Evaluation(AnswerTable table, int creationIndex) {
+            this.table = table;
+            this.creationIndex = creationIndex;
+        }
+    }
+
+    private final Knowledge knowledge;
+
+    // Generation of the answer tables when this query started
+    private final long generation;
+
+    // Tables which are not complete yet, keyed by their variant
+    private final HashMap<Structure, Evaluation> evaluations =
+            new HashMap<Structure, Evaluation>();
+
+    private final ArrayList<Evaluation> stack = new ArrayList<Evaluation>();
+
+    private int numCreated = 0;
+
+    // Total number of answers added to incomplete tables, used to detect the
+    // fixpoint
+    private long numAnswersAdded = 0;
+
+    public Tabling(Knowledge knowledge) {
+        this.knowledge = knowledge;
+        this.generation = knowledge.getAnswerTables().getGeneration();
+    }
+
+    /**
+     * Returns the table for the given variant, evaluating it if necessary. The
+     * table is only incomplete if the variant is called recursively.
+     *
+     * @param numVariables
+     *        The number of variables in the variant.
+     */
+    public AnswerTable getTable(Structure variant, int numVariables) {
+        AnswerTable complete = knowledge.getAnswerTables().get(variant);
+        if (complete != null)
+            return complete;
+
+        Evaluation evaluation = evaluations.get(variant);
+        if (evaluation != null && evaluation.stackIndex != -1) {
+            // A recursive call. Consume the answers found so far, which makes
+            // the calling evaluation depend on this one.
+            Evaluation caller = stack.get(stack.size() - 1);
+            caller.lowLink = Math.min(caller.lowLink, evaluation.stackIndex);
+            return evaluation.table;
+        }
+
+        if (evaluation == null) {
+            evaluation = new Evaluation(new AnswerTable(variant, numVariables), numCreated++);
+            evaluations.put(variant, evaluation);
+        }
+
+        evaluate(evaluation);
+
+        return evaluation.table;
+    }
+
+    private void evaluate(Evaluation evaluation) {
+        int stackIndex = stack.size();
+        evaluation.stackIndex = stackIndex;
+        evaluation.lowLink = stackIndex;
+        stack.add(evaluation);
+
+        long numAnswersBefore;
+        do {
+            numAnswersBefore = numAnswersAdded;
+
+            SearchTree tree = new SearchTree(knowledge, evaluation.table.getVariant(), this);
+            Frame frame;
+            while ((frame = tree.searchOne()) != null) {
+                if (evaluation.table.add(getAnswer(frame, evaluation.table.getNumVariables())))
+                    ++numAnswersAdded;
+            }
+
+            // Without recursive calls in this component, one pass finds all
+            // answers
+        } while (evaluation.lowLink <= stackIndex && numAnswersAdded != numAnswersBefore);
+
+        stack.remove(stackIndex);
+        evaluation.stackIndex = -1;
+
+        if (evaluation.lowLink >= stackIndex) {
+            // This is the leader of its component. Every table created since
+            // it was created belongs to the component, or is complete already.
+            complete(evaluation.creationIndex);
+        } else {
+            Evaluation caller = stack.get(stack.size() - 1);
+            caller.lowLink = Math.min(caller.lowLink, evaluation.lowLink);
+        }
+    }
+
+    private void complete(int fromCreationIndex) {
+        Iterator<Evaluation> iterator = evaluations.values().iterator();
+        while (iterator.hasNext()) {
+            Evaluation evaluation = iterator.next();
+            if (evaluation.creationIndex >= fromCreationIndex) {
+                evaluation.table.setComplete();
+                knowledge.getAnswerTables().add(evaluation.table, generation);
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the instantiations of the variant's slot variables in a result
+     * frame, ordered by slot.
+     */
+    private static Term[] getAnswer(Frame frame, int numVariables) {
+        Term[] result = new Term[numVariables];
+        for (Map.Entry<Variable, Term> entry : frame.getInstantiations().entrySet())
+            result[((SlotVariable) entry.getKey()).getSlot()] = entry.getValue();
+        return result;
+    }
+}
@@ -0,0 +1,52 @@
+package jlogic.interpret;
+
+/**
+ * Determines how much of a search tree is kept in order to draw it with DOT.
+ * Recording stops once a number of nodes has been recorded, and nodes deeper
+ * than a given depth are never recorded. Search nodes which are not recorded
+ * are discarded as soon as possible.
+ */
+public final class TreeRecording {
+    public static final TreeRecording NONE = new TreeRecording(0, 0);
+    public static final TreeRecording UNBOUNDED = new TreeRecording(
+            Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+    private final int maxNodes;
+    private final int maxDepth;
+
+    /**
+     * @param maxNodes
+     *        The number of nodes after which recording stops.
+     * @param maxDepth
+     *        The depth of the deepest recorded nodes, the root being at depth
+     *        zero.
+     */
+    public TreeRecording(int maxNodes, int maxDepth) {
+        if (maxNodes < 0)
+            throw new IllegalArgumentException("maxNodes must not be negative");
+        if (maxDepth < 0)
+            throw new IllegalArgumentException("maxDepth must not be negative");
+
+        this.maxNodes = maxNodes;
+        this.maxDepth = maxDepth;
+    }
+
+    @Override
+    public String toString() {
+        if (!isEnabled())
+            return "off";
+        return "at most " + maxNodes + " nodes up to depth " + maxDepth;
+    }
+
+    public boolean isEnabled() {
+        return maxNodes > 0;
+    }
+
+    public int getMaxNodes() {
+        return maxNodes;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+}
@@ -2,37 +2,103 @@ package jlogic.read;
 
 import java.io.IOException;
 import java.io.Reader;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.HashSet;
 
+/**
+ * Splits a program into tokens.
+ *
+ * The characters are read from the reader in large blocks into a buffer, and
+ * scanned there with a table of character classes, so that there are no calls
+ * per character. The strings of single character tokens are constants, and
+ * identifiers which occur again share the string of their previous
+ * occurrence. Locations are only created when they are asked for.
+ */
 public final class Lexer {
-    private String file;
-    private int line = 0;
-    private int column = 0;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // Number of identifiers whose strings are kept for reuse, a power of two
+    private static final int IDENTIFIER_CACHE_SIZE = 4096;
+
+    // Classes of the ASCII characters. Other characters are classified by the
+    // methods of Character.
+    private static final byte OTHER = 0;
+    private static final byte WHITESPACE = 1;
+    private static final byte LETTER = 2;
+    private static final byte DIGIT = 3;
+    private static final byte SIMPLE = 4;
+    private static final byte OPERATOR = 5;
+
+    private static final byte[] characterClasses = new byte[128];
 
-    private Reader code;
-    private char current;
-    private boolean endOfFile = false;
+    // Types and strings of the tokens consisting of one character
+    private static final TokenType[] simpleTokenTypes = new TokenType[128];
+    private static final String[] simpleTokenStrings = new String[128];
 
-    private static final HashMap<Character, TokenType> simpleTokenTypes = new HashMap<Character, TokenType>();
+    // Characters of which the arithmetic operators are made, and the
+    // operators. The operators made of letters are identifiers. A colon only
+    // belongs to an operator if it does not start the token.
+    private static final String OPERATOR_CHARACTERS = "+*<>=:\\";
+    private static final HashSet<String> operators = new HashSet<String>(Arrays.asList(
+            "+", "*", "//", "<", ">", "=<", ">=", "=:=", "=\\="));
 
     static {
-        simpleTokenTypes.put('(', TokenType.LeftParen);
-        simpleTokenTypes.put(')', TokenType.RightParen);
-        simpleTokenTypes.put('_', TokenType.Underscore);
-        simpleTokenTypes.put(',', TokenType.Comma);
-        simpleTokenTypes.put(':', TokenType.Colon);
-        simpleTokenTypes.put('-', TokenType.Hyphen);
-        simpleTokenTypes.put('.', TokenType.Period);
+        for (char c = 0; c < 128; ++c) {
+            if (Character.isWhitespace(c))
+                characterClasses[c] = WHITESPACE;
+            else if (Character.isLetter(c))
+                characterClasses[c] = LETTER;
+            else if (Character.isDigit(c))
+                characterClasses[c] = DIGIT;
+            else if (OPERATOR_CHARACTERS.indexOf(c) != -1)
+                characterClasses[c] = OPERATOR;
+        }
+
+        addSimpleToken('(', TokenType.LeftParen);
+        addSimpleToken(')', TokenType.RightParen);
+        addSimpleToken('[', TokenType.LeftBracket);
+        addSimpleToken(']', TokenType.RightBracket);
+        addSimpleToken('|', TokenType.Bar);
+        addSimpleToken('_', TokenType.Underscore);
+        addSimpleToken(',', TokenType.Comma);
+        addSimpleToken(':', TokenType.Colon);
+        addSimpleToken('.', TokenType.Period);
+        addSimpleToken(';', TokenType.Semicolon);
+        addSimpleToken('!', TokenType.Exclamation);
     }
 
+    private final String file;
+    private final Reader code;
+
+    // The characters from position to limit have not been scanned yet. The
+    // ones from tokenStart on belong to the current token, and are kept when
+    // the buffer is refilled.
+    private char[] buffer = new char[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+    private int tokenStart = 0;
+    private boolean endOfInput = false;
+
+    // Offset of the buffer's first character in the input
+    private long bufferOffset = 0;
+
+    // Line of the current position, and offset of its first character
+    private int line = 0;
+    private long lineOffset = 0;
+
+    private final String[] identifierCache = new String[IDENTIFIER_CACHE_SIZE];
+
     public Lexer(String file, Reader code) throws IOException {
         this.file = file;
         this.code = code;
 
-        int input = code.read();
-        if (input == -1)
-            endOfFile = true;
-        current = (char) input;
+        fill();
+    }
+
+    private static void addSimpleToken(char c, TokenType type) {
+        characterClasses[c] = SIMPLE;
+        simpleTokenTypes[c] = type;
+        simpleTokenStrings[c] = Character.toString(c);
     }
 
     public String getFile() {
@@ -40,74 +106,209 @@ public final class Lexer {
     }
 
     public Token read() throws ReadException, IOException {
-        if (endOfFile)
-            return new Token(createLocation(), TokenType.EndOfFile, "");
-
-        skipWhitespace();
+        skipWhitespaceAndComments();
 
-        while (current == '%')
-            skipComment();
+        tokenStart = position;
+        int c = peek();
+        if (c == -1)
+            return createToken(TokenType.EndOfFile, "");
 
-        if (Character.isLetter(current))
-            return readIdentifier();
+        switch (c) {
+            case '-':
+                return readHyphenOrArrow();
+            case '/':
+                return readSlashOrOperator();
+            case ':':
+                break;
+            default:
+                if (classify(c) == OPERATOR)
+                    return readOperator();
+        }
 
-        TokenType type = simpleTokenTypes.get(current);
-        if (type != null) {
-            Token token = new Token(createLocation(), type, Character.toString(current));
-            advance();
-            return token;
+        switch (classify(c)) {
+            case LETTER:
+                return readIdentifier();
+            case DIGIT:
+                return readInteger();
+            case SIMPLE:
+                ++position;
+                return createToken(simpleTokenTypes[c], simpleTokenStrings[c]);
+            default:
+                throw new ReadException(createLocation(), "Unknown character: " + (char) c);
         }
+    }
 
-        throw new ReadException(createLocation(), "Unknown character: " + current);
+    private static byte classify(int c) {
+        if (c < 128)
+            return characterClasses[c];
+        if (Character.isWhitespace(c))
+            return WHITESPACE;
+        if (Character.isLetter(c))
+            return LETTER;
+        if (Character.isDigit(c))
+            return DIGIT;
+        return OTHER;
     }
 
-    private void advance() throws IOException {
-        ++column;
+    /**
+     * Returns the character at the current position, or -1 at the end of
+     * the input.
+     */
+    private int peek() throws IOException {
+        if (position == limit && !fill())
+            return -1;
+        return buffer[position];
+    }
+
+    /**
+     * Reads more characters into the buffer, keeping those of the current
+     * token.
+     *
+     * @return Whether there are characters to scan.
+     */
+    private boolean fill() throws IOException {
+        while (position == limit) {
+            if (endOfInput)
+                return false;
 
-        int input = code.read();
-        if (input == -1) {
-            endOfFile = true;
-            return;
+            int kept = limit - tokenStart;
+            if (kept == buffer.length)
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            else
+                System.arraycopy(buffer, tokenStart, buffer, 0, kept);
+
+            bufferOffset += tokenStart;
+            position -= tokenStart;
+            tokenStart = 0;
+            limit = kept;
+
+            int count = code.read(buffer, limit, buffer.length - limit);
+            if (count == -1)
+                endOfInput = true;
+            else
+                limit += count;
         }
+        return true;
+    }
 
-        current = (char) input;
+    private Token createToken(TokenType type, String string) {
+        return new Token(file, line, getColumn(tokenStart), type, string);
     }
 
     private Location createLocation() {
-        return new Location(file, line, column);
+        return new Location(file, line, getColumn(position));
+    }
+
+    private int getColumn(int bufferPosition) {
+        return (int) (bufferOffset + bufferPosition - lineOffset);
     }
 
     private Token readIdentifier() throws IOException {
-        Location location = createLocation();
-
-        StringBuilder stringBuilder = new StringBuilder();
-        while (!endOfFile &&
-                (Character.isLetter(current) || Character.isDigit(current) ||
-                current == '_')) {
-            stringBuilder.append(current);
-            advance();
+        int hash = 0;
+        int c = peek();
+        while (c != -1 && isIdentifierPart(c)) {
+            hash = 31 * hash + c;
+            ++position;
+            c = peek();
         }
 
-        return new Token(location, TokenType.Identifier, stringBuilder.toString());
+        return createToken(TokenType.Identifier, getIdentifier(hash));
     }
 
-    private void skipWhitespace() throws IOException {
-        while (!endOfFile && Character.isWhitespace(current)) {
-            if (current == '\n') {
-                advance();
-                column = 0;
-                ++line;
-            }
-            else
-                advance();
+    private static boolean isIdentifierPart(int c) {
+        byte characterClass = classify(c);
+        return characterClass == LETTER || characterClass == DIGIT || c == '_';
+    }
+
+    /**
+     * Returns the string of the current token, which is an identifier with
+     * the given hash code, reusing the string of an earlier occurrence.
+     */
+    private String getIdentifier(int hash) {
+        int length = position - tokenStart;
+        int slot = (hash ^ (hash >>> 16)) & (IDENTIFIER_CACHE_SIZE - 1);
+
+        String cached = identifierCache[slot];
+        if (cached != null && cached.length() == length) {
+            int i = 0;
+            while (i < length && cached.charAt(i) == buffer[tokenStart + i])
+                ++i;
+            if (i == length)
+                return cached;
         }
+
+        String result = new String(buffer, tokenStart, length);
+        identifierCache[slot] = result;
+        return result;
     }
 
-    private void skipComment() throws IOException {
-        assert current == '%';
-        while (!endOfFile && current != '\n') {
-            advance();
+    private Token readInteger() throws IOException {
+        int c = peek();
+        while (c != -1 && classify(c) == DIGIT) {
+            ++position;
+            c = peek();
+        }
+
+        return createToken(TokenType.Integer, new String(buffer, tokenStart, position - tokenStart));
+    }
+
+    private Token readHyphenOrArrow() throws IOException {
+        assert peek() == '-';
+
+        ++position;
+        if (peek() == '>') {
+            ++position;
+            return createToken(TokenType.Arrow, "->");
+        }
+
+        return createToken(TokenType.Hyphen, "-");
+    }
+
+    private Token readSlashOrOperator() throws IOException {
+        assert peek() == '/';
+
+        ++position;
+        if (peek() == '/') {
+            ++position;
+            return createToken(TokenType.Operator, "//");
+        }
+
+        return createToken(TokenType.Slash, "/");
+    }
+
+    private Token readOperator() throws ReadException, IOException {
+        int c = peek();
+        while (c != -1 && (classify(c) == OPERATOR || c == ':')) {
+            ++position;
+            c = peek();
+        }
+
+        String operator = new String(buffer, tokenStart, position - tokenStart);
+        if (!operators.contains(operator))
+            throw new ReadException(new Location(file, line, getColumn(tokenStart)),
+                    "Unknown operator: " + operator);
+
+        return createToken(TokenType.Operator, operator);
+    }
+
+    private void skipWhitespaceAndComments() throws IOException {
+        while (true) {
+            tokenStart = position;
+            int c = peek();
+
+            if (c == '%') {
+                while (c != -1 && c != '\n') {
+                    ++position;
+                    c = peek();
+                }
+            } else if (c != -1 && classify(c) == WHITESPACE) {
+                ++position;
+                if (c == '\n') {
+                    ++line;
+                    lineOffset = bufferOffset + position;
+                }
+            } else
+                return;
         }
-        skipWhitespace();
     }
 }
@@ -2,12 +2,20 @@ package jlogic.read;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 
+import jlogic.Control;
+import jlogic.FactTable;
 import jlogic.Knowledge;
 import jlogic.Rule;
 import jlogic.term.AnonymousVariable;
 import jlogic.term.Atom;
+import jlogic.term.Functor;
+import jlogic.term.IntegerTerm;
+import jlogic.term.ListTerm;
 import jlogic.term.Structure;
+import jlogic.term.SymbolTable;
+import jlogic.term.TermFactory;
 import jlogic.term.Term;
 import jlogic.term.Variable;
 
@@ -35,7 +43,7 @@ public final class Parser {
 
                     if (current.getType() == TokenType.LeftParen) {
                         Term[] arguments = parseArguments();
-                        return new Structure(atom, arguments);
+                        return TermFactory.createStructure(atom, arguments);
                     }
                     else
                         return atom;
@@ -43,6 +51,10 @@ public final class Parser {
             case Underscore:
                 advance();
                 return new AnonymousVariable();
+            case Integer:
+                return parseInteger("");
+            case LeftBracket:
+                return parseList();
             default:
                 throw new ReadException(current.getLocation(), "Expected term");
         }
@@ -60,7 +72,7 @@ public final class Parser {
                 throw new ReadException(current.getLocation(),
                         "Unexpected end of file in parameter list");
 
-            arguments.add(parseTerm());
+            arguments.add(parseExpression());
             if (current.getType() == TokenType.Comma)
                 advance();
             // TODO: This allows trailing commas
@@ -72,12 +84,147 @@ public final class Parser {
         return arguments.toArray(argumentArray);
     }
 
+    /**
+     * Parses a list, e.g. "[]", "[a, b]" or "[H | T]". The empty list is the
+     * atom nil, so lists unify with chains of cons/2 structures ending in nil.
+     */
+    public Term parseList() throws ReadException, IOException {
+        checkAdvance(TokenType.LeftBracket);
+        if (current.getType() == TokenType.RightBracket) {
+            advance();
+            return ListTerm.NIL;
+        }
+
+        ArrayList<Term> elements = new ArrayList<Term>();
+        elements.add(parseExpression());
+        while (current.getType() == TokenType.Comma) {
+            advance();
+            elements.add(parseExpression());
+        }
+
+        Term tail = ListTerm.NIL;
+        if (current.getType() == TokenType.Bar) {
+            advance();
+            tail = parseExpression();
+        }
+        checkAdvance(TokenType.RightBracket);
+
+        Term[] elementArray = new Term[elements.size()];
+        return new ListTerm(elements.toArray(elementArray), tail);
+    }
+
+    /**
+     * Parses an arithmetic expression. Multiplication, division and modulo
+     * bind stronger than addition and subtraction, and all of them are
+     * left-associative.
+     */
+    public Term parseExpression() throws ReadException, IOException {
+        Term left = parseProduct();
+        while (isOperator("+") || current.getType() == TokenType.Hyphen) {
+            String name = current.getString();
+            advance();
+            left = createOperation(name, left, parseProduct());
+        }
+        return left;
+    }
+
+    private Term parseProduct() throws ReadException, IOException {
+        Term left = parseFactor();
+        while (isOperator("*") || isOperator("//") || isIdentifier("mod")) {
+            String name = current.getString();
+            advance();
+            left = createOperation(name, left, parseFactor());
+        }
+        return left;
+    }
+
+    private Term parseFactor() throws ReadException, IOException {
+        switch (current.getType()) {
+            case Hyphen:
+                advance();
+                if (current.getType() == TokenType.Integer)
+                    return parseInteger("-");
+                return TermFactory.createStructure(SymbolTable.getAtom("-"),
+                        new Term[] { parseFactor() });
+            case LeftParen:
+                advance();
+                Term term = parseClause();
+                checkAdvance(TokenType.RightParen);
+                return term;
+            default:
+                return parseTerm();
+        }
+    }
+
+    /**
+     * Parses a clause written as a term, e.g. "(p(X) :- q(X), r(X))", which
+     * is a structure ':-'(Head, Body), or else a goal as in the body of a
+     * rule, which includes expressions.
+     */
+    private Term parseClause() throws ReadException, IOException {
+        Term head = parseBody();
+        if (current.getType() != TokenType.Colon)
+            return head;
+
+        advanceExpect(TokenType.Hyphen);
+        advance();
+        return createOperation(":-", head, parseBody());
+    }
+
+    /**
+     * Parses an arithmetic expression, or a comparison or evaluation of two
+     * of them, e.g. "X is Y + 1" or "X < Y".
+     */
+    public Term parseRelation() throws ReadException, IOException {
+        Term left = parseExpression();
+        if (!isIdentifier("is") && current.getType() != TokenType.Operator)
+            return left;
+
+        Location location = current.getLocation();
+        String name = current.getString();
+        if (!name.equals("is") && !isComparison(name))
+            throw new ReadException(location, "Expected comparison, got " + name);
+
+        advance();
+        return createOperation(name, left, parseExpression());
+    }
+
+    private Term parseInteger(String sign) throws ReadException, IOException {
+        Location location = current.getLocation();
+        String digits = current.getString();
+        checkAdvance(TokenType.Integer);
+
+        try {
+            return IntegerTerm.parse(sign + digits);
+        } catch (NumberFormatException exception) {
+            throw new ReadException(location, "Invalid integer: " + digits);
+        }
+    }
+
+    private static boolean isComparison(String name) {
+        return name.equals("<") || name.equals(">") || name.equals("=<") ||
+                name.equals(">=") || name.equals("=:=") || name.equals("=\\=");
+    }
+
+    private boolean isOperator(String name) {
+        return current.getType() == TokenType.Operator && current.getString().equals(name);
+    }
+
+    private boolean isIdentifier(String name) {
+        return current.getType() == TokenType.Identifier && current.getString().equals(name);
+    }
+
+    private static Term createOperation(String name, Term left, Term right) {
+        return TermFactory.createStructure(SymbolTable.getAtom(name),
+                new Term[] { left, right });
+    }
+
     public Atom parseAtom() throws ReadException, IOException {
         String name = current.getString();
         checkAdvance(TokenType.Identifier);
         // TODO: Check for valid atom name
 
-        return new Atom(name);
+        return SymbolTable.getAtom(name);
     }
 
     public Structure parseStructure() throws ReadException, IOException {
@@ -88,6 +235,18 @@ public final class Parser {
         return (Structure) term;
     }
 
+    /**
+     * Parses a query, which is a goal as in the body of a rule, but not
+     * followed by a period.
+     */
+    public Structure parseQuery() throws ReadException, IOException {
+        Term term = parseBody();
+        if (!(term instanceof Structure))
+            throw new ReadException(current.getLocation(), "Expected structure");
+
+        return (Structure) term;
+    }
+
     public Rule parseRule() throws ReadException, IOException {
         Structure head = parseStructure();
 
@@ -95,24 +254,11 @@ public final class Parser {
             advanceExpect(TokenType.Hyphen);
             advance();
 
-            ArrayList<Term> body = new ArrayList<Term>();
-
-            while (current.getType() != TokenType.Period) {
-                if (current.getType() == TokenType.EndOfFile)
-                    throw new ReadException(current.getLocation(),
-                            "Unexpected end of file in rule");
-
-                body.add(parseTerm());
-                if (current.getType() == TokenType.Comma)
-                    advance();
-                // TODO: This allows trailing commas
-            }
-            // TODO: This allows empty bodies
+            Term[] body = Control.getConjuncts(parseBody());
 
             checkAdvance(TokenType.Period);
 
-            Term[] bodyArray = new Term[body.size()];
-            return new Rule(head, body.toArray(bodyArray));
+            return new Rule(head, body);
         } else {
             checkAdvance(TokenType.Period);
 
@@ -120,14 +266,199 @@ public final class Parser {
         }
     }
 
+    /**
+     * Parses the body of a rule, or a parenthesized part of it. Disjunction
+     * binds weaker than if-then, which binds weaker than conjunction, and all
+     * of them are right-associative.
+     */
+    public Term parseBody() throws ReadException, IOException {
+        Term left = parseIfThen();
+        if (current.getType() != TokenType.Semicolon)
+            return left;
+
+        advance();
+        return createControl(Control.DISJUNCTION, left, parseBody());
+    }
+
+    private Term parseIfThen() throws ReadException, IOException {
+        Term condition = parseConjunction();
+        if (current.getType() != TokenType.Arrow)
+            return condition;
+
+        advance();
+        return createControl(Control.IF_THEN, condition, parseIfThen());
+    }
+
+    private Term parseConjunction() throws ReadException, IOException {
+        Term left = parseGoal();
+        if (current.getType() != TokenType.Comma)
+            return left;
+
+        advance();
+        return createControl(Control.CONJUNCTION, left, parseConjunction());
+    }
+
+    private Term parseGoal() throws ReadException, IOException {
+        switch (current.getType()) {
+            case Exclamation:
+                advance();
+                return Control.CUT;
+            case LeftParen:
+                advance();
+                Term body = parseBody();
+                checkAdvance(TokenType.RightParen);
+                return body;
+            case EndOfFile:
+                throw new ReadException(current.getLocation(),
+                        "Unexpected end of file in rule");
+            default:
+                return parseRelation();
+        }
+    }
+
+    private static Term createControl(Functor functor, Term left, Term right) {
+        return TermFactory.createStructure(functor, new Term[] { left, right });
+    }
+
+    /**
+     * Parses a directive. The table directive declares predicates as tabled,
+     * e.g. ":- table path/2, edge/2.", and the fact_table directive declares
+     * predicates whose facts are stored in fact tables, e.g.
+     * ":- fact_table edge/2."
+     */
+    public void parseDirective(ArrayList<Functor> tabledPredicates,
+            ArrayList<Functor> factTables) throws ReadException, IOException {
+        checkAdvance(TokenType.Colon);
+        checkAdvance(TokenType.Hyphen);
+
+        Location location = current.getLocation();
+        String name = current.getString();
+        checkAdvance(TokenType.Identifier);
+
+        ArrayList<Functor> functors;
+        if (name.equals("table"))
+            functors = tabledPredicates;
+        else if (name.equals("fact_table"))
+            functors = factTables;
+        else
+            throw new ReadException(location, "Unknown directive: " + name);
+
+        functors.add(parsePredicateIndicator());
+        while (current.getType() == TokenType.Comma) {
+            advance();
+            functors.add(parsePredicateIndicator());
+        }
+
+        checkAdvance(TokenType.Period);
+    }
+
+    /**
+     * Parses the name and arity of a predicate, e.g. "path/2".
+     */
+    public Functor parsePredicateIndicator() throws ReadException, IOException {
+        Atom atom = parseAtom();
+        checkAdvance(TokenType.Slash);
+
+        Location location = current.getLocation();
+        String arity = current.getString();
+        checkAdvance(TokenType.Integer);
+
+        try {
+            return atom.getFunctor(Integer.parseInt(arity));
+        } catch (NumberFormatException exception) {
+            throw new ReadException(location, "Invalid arity: " + arity);
+        }
+    }
+
+    /**
+     * Parses the next rule, and the directives before it, so that a program
+     * can be read one rule at a time.
+     *
+     * @param tabledPredicates
+     *        Receives the predicates declared as tabled by the directives.
+     * @param factTables
+     *        Receives the predicates declared as fact tables by the
+     *        directives.
+     * @return The rule, or null if there are no more rules.
+     */
+    public Rule parseNextRule(ArrayList<Functor> tabledPredicates, ArrayList<Functor> factTables)
+            throws ReadException, IOException {
+        while (current.getType() == TokenType.Colon)
+            parseDirective(tabledPredicates, factTables);
+
+        if (current.getType() == TokenType.EndOfFile)
+            return null;
+        if (current.getType() != TokenType.Identifier)
+            throw new ReadException(current.getLocation(), "Expected rule or directive, got " +
+                    current.getType().toString());
+        return parseRule();
+    }
+
+    /**
+     * Parses a whole program. The facts of fact tables are collected in the
+     * fact tables right away.
+     */
     public Knowledge parseKnowledge() throws ReadException, IOException {
         ArrayList<Rule> rules = new ArrayList<Rule>();
+        ArrayList<Functor> tabledPredicates = new ArrayList<Functor>();
+        ArrayList<Functor> factTables = new ArrayList<Functor>();
+        HashMap<Functor, FactTable.Builder> builders = new HashMap<Functor, FactTable.Builder>();
+
+        Rule rule;
+        while ((rule = parseNextRule(tabledPredicates, factTables)) != null) {
+            for (Functor functor : factTables) {
+                if (!builders.containsKey(functor))
+                    builders.put(functor, new FactTable.Builder(functor));
+            }
 
-        while (current.getType() == TokenType.Identifier)
-            rules.add(parseRule());
+            FactTable.Builder builder = builders.get(rule.getHead().getFunctor());
+            if (builder != null)
+                addFact(builder, rule);
+            else
+                rules.add(rule);
+        }
 
         Rule[] ruleArray = new Rule[rules.size()];
-        return new Knowledge(rules.toArray(ruleArray));
+        Functor[] tabledArray = new Functor[tabledPredicates.size()];
+        Knowledge knowledge = new Knowledge(rules.toArray(ruleArray),
+                tabledPredicates.toArray(tabledArray));
+
+        for (Functor functor : factTables) {
+            FactTable.Builder builder = builders.remove(functor);
+            if (builder == null)
+                builder = new FactTable.Builder(functor);
+
+            try {
+                knowledge.addFactTable(builder.build());
+            } catch (IllegalArgumentException exception) {
+                throw new ReadException(current.getLocation(), "Can not store " +
+                        functor.getFullName() + " in a fact table: " + exception.getMessage());
+            }
+        }
+
+        return knowledge;
+    }
+
+    /**
+     * Adds a rule which has just been parsed to a fact table.
+     */
+    public void addFact(FactTable.Builder builder, Rule rule) throws ReadException, IOException {
+        if (!rule.isFact())
+            throw new ReadException(current.getLocation(), "Only facts can be stored in the " +
+                    "fact table " + builder.getFunctor().getFullName());
+
+        try {
+            builder.add(rule.getHead().getArguments());
+        } catch (IllegalArgumentException exception) {
+            throw new ReadException(current.getLocation(), exception.getMessage());
+        }
+    }
+
+    /**
+     * Returns the location of the next token to be parsed.
+     */
+    public Location getLocation() {
+        return current.getLocation();
     }
 
     private void advance() throws ReadException, IOException {
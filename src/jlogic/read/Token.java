@@ -1,22 +1,36 @@
 package jlogic.read;
 
 public final class Token {
-    private final Location location;
+    private final String file;
+    private final int line;
+    private final int column;
     private final TokenType type;
     private final String string;
 
+    // Created when it is asked for, since most tokens never need it
+    private Location location;
+
     public Token(Location location, TokenType type, String string) {
+        this(location.getFile(), location.getLine(), location.getColumn(), type, string);
         this.location = location;
+    }
+
+    Token(String file, int line, int column, TokenType type, String string) {
+        this.file = file;
+        this.line = line;
+        this.column = column;
         this.type = type;
         this.string = string;
     }
 
     @Override
     public String toString() {
-        return location.toString() + ": " + type.toString() + " " + string;
+        return getLocation().toString() + ": " + type.toString() + " " + string;
     }
 
     public Location getLocation() {
+        if (location == null)
+            location = new Location(file, line, column);
         return location;
     }
 
@@ -3,12 +3,21 @@ package jlogic.read;
 public enum TokenType {
     LeftParen,
     RightParen,
+    LeftBracket,
+    RightBracket,
+    Bar,
     Comma,
     Underscore,
     Colon,
     Hyphen,
     Period,
+    Slash,
+    Semicolon,
+    Exclamation,
+    Arrow,
+    Operator,
 
     Identifier,
+    Integer,
     EndOfFile
 }
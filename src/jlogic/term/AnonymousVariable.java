@@ -13,6 +13,12 @@ public final class AnonymousVariable implements Term {
         return true;
     }
 
+    @Override
+    public int hashCode() {
+        // All anonymous variables are equal
+        return 0;
+    }
+
     @Override
     public String toString() {
         return "_";
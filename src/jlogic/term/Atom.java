@@ -1,28 +1,36 @@
 package jlogic.term;
 
+/**
+ * Atoms are interned by SymbolTable, so they can be compared by identity.
+ */
 public final class Atom implements Term {
+    private static final Functor[] NO_FUNCTORS = new Functor[0];
+
     private final String name;
+    private final int id;
+
+    // Functors with this name, indexed by arity. Copied on write, so that
+    // reading does not need any synchronization.
+    private volatile Functor[] functors = NO_FUNCTORS;
 
-    public Atom(String name) {
+    Atom(String name, int id) {
         if (name == null)
             throw new IllegalArgumentException("name must not be null");
         if (!isValidName(name))
             throw new IllegalArgumentException("name is invalid");
 
         this.name = name;
+        this.id = id;
     }
 
     @Override
     public boolean equals(Object object) {
-        if (this == object)
-            return true;
-        if (object == null)
-            return false;
-        if (getClass() != object.getClass())
-            return false;
+        return this == object;
+    }
 
-        Atom other = (Atom) object;
-        return name.equals(other.name);
+    @Override
+    public int hashCode() {
+        return id;
     }
 
     @Override
@@ -39,6 +47,34 @@ public final class Atom implements Term {
         return name;
     }
 
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Returns the unique functor with this name and the given arity.
+     */
+    public Functor getFunctor(int arity) {
+        Functor[] current = functors;
+        if (arity < current.length && current[arity] != null)
+            return current[arity];
+
+        return createFunctor(arity);
+    }
+
+    private synchronized Functor createFunctor(int arity) {
+        Functor[] current = functors;
+        if (arity < current.length && current[arity] != null)
+            return current[arity];
+
+        Functor[] copy = new Functor[Math.max(current.length, arity + 1)];
+        System.arraycopy(current, 0, copy, 0, current.length);
+        copy[arity] = new Functor(this, arity, SymbolTable.createId());
+        functors = copy;
+
+        return copy[arity];
+    }
+
     private static boolean isValidName(String name) {
         // TODO: Implement isValidName.
         return true;
@@ -0,0 +1,303 @@
+package jlogic.term;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * Copies terms, replacing their variables. Ground structures and lists
+ * contain no variables, so they are not copied, and neither are compound
+ * terms in which no variable was replaced.
+ *
+ * Terms are copied recursively up to a limited depth, which is fastest for
+ * the shallow terms of most programs. Below that depth, a copy keeps a stack
+ * of the compound terms whose arguments are being copied instead of
+ * recursing, so terms of any depth can be copied, such as long chains of
+ * cons or succ structures. Arguments are copied from left to right either
+ * way, so variables are replaced in the order in which they occur.
+ *
+ * When the replacements of variables are copied, a variable may be replaced
+ * by a term containing itself, e.g. after matching X with f(X). Such a term
+ * is infinite, so copying it throws an IllegalStateException instead.
+ */
+public abstract class CopyTerm implements Visitor<Term> {
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Depth of the compound terms which are copied recursively
+    private static final int MAX_RECURSION_DEPTH = 64;
+
+    // Whether the replacements of variables are copied in turn
+    private final boolean copyReplacements;
+
+    // The compound terms being copied, the copies of their arguments, or of
+    // their elements for lists, and the number of arguments copied so far.
+    // Allocated when first needed.
+    private Term[] originals;
+    private Term[][] copies;
+    private int[] positions;
+    private int depth = 0;
+
+    // The variables whose replacements are being copied below the recursion
+    // limit, and the depths at which their copies started. A variable which
+    // occurs in its own replacement would otherwise be copied until running
+    // out of memory.
+    private HashSet<Variable> replacing;
+    private Variable[] replacedVariables;
+    private int[] replacedDepths;
+    private int numReplaced = 0;
+
+    /**
+     * @param copyReplacements
+     *        Whether the terms replacing variables are copied as well, so
+     *        that their variables are replaced too.
+     */
+    protected CopyTerm(boolean copyReplacements) {
+        this.copyReplacements = copyReplacements;
+    }
+
+    /**
+     * Returns the term which replaces the given variable.
+     */
+    protected abstract Term replace(Variable variable);
+
+    @Override
+    public final Term visit(AnonymousVariable anonymousVariable) {
+        return anonymousVariable;
+    }
+
+    @Override
+    public final Term visit(Atom atom) {
+        return atom;
+    }
+
+    @Override
+    public final Term visit(CutBarrier cutBarrier) {
+        return cutBarrier;
+    }
+
+    @Override
+    public final Term visit(IntegerTerm integer) {
+        return integer;
+    }
+
+    @Override
+    public final Term visit(ListTerm list) {
+        return copy(list, 0);
+    }
+
+    @Override
+    public final Term visit(Structure structure) {
+        return copy(structure, 0);
+    }
+
+    @Override
+    public final Term visit(Variable variable) {
+        return copy(variable, 0);
+    }
+
+    /**
+     * Copies a term which is nested in the given number of compound terms
+     * being copied recursively.
+     */
+    private Term copy(Term term, int recursionDepth) {
+        while (term instanceof Variable) {
+            Term replacement = replace((Variable) term);
+            if (!copyReplacements || replacement == term)
+                return replacement;
+            term = replacement;
+        }
+
+        if (term instanceof Structure) {
+            Structure structure = (Structure) term;
+            if (structure.isGround())
+                return structure;
+            if (recursionDepth == MAX_RECURSION_DEPTH)
+                return copyDeep(structure);
+
+            Term[] arguments = structure.getArguments();
+            Term[] newArguments = new Term[arguments.length];
+            boolean changed = false;
+            for (int i = 0; i < arguments.length; ++i) {
+                newArguments[i] = copy(arguments[i], recursionDepth + 1);
+                changed = changed || newArguments[i] != arguments[i];
+            }
+
+            return changed ? new Structure(structure.getFunctor(), newArguments) : structure;
+        }
+
+        if (term instanceof ListTerm) {
+            ListTerm list = (ListTerm) term;
+            if (list.isGround())
+                return list;
+            if (recursionDepth == MAX_RECURSION_DEPTH)
+                return copyDeep(list);
+
+            Term[] newElements = new Term[list.size()];
+            boolean changed = false;
+            for (int i = 0; i < newElements.length; ++i) {
+                newElements[i] = copy(list.get(i), recursionDepth + 1);
+                changed = changed || newElements[i] != list.get(i);
+            }
+            Term newTail = copy(list.getTail(), recursionDepth + 1);
+
+            return changed || newTail != list.getTail() ? new ListTerm(newElements, newTail) : list;
+        }
+
+        return term;
+    }
+
+    /**
+     * Copies a term with an explicit stack instead of recursion.
+     */
+    private Term copyDeep(Term term) {
+        int base = depth;
+
+        while (true) {
+            // Descend to the first argument until reaching a term which is
+            // not copied
+            Term result;
+            while (true) {
+                if (term instanceof Structure && !((Structure) term).isGround()) {
+                    Structure structure = (Structure) term;
+                    push(structure, structure.getArity());
+                    term = structure.getArguments()[0];
+                } else if (term instanceof ListTerm && !((ListTerm) term).isGround()) {
+                    ListTerm list = (ListTerm) term;
+                    push(list, list.size());
+                    term = list.get(0);
+                } else if (term instanceof Variable) {
+                    Term replacement = replace((Variable) term);
+                    if (!copyReplacements || replacement == term) {
+                        result = replacement;
+                        break;
+                    }
+                    if (isCompound(replacement))
+                        startReplacement((Variable) term, base);
+                    term = replacement;
+                } else {
+                    result = term;
+                    break;
+                }
+            }
+
+            // Store the result as an argument of the innermost compound term,
+            // and complete those compound terms whose last argument it is
+            while (depth != base) {
+                int top = depth - 1;
+                Term original = originals[top];
+                Term[] arguments = copies[top];
+                int position = positions[top];
+
+                // The tail of a list is its last argument, but it is not
+                // stored with the elements
+                if (position < arguments.length)
+                    arguments[position] = result;
+                ++position;
+
+                if (original instanceof ListTerm && position <= arguments.length) {
+                    positions[top] = position;
+                    term = position < arguments.length ? ((ListTerm) original).get(position)
+                            : ((ListTerm) original).getTail();
+                    break;
+                }
+                if (original instanceof Structure && position < arguments.length) {
+                    positions[top] = position;
+                    term = ((Structure) original).getArguments()[position];
+                    break;
+                }
+
+                if (original instanceof ListTerm)
+                    result = createList((ListTerm) original, arguments, result);
+                else
+                    result = createStructure((Structure) original, arguments);
+                pop();
+                if (numReplaced != 0 && replacedDepths[numReplaced - 1] == depth)
+                    endReplacement();
+            }
+
+            if (depth == base)
+                return result;
+        }
+    }
+
+    private static boolean isCompound(Term term) {
+        return term instanceof Structure && !((Structure) term).isGround()
+                || term instanceof ListTerm && !((ListTerm) term).isGround();
+    }
+
+    /**
+     * Records that the replacement of the given variable is copied next,
+     * starting at the current depth. Throws if it is being copied already,
+     * after unwinding the copy down to the given depth.
+     */
+    private void startReplacement(Variable variable, int base) {
+        if (replacing == null) {
+            replacing = new HashSet<Variable>();
+            replacedVariables = new Variable[INITIAL_CAPACITY];
+            replacedDepths = new int[INITIAL_CAPACITY];
+        }
+
+        if (!replacing.add(variable)) {
+            while (depth != base)
+                pop();
+            while (numReplaced != 0 && replacedDepths[numReplaced - 1] >= base)
+                endReplacement();
+            throw new IllegalStateException("cyclic term: " + variable + " occurs in itself");
+        }
+
+        if (numReplaced == replacedVariables.length) {
+            replacedVariables = Arrays.copyOf(replacedVariables, numReplaced * 2);
+            replacedDepths = Arrays.copyOf(replacedDepths, numReplaced * 2);
+        }
+        replacedVariables[numReplaced] = variable;
+        replacedDepths[numReplaced] = depth;
+        ++numReplaced;
+    }
+
+    private void endReplacement() {
+        --numReplaced;
+        replacing.remove(replacedVariables[numReplaced]);
+        replacedVariables[numReplaced] = null;
+    }
+
+    private static Term createList(ListTerm original, Term[] elements, Term tail) {
+        if (tail != original.getTail())
+            return new ListTerm(elements, tail);
+        for (int i = 0; i < elements.length; ++i) {
+            if (elements[i] != original.get(i))
+                return new ListTerm(elements, tail);
+        }
+        return original;
+    }
+
+    private static Term createStructure(Structure original, Term[] arguments) {
+        Term[] originalArguments = original.getArguments();
+        for (int i = 0; i < arguments.length; ++i) {
+            if (arguments[i] != originalArguments[i])
+                return new Structure(original.getFunctor(), arguments);
+        }
+        return original;
+    }
+
+    private void push(Term original, int numArguments) {
+        if (originals == null) {
+            originals = new Term[INITIAL_CAPACITY];
+            copies = new Term[INITIAL_CAPACITY][];
+            positions = new int[INITIAL_CAPACITY];
+        } else if (depth == originals.length) {
+            originals = Arrays.copyOf(originals, depth * 2);
+            copies = Arrays.copyOf(copies, depth * 2);
+            positions = Arrays.copyOf(positions, depth * 2);
+        }
+
+        originals[depth] = original;
+        copies[depth] = new Term[numArguments];
+        positions[depth] = 0;
+        ++depth;
+    }
+
+    private void pop() {
+        --depth;
+        originals[depth] = null;
+        copies[depth] = null;
+    }
+}
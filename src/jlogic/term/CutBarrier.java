@@ -0,0 +1,51 @@
+package jlogic.term;
+
+/**
+ * A cut whose effect is known: it removes all choice points created since
+ * the given barrier. The interpreter replaces the cuts of a clause body by
+ * cut barriers when it uses the clause, so that a cut only removes the choice
+ * points of its own clause, wherever it ends up in the goal list. Cut
+ * barriers are never read.
+ */
+public final class CutBarrier implements Term {
+    private final long barrier;
+
+    public CutBarrier(long barrier) {
+        this.barrier = barrier;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (this == object)
+            return true;
+        if (object == null)
+            return false;
+        if (getClass() != object.getClass())
+            return false;
+
+        return barrier == ((CutBarrier) object).barrier;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (barrier ^ (barrier >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return "!";
+    }
+
+    @Override
+    public <T> T accept(Visitor<T> visitor) {
+        return visitor.visit(this);
+    }
+
+    /**
+     * Returns the first choice point which is removed by this cut. Choice
+     * points are numbered in the order in which they are created.
+     */
+    public long getBarrier() {
+        return barrier;
+    }
+}
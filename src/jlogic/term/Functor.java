@@ -0,0 +1,50 @@
+package jlogic.term;
+
+/**
+ * The name and arity of a structure. Functors are interned by SymbolTable, so
+ * they can be compared by identity.
+ */
+public final class Functor {
+    private final Atom atom;
+    private final int arity;
+    private final int id;
+    private final String fullName;
+
+    Functor(Atom atom, int arity, int id) {
+        this.atom = atom;
+        this.arity = arity;
+        this.id = id;
+
+        fullName = atom.getName() + '/' + arity;
+    }
+
+    @Override
+    public int hashCode() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return fullName;
+    }
+
+    public Atom getAtom() {
+        return atom;
+    }
+
+    public String getName() {
+        return atom.getName();
+    }
+
+    public int getArity() {
+        return arity;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getFullName() {
+        return fullName;
+    }
+}
@@ -0,0 +1,195 @@
+package jlogic.term;
+
+import java.math.BigInteger;
+
+/**
+ * An integer of arbitrary size. Integers which fit into a long are stored as
+ * one, and only larger ones as a BigInteger, so that the common case does
+ * not allocate anything beyond the term itself. Every value has exactly one
+ * representation, so two integers are equal exactly if their fields are.
+ */
+public final class IntegerTerm implements Term {
+    private static final long MIN_CACHED = -128;
+    private static final long MAX_CACHED = 1024;
+    private static final IntegerTerm[] cache = new IntegerTerm[(int) (MAX_CACHED - MIN_CACHED + 1)];
+
+    private static final BigInteger MIN_LONG = BigInteger.valueOf(Long.MIN_VALUE);
+    private static final BigInteger MAX_LONG = BigInteger.valueOf(Long.MAX_VALUE);
+
+    static {
+        for (int i = 0; i < cache.length; ++i)
+            cache[i] = new IntegerTerm(MIN_CACHED + i, null);
+    }
+
+    private final long value;
+
+    // Null if the value fits into a long
+    private final BigInteger bigValue;
+
+    private IntegerTerm(long value, BigInteger bigValue) {
+        this.value = value;
+        this.bigValue = bigValue;
+    }
+
+    public static IntegerTerm valueOf(long value) {
+        if (value >= MIN_CACHED && value <= MAX_CACHED)
+            return cache[(int) (value - MIN_CACHED)];
+        return new IntegerTerm(value, null);
+    }
+
+    public static IntegerTerm valueOf(BigInteger value) {
+        if (value == null)
+            throw new IllegalArgumentException("value must not be null");
+
+        if (value.compareTo(MIN_LONG) >= 0 && value.compareTo(MAX_LONG) <= 0)
+            return valueOf(value.longValue());
+        return new IntegerTerm(0, value);
+    }
+
+    /**
+     * Parses a string of decimal digits, optionally preceded by a minus sign.
+     *
+     * @throws NumberFormatException
+     *         If the string is not an integer.
+     */
+    public static IntegerTerm parse(String string) {
+        if (string.length() < 19)
+            return valueOf(Long.parseLong(string));
+        return valueOf(new BigInteger(string));
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (this == object)
+            return true;
+        if (object == null)
+            return false;
+        if (getClass() != object.getClass())
+            return false;
+
+        IntegerTerm other = (IntegerTerm) object;
+        if (bigValue != null)
+            return bigValue.equals(other.bigValue);
+        return other.bigValue == null && value == other.value;
+    }
+
+    @Override
+    public int hashCode() {
+        if (bigValue != null)
+            return bigValue.hashCode();
+        return (int) (value ^ (value >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        if (bigValue != null)
+            return bigValue.toString();
+        return Long.toString(value);
+    }
+
+    @Override
+    public <T> T accept(Visitor<T> visitor) {
+        return visitor.visit(this);
+    }
+
+    /**
+     * Returns whether the value fits into a long.
+     */
+    public boolean isSmall() {
+        return bigValue == null;
+    }
+
+    /**
+     * Returns the value, which must fit into a long.
+     */
+    public long longValue() {
+        assert bigValue == null;
+        return value;
+    }
+
+    public BigInteger bigIntegerValue() {
+        if (bigValue != null)
+            return bigValue;
+        return BigInteger.valueOf(value);
+    }
+
+    public int signum() {
+        if (bigValue != null)
+            return bigValue.signum();
+        return Long.signum(value);
+    }
+
+    public int compareTo(IntegerTerm other) {
+        if (bigValue == null && other.bigValue == null)
+            return Long.compare(value, other.value);
+        return bigIntegerValue().compareTo(other.bigIntegerValue());
+    }
+
+    public IntegerTerm add(IntegerTerm other) {
+        if (bigValue == null && other.bigValue == null) {
+            long result = value + other.value;
+            // Overflow iff both operands have a sign different from the result
+            if (((value ^ result) & (other.value ^ result)) >= 0)
+                return valueOf(result);
+        }
+        return valueOf(bigIntegerValue().add(other.bigIntegerValue()));
+    }
+
+    public IntegerTerm subtract(IntegerTerm other) {
+        if (bigValue == null && other.bigValue == null) {
+            long result = value - other.value;
+            // Overflow iff the operands have different signs and the result's
+            // sign differs from ours
+            if (((value ^ other.value) & (value ^ result)) >= 0)
+                return valueOf(result);
+        }
+        return valueOf(bigIntegerValue().subtract(other.bigIntegerValue()));
+    }
+
+    public IntegerTerm multiply(IntegerTerm other) {
+        if (bigValue == null && other.bigValue == null) {
+            long result = value * other.value;
+            // Overflow iff dividing the product does not give back the
+            // operand, or in the one case where the division overflows too
+            if (value == 0 || (result / value == other.value &&
+                    !(value == -1 && other.value == Long.MIN_VALUE)))
+                return valueOf(result);
+        }
+        return valueOf(bigIntegerValue().multiply(other.bigIntegerValue()));
+    }
+
+    /**
+     * Divides, rounding towards zero. The divisor must not be zero.
+     */
+    public IntegerTerm divide(IntegerTerm other) {
+        assert other.signum() != 0;
+
+        // Long.MIN_VALUE / -1 is the only quotient of longs which overflows
+        if (bigValue == null && other.bigValue == null &&
+                !(value == Long.MIN_VALUE && other.value == -1))
+            return valueOf(value / other.value);
+        return valueOf(bigIntegerValue().divide(other.bigIntegerValue()));
+    }
+
+    /**
+     * Returns the remainder of dividing, rounding towards negative infinity,
+     * so that it has the sign of the divisor. The divisor must not be zero.
+     */
+    public IntegerTerm mod(IntegerTerm other) {
+        assert other.signum() != 0;
+
+        if (bigValue == null && other.bigValue == null)
+            return valueOf(Math.floorMod(value, other.value));
+
+        BigInteger remainder = bigIntegerValue().mod(other.bigIntegerValue().abs());
+        if (other.signum() < 0 && remainder.signum() != 0)
+            remainder = remainder.add(other.bigIntegerValue());
+        return valueOf(remainder);
+    }
+
+    public IntegerTerm negate() {
+        if (bigValue == null && value != Long.MIN_VALUE)
+            return valueOf(-value);
+        return valueOf(bigIntegerValue().negate());
+    }
+}
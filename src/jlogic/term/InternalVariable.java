@@ -0,0 +1,44 @@
+package jlogic.term;
+
+/**
+ * A variable created by the interpreter when renaming the variables of a
+ * clause or query. Internal variables are identified by a number instead of
+ * a name, which allows storing their instantiations in dense arrays.
+ */
+public final class InternalVariable extends Variable {
+    private final int id;
+
+    public InternalVariable(int id) {
+        if (id < 0)
+            throw new IllegalArgumentException("id must not be negative");
+
+        this.id = id;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (this == object)
+            return true;
+        if (object == null)
+            return false;
+        if (getClass() != object.getClass())
+            return false;
+
+        InternalVariable other = (InternalVariable) object;
+        return id == other.id;
+    }
+
+    @Override
+    public int hashCode() {
+        return id;
+    }
+
+    @Override
+    public String getName() {
+        return "_G" + id;
+    }
+
+    public int getId() {
+        return id;
+    }
+}
@@ -0,0 +1,145 @@
+package jlogic.term;
+
+/**
+ * A list stored as an array of elements followed by a tail, e.g. [a, b | T].
+ * The list [a, b] has the tail nil. A ListTerm stands for the same list as a
+ * chain of cons/2 structures ending in its tail, and unifies with one, but it
+ * needs no structure per element.
+ *
+ * The suffixes of a list share its array: dropping elements from the front
+ * only creates a view of the remaining elements. Hash codes and groundness of
+ * every suffix are computed once per array, so views are created in constant
+ * time.
+ *
+ * Lists are equal if they have equal elements and tails, no matter how their
+ * elements are split into arrays. They are never equal to cons structures
+ * though, so lists which are not equal may still unify, even if they are
+ * ground.
+ */
+public final class ListTerm implements Term {
+    public static final Functor CONS = SymbolTable.getFunctor("cons", 2);
+    public static final Atom NIL = SymbolTable.getAtom("nil");
+
+    private final Term[] elements;
+    private final int offset;
+    private final Term tail;
+
+    // Hash code of the list starting at each element, shared by all views
+    private final int[] suffixHashes;
+
+    // Position of the last element which is not ground, or -1 if there is
+    // none, and whether the tail is ground
+    private final int lastNonGround;
+    private final boolean groundTail;
+
+    /**
+     * Creates a list of the given elements followed by the given tail. The
+     * array is not copied, so it must not be modified afterwards.
+     */
+    public ListTerm(Term[] elements, Term tail) {
+        if (elements == null || elements.length == 0)
+            throw new IllegalArgumentException("a list must have at least one element");
+        if (tail == null)
+            throw new IllegalArgumentException("tail must not be null");
+
+        this.elements = elements;
+        this.offset = 0;
+        this.tail = tail;
+
+        groundTail = isGround(tail);
+
+        int lastNonGround = -1;
+        suffixHashes = new int[elements.length];
+        int hash = tail.hashCode();
+        for (int i = elements.length - 1; i >= 0; --i) {
+            hash = 31 * hash + elements[i].hashCode();
+            suffixHashes[i] = hash;
+
+            if (lastNonGround == -1 && !isGround(elements[i]))
+                lastNonGround = i;
+        }
+        this.lastNonGround = lastNonGround;
+    }
+
+    // Creates a view of the elements from the given offset on
+    private ListTerm(ListTerm list, int offset) {
+        assert offset < list.elements.length;
+
+        this.elements = list.elements;
+        this.offset = offset;
+        this.tail = list.tail;
+        this.suffixHashes = list.suffixHashes;
+        this.lastNonGround = list.lastNonGround;
+        this.groundTail = list.groundTail;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (this == object)
+            return true;
+        if (object == null)
+            return false;
+        if (getClass() != object.getClass())
+            return false;
+
+        // Compared without recursion, element by element, even if the arrays
+        // are split differently
+        return Terms.equal(this, (ListTerm) object);
+    }
+
+    @Override
+    public int hashCode() {
+        return suffixHashes[offset];
+    }
+
+    @Override
+    public String toString() {
+        return Terms.toString(this);
+    }
+
+    @Override
+    public <T> T accept(Visitor<T> visitor) {
+        return visitor.visit(this);
+    }
+
+    /**
+     * Returns the number of elements before the tail.
+     */
+    public int size() {
+        return elements.length - offset;
+    }
+
+    public Term get(int index) {
+        return elements[offset + index];
+    }
+
+    public Term getTail() {
+        return tail;
+    }
+
+    /**
+     * Returns the list without its first n elements, which is the tail if n
+     * is the size of this list.
+     */
+    public Term drop(int n) {
+        assert n > 0 && n <= size();
+
+        if (n == size())
+            return tail;
+        return new ListTerm(this, offset + n);
+    }
+
+    public boolean isGround() {
+        return offset > lastNonGround && groundTail;
+    }
+
+    private static boolean isGround(Term term) {
+        if (term instanceof Atom || term instanceof IntegerTerm)
+            return true;
+        if (term instanceof Structure)
+            return ((Structure) term).isGround();
+        if (term instanceof ListTerm)
+            return ((ListTerm) term).isGround();
+        return false;
+    }
+}
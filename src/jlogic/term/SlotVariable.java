@@ -0,0 +1,46 @@
+package jlogic.term;
+
+/**
+ * A variable of a compiled clause. The variables of a clause are numbered in
+ * the order of their first occurrence, so that renaming the clause only needs
+ * an array of slots instead of a map from variable names.
+ */
+public final class SlotVariable extends Variable {
+    private final int slot;
+
+    public SlotVariable(String name, int slot) {
+        super(name);
+
+        if (slot < 0)
+            throw new IllegalArgumentException("slot must not be negative");
+
+        this.slot = slot;
+    }
+
+    /**
+     * Slot variables are equal if they have the same slot, regardless of
+     * their names. This makes terms with consistently numbered variables
+     * equal if they are variants of each other.
+     */
+    @Override
+    public boolean equals(Object object) {
+        if (this == object)
+            return true;
+        if (object == null)
+            return false;
+        if (getClass() != object.getClass())
+            return false;
+
+        SlotVariable other = (SlotVariable) object;
+        return slot == other.slot;
+    }
+
+    @Override
+    public int hashCode() {
+        return slot;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+}
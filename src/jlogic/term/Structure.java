@@ -1,17 +1,59 @@
 package jlogic.term;
 
 public final class Structure implements Term {
-    private final Atom functor;
+    private final Functor functor;
     private final Term[] arguments;
 
-    public Structure(Atom functor, Term[] arguments) {
+    // Structural hash code, computed from the cached hash codes of the
+    // arguments
+    private final int hash;
+
+    // True if the structure contains no variables
+    private final boolean ground;
+
+    // True if the structure is a cons structure or contains a list
+    private final boolean containsLists;
+
+    // True if this instance is the one shared instance of a ground structure
+    // created by TermFactory
+    private final boolean shared;
+
+    Structure(Functor functor, Term[] arguments, boolean shared) {
         if (functor == null)
             throw new IllegalArgumentException("functor must not be null");
         if (arguments == null)
             throw new IllegalArgumentException("arguments must not be null");
+        if (functor.getArity() != arguments.length)
+            throw new IllegalArgumentException("arity of functor must match the number of arguments");
 
         this.functor = functor;
         this.arguments = arguments;
+
+        int hash = functor.getId();
+        boolean ground = true;
+        boolean containsLists = functor == ListTerm.CONS;
+        for (Term argument : arguments) {
+            hash = 31 * hash + argument.hashCode();
+            ground = ground && (argument instanceof Atom || argument instanceof IntegerTerm
+                    || (argument instanceof Structure && ((Structure) argument).ground)
+                    || (argument instanceof ListTerm && ((ListTerm) argument).isGround()));
+            containsLists = containsLists || argument instanceof ListTerm
+                    || (argument instanceof Structure && ((Structure) argument).containsLists);
+        }
+        this.hash = hash;
+        this.ground = ground;
+        this.containsLists = containsLists;
+        this.shared = shared;
+
+        assert !shared || ground;
+    }
+
+    public Structure(Functor functor, Term[] arguments) {
+        this(functor, arguments, false);
+    }
+
+    public Structure(Atom name, Term[] arguments) {
+        this(name.getFunctor(arguments.length), arguments);
     }
 
     @Override
@@ -23,36 +65,18 @@ public final class Structure implements Term {
         if (getClass() != object.getClass())
             return false;
 
-        Structure other = (Structure) object;
-        if (!other.functor.equals(object))
-            return false;
-        if (other.arguments.length != arguments.length)
-            return false;
-
-        for (int i = 0; i < other.arguments.length; ++i) {
-            if (!other.arguments[i].equals(arguments[i]))
-                return false;
-        }
+        // Compared without recursion, since structures may be nested deeply
+        return Terms.equal(this, (Structure) object);
+    }
 
-        return true;
+    @Override
+    public int hashCode() {
+        return hash;
     }
 
     @Override
     public String toString() {
-        StringBuilder builder = new StringBuilder();
-        builder.append(functor);
-        builder.append('(');
-
-        for (int i = 0; i < arguments.length; ++i) {
-            builder.append(arguments[i]);
-
-            if (i + 1 != arguments.length)
-                builder.append(',');
-        }
-
-        builder.append(')');
-
-        return builder.toString();
+        return Terms.toString(this);
     }
 
     @Override
@@ -60,7 +84,7 @@ public final class Structure implements Term {
         return visitor.visit(this);
     }
 
-    public Atom getFunctor() {
+    public Functor getFunctor() {
         return functor;
     }
 
@@ -77,6 +101,28 @@ public final class Structure implements Term {
     }
 
     public String getFullName() {
-        return getName() + '/' + getArity();
+        return functor.getFullName();
+    }
+
+    public boolean isGround() {
+        return ground;
+    }
+
+    /**
+     * Returns true if this is a cons structure or contains a ListTerm or a
+     * cons structure. Such structures may unify with structures they are not
+     * equal to, since a ListTerm is never equal to the cons structures it
+     * unifies with.
+     */
+    public boolean containsLists() {
+        return containsLists;
+    }
+
+    /**
+     * Returns true if this is the shared instance of a ground structure. Two
+     * different shared instances are never equal.
+     */
+    public boolean isShared() {
+        return shared;
     }
 }
@@ -0,0 +1,90 @@
+package jlogic.term;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Interns atoms and functors, so that there is exactly one instance of each
+ * atom name and of each name/arity pair. This allows comparing them by
+ * identity and identifying them by an integer id.
+ *
+ * Atoms and functors share one range of ids, so an id identifies a symbol
+ * unambiguously, and atoms can be looked up by their id. The table is global
+ * and safe to use from multiple threads.
+ */
+public final class SymbolTable {
+    private static final ConcurrentHashMap<String, Atom> atoms = new ConcurrentHashMap<String, Atom>();
+    private static final AtomicInteger idCounter = new AtomicInteger();
+
+    // Atoms by their id, in chunks which are created when needed. The ids of
+    // functors have no atom.
+    private static final int CHUNK_BITS = 16;
+    private static final AtomicReferenceArray<AtomicReferenceArray<Atom>> atomsById =
+            new AtomicReferenceArray<AtomicReferenceArray<Atom>>(1 << (31 - CHUNK_BITS));
+
+    // Static class
+    private SymbolTable() {
+        assert false;
+    }
+
+    /**
+     * Returns the unique atom of the given name, creating it if needed.
+     */
+    public static Atom getAtom(String name) {
+        Atom atom = atoms.get(name);
+        if (atom != null)
+            return atom;
+
+        // Registered before it is published, so that everyone who can see
+        // the atom can also find it by its id. If another thread publishes
+        // the atom first, this id is simply never used.
+        Atom newAtom = new Atom(name, createId());
+        getChunk(newAtom.getId()).set(newAtom.getId() & ((1 << CHUNK_BITS) - 1), newAtom);
+
+        atom = atoms.putIfAbsent(name, newAtom);
+        return atom != null ? atom : newAtom;
+    }
+
+    /**
+     * Returns the atom with the given id, or null if the id is not one of an
+     * atom.
+     */
+    public static Atom getAtom(int id) {
+        if (id < 0 || id >= idCounter.get())
+            return null;
+
+        AtomicReferenceArray<Atom> chunk = atomsById.get(id >>> CHUNK_BITS);
+        return chunk != null ? chunk.get(id & ((1 << CHUNK_BITS) - 1)) : null;
+    }
+
+    /**
+     * Returns the unique functor of the given name and arity, creating it if
+     * needed.
+     */
+    public static Functor getFunctor(String name, int arity) {
+        return getAtom(name).getFunctor(arity);
+    }
+
+    /**
+     * Returns the number of ids that have been handed out so far. Every id of
+     * an atom or functor is smaller than this.
+     */
+    public static int getNumIds() {
+        return idCounter.get();
+    }
+
+    private static AtomicReferenceArray<Atom> getChunk(int id) {
+        AtomicReferenceArray<Atom> chunk = atomsById.get(id >>> CHUNK_BITS);
+        if (chunk != null)
+            return chunk;
+
+        atomsById.compareAndSet(id >>> CHUNK_BITS, null,
+                new AtomicReferenceArray<Atom>(1 << CHUNK_BITS));
+        return atomsById.get(id >>> CHUNK_BITS);
+    }
+
+    static int createId() {
+        return idCounter.getAndIncrement();
+    }
+}
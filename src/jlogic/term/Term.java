@@ -1,5 +1,11 @@
 package jlogic.term;
 
+/**
+ * A term of the logic language. All terms are immutable, so they can be
+ * shared freely between queries running on different threads. Variables are
+ * never modified either; their instantiations are stored in the bindings of
+ * each search.
+ */
 public interface Term {
     // Visitor pattern
     public <T> T accept(Visitor<T> visitor);
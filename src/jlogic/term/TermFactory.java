@@ -0,0 +1,155 @@
+package jlogic.term;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.WeakHashMap;
+
+/**
+ * Creates terms, sharing ground structures: equal ground structures created
+ * by this factory are the same instance. This saves memory for duplicated
+ * data, and allows comparing shared ground structures by identity.
+ *
+ * Shared structures are only referenced weakly, so they are collected once
+ * nothing else refers to them. The factory is safe to use from multiple
+ * threads. Its table of shared structures is split into stripes by hash
+ * code, each with its own lock, so that concurrent queries rarely wait for
+ * each other when creating structures.
+ */
+public final class TermFactory {
+    private static final int NUM_STRIPES = 64;
+
+    private static final Stripe[] stripes = createStripes();
+
+    /**
+     * The shared structures of one stripe, mapped to themselves. Guarded by
+     * the stripe itself.
+     */
+    private static final class Stripe {
+        final WeakHashMap<Structure, WeakReference<Structure>> structures =
+                new WeakHashMap<Structure, WeakReference<Structure>>();
+    }
+
+    // Static class
+    private TermFactory() {
+        assert false;
+    }
+
+    public static Atom createAtom(String name) {
+        return SymbolTable.getAtom(name);
+    }
+
+    /**
+     * Creates a structure. If the structure is ground, the shared instance is
+     * returned. For sharing to be complete, ground arguments should have been
+     * created by this factory as well.
+     */
+    public static Structure createStructure(Functor functor, Term[] arguments) {
+        Structure structure = new Structure(functor, arguments);
+        if (!structure.isGround())
+            return structure;
+
+        Stripe stripe = getStripe(structure);
+        synchronized (stripe) {
+            WeakReference<Structure> reference = stripe.structures.get(structure);
+            Structure existing = reference != null ? reference.get() : null;
+            if (existing != null)
+                return existing;
+
+            Structure shared = new Structure(functor, arguments, true);
+            stripe.structures.put(shared, new WeakReference<Structure>(shared));
+            return shared;
+        }
+    }
+
+    public static Structure createStructure(Atom name, Term[] arguments) {
+        return createStructure(name.getFunctor(arguments.length), arguments);
+    }
+
+    /**
+     * Returns a term equal to the given one in which all ground structures are
+     * shared instances.
+     */
+    public static Term share(Term term) {
+        if (!(term instanceof Structure) || ((Structure) term).isShared())
+            return term;
+
+        // The structures whose arguments are being shared, copies of their
+        // arguments, and the position of the next argument to share. They
+        // are kept on a stack instead of recursing, so that deep structures
+        // can be shared.
+        ArrayList<Structure> structures = new ArrayList<Structure>();
+        ArrayList<Term[]> newArguments = new ArrayList<Term[]>();
+        int[] positions = new int[16];
+
+        structures.add((Structure) term);
+        newArguments.add(((Structure) term).getArguments().clone());
+
+        while (true) {
+            int top = structures.size() - 1;
+            Term[] arguments = newArguments.get(top);
+
+            if (positions[top] < arguments.length) {
+                Term argument = arguments[positions[top]];
+                if (argument instanceof Structure && !((Structure) argument).isShared()) {
+                    if (structures.size() == positions.length)
+                        positions = Arrays.copyOf(positions, positions.length * 2);
+                    positions[structures.size()] = 0;
+                    structures.add((Structure) argument);
+                    newArguments.add(((Structure) argument).getArguments().clone());
+                } else
+                    ++positions[top];
+                continue;
+            }
+
+            Term shared = share(structures.remove(top), newArguments.remove(top));
+            if (top == 0)
+                return shared;
+            newArguments.get(top - 1)[positions[top - 1]++] = shared;
+        }
+    }
+
+    /**
+     * Returns a structure equal to the given one with the given shared
+     * arguments, which is the shared instance if it is ground.
+     */
+    private static Structure share(Structure structure, Term[] newArguments) {
+        Term[] arguments = structure.getArguments();
+        boolean changed = false;
+        for (int i = 0; i < arguments.length; ++i)
+            changed = changed || newArguments[i] != arguments[i];
+        if (!changed)
+            newArguments = arguments;
+
+        if (!structure.isGround())
+            return newArguments == arguments ? structure
+                    : new Structure(structure.getFunctor(), newArguments);
+        return createStructure(structure.getFunctor(), newArguments);
+    }
+
+    /**
+     * Returns the number of shared ground structures currently alive.
+     */
+    public static int getNumSharedStructures() {
+        int result = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                result += stripe.structures.size();
+            }
+        }
+        return result;
+    }
+
+    private static Stripe getStripe(Structure structure) {
+        // Mix the high bits into the low ones, which select the stripe
+        int hash = structure.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (NUM_STRIPES - 1)];
+    }
+
+    private static Stripe[] createStripes() {
+        Stripe[] result = new Stripe[NUM_STRIPES];
+        for (int i = 0; i < result.length; ++i)
+            result[i] = new Stripe();
+        return result;
+    }
+}
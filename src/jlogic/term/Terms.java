@@ -0,0 +1,150 @@
+package jlogic.term;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Compares and writes compound terms without recursion, with explicit stacks
+ * of the parts which remain to be done, so that terms of any depth can be
+ * handled.
+ */
+final class Terms {
+    // Static class
+    private Terms() {
+        assert false;
+    }
+
+    /**
+     * Returns whether two terms are equal. Compound terms are compared
+     * argument by argument from left to right, and the pairs of the remaining
+     * arguments are kept on a stack.
+     */
+    static boolean equal(Term a, Term b) {
+        Term[] pending = null;
+        int numPending = 0;
+
+        while (true) {
+            if (a != b) {
+                if (a instanceof Structure && b instanceof Structure) {
+                    Structure structureA = (Structure) a;
+                    Structure structureB = (Structure) b;
+                    if (structureA.hashCode() != structureB.hashCode()
+                            || structureA.getFunctor() != structureB.getFunctor())
+                        return false;
+
+                    // There is only one shared instance of each ground
+                    // structure
+                    if (structureA.isShared() && structureB.isShared())
+                        return false;
+
+                    Term[] argumentsA = structureA.getArguments();
+                    Term[] argumentsB = structureB.getArguments();
+                    if (numPending + 2 * argumentsA.length > (pending == null ? 0 : pending.length))
+                        pending = grow(pending, numPending + 2 * argumentsA.length);
+                    for (int i = argumentsA.length - 1; i >= 0; --i) {
+                        pending[numPending++] = argumentsA[i];
+                        pending[numPending++] = argumentsB[i];
+                    }
+                } else if (a instanceof ListTerm && b instanceof ListTerm) {
+                    ListTerm listA = (ListTerm) a;
+                    ListTerm listB = (ListTerm) b;
+                    if (listA.hashCode() != listB.hashCode())
+                        return false;
+
+                    // Compare element by element, even if the arrays are split
+                    // differently
+                    int n = Math.min(listA.size(), listB.size());
+                    if (numPending + 2 * n + 2 > (pending == null ? 0 : pending.length))
+                        pending = grow(pending, numPending + 2 * n + 2);
+                    pending[numPending++] = listA.drop(n);
+                    pending[numPending++] = listB.drop(n);
+                    for (int i = n - 1; i >= 0; --i) {
+                        pending[numPending++] = listA.get(i);
+                        pending[numPending++] = listB.get(i);
+                    }
+                } else if (!a.equals(b))
+                    return false;
+            }
+
+            if (numPending == 0)
+                return true;
+            b = pending[--numPending];
+            a = pending[--numPending];
+        }
+    }
+
+    /**
+     * Writes a term. The parts of compound terms which remain to be written,
+     * terms and punctuation, are kept on a stack.
+     */
+    static String toString(Term term) {
+        StringBuilder builder = new StringBuilder();
+        ArrayList<Object> pending = new ArrayList<Object>();
+        ArrayList<Object> parts = new ArrayList<Object>();
+
+        Object part = term;
+        while (true) {
+            if (part instanceof Structure) {
+                Structure structure = (Structure) part;
+                builder.append(structure.getName());
+                builder.append('(');
+
+                Term[] arguments = structure.getArguments();
+                for (int i = 0; i < arguments.length; ++i) {
+                    parts.add(arguments[i]);
+
+                    if (i + 1 != arguments.length)
+                        parts.add(",");
+                }
+                parts.add(")");
+            } else if (part instanceof ListTerm) {
+                builder.append('[');
+
+                // Cons structures in the tail are written as elements as well
+                Term rest = (ListTerm) part;
+                while (true) {
+                    if (rest instanceof ListTerm) {
+                        ListTerm list = (ListTerm) rest;
+                        for (int i = 0; i < list.size(); ++i) {
+                            if (rest != part || i != 0)
+                                parts.add(",");
+                            parts.add(list.get(i));
+                        }
+                        rest = list.getTail();
+                    } else if (rest instanceof Structure
+                            && ((Structure) rest).getFunctor() == ListTerm.CONS) {
+                        parts.add(",");
+                        parts.add(((Structure) rest).getArguments()[0]);
+                        rest = ((Structure) rest).getArguments()[1];
+                    } else
+                        break;
+                }
+
+                if (rest != ListTerm.NIL) {
+                    parts.add("|");
+                    parts.add(rest);
+                }
+                parts.add("]");
+            } else
+                builder.append(part);
+
+            // The parts are pushed in reverse order, so that they are written
+            // from left to right
+            for (int i = parts.size() - 1; i >= 0; --i)
+                pending.add(parts.get(i));
+            parts.clear();
+
+            if (pending.isEmpty())
+                return builder.toString();
+            part = pending.remove(pending.size() - 1);
+        }
+    }
+
+    private static Term[] grow(Term[] array, int minLength) {
+        int length = array == null ? 16 : array.length;
+        while (length < minLength)
+            length *= 2;
+
+        return array == null ? new Term[length] : Arrays.copyOf(array, length);
+    }
+}
@@ -12,6 +12,14 @@ public class Variable implements Term {
         this.name = name;
     }
 
+    /**
+     * Creates a variable without a name. Subclasses using this constructor
+     * have to override getName(), equals() and hashCode().
+     */
+    protected Variable() {
+        name = null;
+    }
+
     @Override
     public boolean equals(Object object) {
         if (this == object)
@@ -32,7 +40,7 @@ public class Variable implements Term {
 
     @Override
     public String toString() {
-        return name;
+        return getName();
     }
 
     @Override
@@ -5,6 +5,12 @@ public interface Visitor<T> {
 
     T visit(Atom atom);
 
+    T visit(CutBarrier cutBarrier);
+
+    T visit(IntegerTerm integer);
+
+    T visit(ListTerm list);
+
     T visit(Structure structure);
 
     T visit(Variable variable);
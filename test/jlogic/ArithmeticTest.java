@@ -0,0 +1,119 @@
+package jlogic;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import jlogic.interpret.Frame;
+import jlogic.interpret.SearchTree;
+import jlogic.read.Lexer;
+import jlogic.read.Parser;
+import jlogic.term.Variable;
+
+import org.junit.Test;
+
+public class ArithmeticTest {
+    private static final String PROGRAM =
+            "fib(0, 0).\n" +
+            "fib(1, 1).\n" +
+            "fib(N, F) :- N > 1, A is N - 1, B is N - 2, fib(A, FA), fib(B, FB), " +
+            "F is FA + FB.\n";
+
+    @Test
+    public void testIs() throws Exception {
+        Knowledge knowledge = Queries.parse(PROGRAM);
+
+        assertEquals(Arrays.asList("13"), Queries.solve(knowledge, "X is 2 + 3 * 4 - 1", "X"));
+        assertEquals(Arrays.asList("-3"), Queries.solve(knowledge, "X is -7 // 2", "X"));
+        assertEquals(Arrays.asList("1"), Queries.solve(knowledge, "X is -7 mod 2", "X"));
+        assertEquals(Arrays.asList("5"),
+                Queries.solve(knowledge, "X is max(2, min(9, 5)) * abs(-1)", "X"));
+        assertEquals(Arrays.asList("55"), Queries.solve(knowledge, "fib(10, X)", "X"));
+        assertEquals(1, Queries.count(knowledge, "3 is 1 + 2"));
+        assertEquals(0, Queries.count(knowledge, "4 is 1 + 2"));
+    }
+
+    @Test
+    public void testLargeIntegers() throws Exception {
+        Knowledge knowledge = Queries.parse(PROGRAM);
+
+        assertEquals(Arrays.asList("9223372036854775808"),
+                Queries.solve(knowledge, "X is 9223372036854775807 + 1", "X"));
+        assertEquals(Arrays.asList("-9223372036854775808"),
+                Queries.solve(knowledge, "X is -9223372036854775807 - 1", "X"));
+        assertEquals(Arrays.asList("85070591730234615865843651857942052864"),
+                Queries.solve(knowledge, "X is 9223372036854775808 * 9223372036854775808",
+                        "X"));
+        assertEquals(Arrays.asList("1"),
+                Queries.solve(knowledge, "X is 9223372036854775808 - 9223372036854775807",
+                        "X"));
+    }
+
+    @Test
+    public void testUnevaluableExpressionsFail() throws Exception {
+        Knowledge knowledge = Queries.parse(PROGRAM);
+
+        assertEquals(0, Queries.count(knowledge, "X is Y + 1"));
+        assertEquals(0, Queries.count(knowledge, "X is 1 // 0"));
+        assertEquals(0, Queries.count(knowledge, "X is 1 mod 0"));
+        assertEquals(0, Queries.count(knowledge, "X is a + 1"));
+        assertEquals(0, Queries.count(knowledge, "X < 1"));
+    }
+
+    @Test
+    public void testComparisons() throws Exception {
+        Knowledge knowledge = Queries.parse(PROGRAM);
+
+        assertEquals(1, Queries.count(knowledge,
+                "1 < 2, 2 > 1, 2 =< 2, 2 >= 2, 1 + 1 =:= 2, 1 =\\= 2"));
+        assertEquals(0, Queries.count(knowledge, "2 < 2"));
+        assertEquals(0, Queries.count(knowledge, "1 > 2"));
+        assertEquals(0, Queries.count(knowledge, "3 =< 2"));
+        assertEquals(0, Queries.count(knowledge, "2 >= 3"));
+        assertEquals(0, Queries.count(knowledge, "2 =:= 3"));
+        assertEquals(0, Queries.count(knowledge, "3 =\\= 3"));
+    }
+
+    @Test
+    public void testBetween() throws Exception {
+        Knowledge knowledge = Queries.parse(PROGRAM);
+
+        assertEquals(Arrays.asList("1", "2", "3"),
+                Queries.solve(knowledge, "between(1, 3, X)", "X"));
+        assertEquals(Arrays.asList("4"), Queries.solve(knowledge, "between(4, 4, X)", "X"));
+        assertEquals(0, Queries.count(knowledge, "between(4, 3, X)"));
+        assertEquals(1, Queries.count(knowledge, "between(1, 3, 2)"));
+        assertEquals(0, Queries.count(knowledge, "between(1, 3, 4)"));
+        assertEquals(1, Queries.count(knowledge, "between(1, inf, 1000000)"));
+        assertEquals(Arrays.asList("2", "4", "6", "8", "10", "6", "9"),
+                Queries.solve(knowledge, "between(1, 10, X), 0 is X mod 2 ; " +
+                        "between(1, 10, X), 0 is X mod 3, X > 3", "X"));
+    }
+
+    @Test
+    public void testUnboundedBetween() throws Exception {
+        SearchTree tree = new SearchTree(Queries.parse(PROGRAM), new Parser(new Lexer("query",
+                new StringReader("between(1, infinite, X), 0 is X mod 7"))).parseQuery());
+
+        ArrayList<String> results = new ArrayList<String>();
+        Iterator<Frame> iterator = tree.iterator();
+        for (int i = 0; i < 3; ++i)
+            results.add(iterator.next().getInstantiation(new Variable("X")).toString());
+        assertEquals(Arrays.asList("7", "14", "21"), results);
+    }
+
+    @Test
+    public void testSucc() throws Exception {
+        Knowledge knowledge = Queries.parse(PROGRAM);
+
+        assertEquals(Arrays.asList("5"), Queries.solve(knowledge, "succ(4, X)", "X"));
+        assertEquals(Arrays.asList("3"), Queries.solve(knowledge, "succ(X, 4)", "X"));
+        assertEquals(1, Queries.count(knowledge, "succ(0, 1)"));
+        assertEquals(0, Queries.count(knowledge, "succ(X, 0)"));
+        assertEquals(0, Queries.count(knowledge, "succ(-1, X)"));
+        assertEquals(0, Queries.count(knowledge, "succ(X, Y)"));
+    }
+}
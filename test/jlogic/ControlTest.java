@@ -0,0 +1,67 @@
+package jlogic;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class ControlTest {
+    private static final String PROGRAM =
+            "eq(X, X).\n" +
+            "c(1). c(2). c(3).\n" +
+            "first(X) :- c(X), !.\n" +
+            "max(X, Y, X) :- X >= Y, !.\n" +
+            "max(X, Y, Y).\n" +
+            "local(X) :- (c(X), ! ; eq(X, none)).\n" +
+            "size(X, S) :- c(X), (X > 1 -> eq(S, big) ; eq(S, small)).\n";
+
+    @Test
+    public void testCut() throws Exception {
+        Knowledge knowledge = Queries.parse(PROGRAM);
+
+        assertEquals(Arrays.asList("1"), Queries.solve(knowledge, "first(X)", "X"));
+        assertEquals(Arrays.asList("5"), Queries.solve(knowledge, "max(3, 5, M)", "M"));
+        assertEquals(Arrays.asList("5"), Queries.solve(knowledge, "max(5, 3, M)", "M"));
+    }
+
+    @Test
+    public void testCutInQuery() throws Exception {
+        Knowledge knowledge = Queries.parse(PROGRAM);
+
+        // The cut removes the choice points of the query, but not the ones
+        // created after it
+        assertEquals(Arrays.asList("1"), Queries.solve(knowledge, "c(X), !", "X"));
+        assertEquals(Arrays.asList("1", "2", "3"), Queries.solve(knowledge, "c(X), !, c(Y)", "Y"));
+        assertEquals(Arrays.asList("2"),
+                Queries.solve(knowledge, "(c(X), X > 1, ! ; eq(X, none))", "X"));
+    }
+
+    @Test
+    public void testCutInDisjunction() throws Exception {
+        Knowledge knowledge = Queries.parse(PROGRAM);
+
+        // The cut removes the other branch and the clause's other choices
+        assertEquals(Arrays.asList("1"), Queries.solve(knowledge, "local(X)", "X"));
+    }
+
+    @Test
+    public void testIfThenElse() throws Exception {
+        Knowledge knowledge = Queries.parse(PROGRAM);
+
+        assertEquals(Arrays.asList("small", "big", "big"),
+                Queries.solve(knowledge, "size(X, S)", "S"));
+
+        // The condition is only solved once
+        assertEquals(Arrays.asList("1"),
+                Queries.solve(knowledge, "(c(X) -> eq(Y, X) ; eq(Y, 0))", "Y"));
+    }
+
+    @Test
+    public void testDisjunction() throws Exception {
+        Knowledge knowledge = Queries.parse(PROGRAM);
+
+        assertEquals(Arrays.asList("1", "2", "3", "z"),
+                Queries.solve(knowledge, "(c(X) ; eq(X, z))", "X"));
+    }
+}
@@ -0,0 +1,50 @@
+package jlogic;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class DatabaseTest {
+    private static final String PROGRAM = "c(1). c(2). c(3).\n";
+
+    @Test
+    public void testAssert() throws Exception {
+        Knowledge knowledge = Queries.parse(PROGRAM);
+
+        assertEquals(1, Queries.count(knowledge, "assertz(c(4))"));
+        assertEquals(1, Queries.count(knowledge, "asserta(c(0))"));
+        assertEquals(Arrays.asList("0", "1", "2", "3", "4"),
+                Queries.solve(knowledge, "c(X)", "X"));
+    }
+
+    @Test
+    public void testAssertRule() throws Exception {
+        Knowledge knowledge = Queries.parse(PROGRAM);
+
+        assertEquals(1, Queries.count(knowledge, "assertz((d(X) :- c(X), X > 1))"));
+        assertEquals(Arrays.asList("2", "3"), Queries.solve(knowledge, "d(X)", "X"));
+    }
+
+    @Test
+    public void testRetract() throws Exception {
+        Knowledge knowledge = Queries.parse(PROGRAM);
+
+        assertEquals(1, Queries.count(knowledge, "retract(c(2))"));
+        assertEquals(0, Queries.count(knowledge, "retract(c(2))"));
+        assertEquals(Arrays.asList("1", "3"), Queries.solve(knowledge, "c(X)", "X"));
+    }
+
+    @Test
+    public void testLogicalUpdateView() throws Exception {
+        Knowledge knowledge = Queries.parse(PROGRAM);
+
+        // A running call does not see the clauses added or removed meanwhile
+        assertEquals(Arrays.asList("1", "2", "3"),
+                Queries.solve(knowledge, "c(X), assertz(c(9))", "X"));
+        assertEquals(Arrays.asList("1", "2", "3"),
+                Queries.solve(knowledge, "c(X), X < 4, retract(c(X))", "X"));
+        assertEquals(Arrays.asList("9", "9", "9"), Queries.solve(knowledge, "c(X)", "X"));
+    }
+}
@@ -0,0 +1,63 @@
+package jlogic;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class DeepTermTest {
+    private static final String PROGRAM =
+            "eq(X, X).\n" +
+            "nat(0, zero) :- !.\n" +
+            "nat(N, succ(X)) :- M is N - 1, nat(M, X).\n" +
+            "chain(0, nil) :- !.\n" +
+            "chain(N, cons(N, T)) :- M is N - 1, chain(M, T).\n";
+
+    private static final int DEPTH = 100000;
+
+    @Test
+    public void testDeepStructures() throws Exception {
+        Knowledge knowledge = Queries.parse(PROGRAM);
+
+        String nat = Queries.solve(knowledge, "nat(" + DEPTH + ", X)", "X").get(0);
+        assertEquals(DEPTH * "succ()".length() + "zero".length(), nat.length());
+        assertTrue(nat.startsWith("succ(succ("));
+        assertTrue(nat.contains("(succ(zero))"));
+    }
+
+    @Test
+    public void testDeepMatch() throws Exception {
+        Knowledge knowledge = Queries.parse(PROGRAM);
+
+        assertEquals(1, Queries.count(knowledge,
+                "nat(" + DEPTH + ", X), nat(" + DEPTH + ", Y), eq(X, Y)"));
+        assertEquals(0, Queries.count(knowledge,
+                "nat(" + DEPTH + ", X), nat(" + (DEPTH - 1) + ", Y), eq(X, Y)"));
+    }
+
+    @Test
+    public void testDeepLists() throws Exception {
+        Knowledge knowledge = Queries.parse(PROGRAM);
+
+        assertEquals(Arrays.asList(String.valueOf(DEPTH)),
+                Queries.solve(knowledge, "chain(" + DEPTH + ", C), length(C, N)", "N"));
+        assertEquals(Arrays.asList(String.valueOf(DEPTH)),
+                Queries.solve(knowledge, "length(L, " + DEPTH + "), eq(L, [X|T]), length(L, N)",
+                        "N"));
+    }
+
+    @Test
+    public void testCyclicTermIsRejected() throws Exception {
+        Knowledge knowledge = Queries.parse(PROGRAM);
+
+        for (String query : new String[] { "eq(X, f(X))", "eq(X, [a|X])",
+                "eq(X, f(Y)), eq(Y, g(X))" }) {
+            try {
+                Queries.solve(knowledge, query, "X");
+                fail(query);
+            } catch (IllegalStateException expected) {
+            }
+        }
+    }
+}
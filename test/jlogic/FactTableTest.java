@@ -0,0 +1,119 @@
+package jlogic;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import jlogic.read.ReadException;
+import jlogic.term.Atom;
+import jlogic.term.IntegerTerm;
+import jlogic.term.SymbolTable;
+import jlogic.term.Term;
+import jlogic.term.Variable;
+
+import org.junit.Test;
+
+public class FactTableTest {
+    private static final String PROGRAM =
+            ":- fact_table e/2.\n" +
+            "e(a, b). e(b, c). e(a, c). e(c, c). e(1, 2). e(-5, a).\n" +
+            "two(X, Y) :- e(X, Z), e(Z, Y).\n";
+
+    @Test
+    public void testQueries() throws Exception {
+        Knowledge knowledge = Queries.parse(PROGRAM);
+
+        assertEquals(6, knowledge.getFactTable(SymbolTable.getFunctor("e", 2)).getNumRows());
+        assertNull(knowledge.getPredicate("e", 2));
+        assertEquals(Arrays.asList("b", "c"), Queries.solve(knowledge, "e(a, X)", "X"));
+        assertEquals(Arrays.asList("a", "b", "a", "c", "1", "-5"),
+                Queries.solve(knowledge, "e(X, _)", "X"));
+        assertEquals(Arrays.asList("b", "a", "c"), Queries.solve(knowledge, "e(X, c)", "X"));
+        assertEquals(Arrays.asList("c"), Queries.solve(knowledge, "e(X, X)", "X"));
+        assertEquals(Arrays.asList("a"), Queries.solve(knowledge, "e(-5, X)", "X"));
+        assertEquals(1, Queries.count(knowledge, "e(1, 2)"));
+        assertEquals(0, Queries.count(knowledge, "e(2, 1)"));
+        assertEquals(0, Queries.count(knowledge, "e(f(a), X)"));
+        assertEquals(0, Queries.count(knowledge, "e(99999999999999999999, X)"));
+        assertEquals(Arrays.asList("c", "c"), Queries.solve(knowledge, "two(a, X)", "X"));
+    }
+
+    @Test
+    public void testIndexedAnswersAreUnchanged() throws Exception {
+        StringBuilder program = new StringBuilder(":- fact_table f/3.\n");
+        for (int i = 0; i < 1000; ++i)
+            program.append("f(k, " + i % 100 + ", v" + i + ").\n");
+        Knowledge knowledge = Queries.parse(program.toString());
+
+        // The calls binding the second argument build an index on it
+        for (int i = 0; i < 20; ++i) {
+            ArrayList<String> values = Queries.solve(knowledge, "f(k, " + i + ", V)", "V");
+            assertEquals(10, values.size());
+            for (int j = 0; j < values.size(); ++j)
+                assertEquals("v" + (j * 100 + i), values.get(j));
+        }
+        assertEquals(1000, Queries.count(knowledge, "f(k, N, V)"));
+        assertEquals(0, Queries.count(knowledge, "f(k, 100, V)"));
+    }
+
+    @Test
+    public void testFind() throws Exception {
+        FactTable.Builder builder = new FactTable.Builder(SymbolTable.getFunctor("g", 2));
+        Atom a = SymbolTable.getAtom("a");
+        for (int i = 0; i < 10; ++i)
+            builder.add(new Term[] { i % 2 == 0 ? a : IntegerTerm.valueOf(i),
+                    IntegerTerm.valueOf(i * i) });
+        FactTable table = builder.build();
+
+        FactTable.Rows rows = table.find(new Term[] { a, new Variable("X") });
+        ArrayList<String> squares = new ArrayList<String>();
+        for (int row = rows.next(); row != -1; row = rows.next())
+            squares.add(table.getTerm(row, 1).toString());
+        assertEquals(Arrays.asList("0", "4", "16", "36", "64"), squares);
+        assertEquals(-1, table.find(new Term[] { IntegerTerm.valueOf(2),
+                new Variable("X") }).next());
+    }
+
+    @Test
+    public void testOnlyAtomsAndIntegersAreStored() throws Exception {
+        for (String program : new String[] { ":- fact_table e/1.\ne(f(x)).\n",
+                ":- fact_table e/1.\ne(X).\n", ":- fact_table e/1.\ne(a) :- e(b).\n",
+                "e(a).\n:- fact_table e/1.\n" }) {
+            try {
+                Queries.parse(program);
+                fail(program);
+            } catch (ReadException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testFactsCanNotBeChanged() throws Exception {
+        Knowledge knowledge = Queries.parse(PROGRAM);
+
+        assertEquals(0, Queries.count(knowledge, "assertz(e(d, e))"));
+        assertEquals(0, Queries.count(knowledge, "retract(e(a, b))"));
+        assertEquals(6, Queries.count(knowledge, "e(X, Y)"));
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        File file = File.createTempFile("jlogic", ".jl");
+        file.deleteOnExit();
+        PrintWriter writer = new PrintWriter(new FileWriter(file));
+        try {
+            writer.print(":- fact_table f/2.\nf(a, 1).\ng(x).\nf(b, 2).\nf(a, 3).\n");
+        } finally {
+            writer.close();
+        }
+
+        Knowledge knowledge = Queries.parse("g(w).\n");
+        assertEquals(4, KnowledgeLoader.load(knowledge, file.getPath(), null));
+        assertEquals(Arrays.asList("1", "3"), Queries.solve(knowledge, "f(a, X)", "X"));
+        assertEquals(Arrays.asList("w", "x"), Queries.solve(knowledge, "g(X)", "X"));
+    }
+}
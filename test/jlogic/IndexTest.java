@@ -0,0 +1,104 @@
+package jlogic;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.Arrays;
+
+import jlogic.read.Lexer;
+import jlogic.read.Parser;
+import jlogic.term.Term;
+
+import org.junit.Test;
+
+public class IndexTest {
+    private static final String PROGRAM =
+            "p(a, 1). p(b, 2). p(X, 3). p(c, 4). p(a, 5).\n" +
+            "p([1], 6). p(f(x), 7). p(f(y), 8). p(7, 9).\n";
+
+    // More calls than it takes to build an index
+    private static final int CALLS = 20;
+
+    private static String createGrid(int size) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < size; ++i) {
+            for (int j = 0; j < size; ++j)
+                result.append("r(a" + i + ", b" + j + ", " + (i * size + j) + ").\n");
+        }
+        return result.toString();
+    }
+
+    private static Term[] getArguments(String goal) throws Exception {
+        return new Parser(new Lexer("goal", new StringReader(goal))).parseStructure()
+                .getArguments();
+    }
+
+    @Test
+    public void testFirstArgumentIndex() throws Exception {
+        Knowledge knowledge = Queries.parse(PROGRAM);
+        Predicate predicate = knowledge.getPredicate("p", 2);
+
+        assertEquals(1, predicate.getNumIndexes());
+        assertEquals(3, predicate.getClauses(getArguments("p(a, Y)")).length);
+        assertEquals(1, predicate.getClauses(getArguments("p(d, Y)")).length);
+        assertEquals(9, predicate.getClauses(getArguments("p(X, Y)")).length);
+    }
+
+    @Test
+    public void testIndexedAnswers() throws Exception {
+        Knowledge knowledge = Queries.parse(PROGRAM);
+
+        // Clauses with a variable first argument match every key, in order
+        assertEquals(Arrays.asList("1", "3", "5"), Queries.solve(knowledge, "p(a, X)", "X"));
+        assertEquals(Arrays.asList("3", "8"), Queries.solve(knowledge, "p(f(y), X)", "X"));
+        assertEquals(Arrays.asList("3", "6"), Queries.solve(knowledge, "p([1], X)", "X"));
+        assertEquals(Arrays.asList("3", "9"), Queries.solve(knowledge, "p(7, X)", "X"));
+        assertEquals(9, Queries.count(knowledge, "p(Y, X)"));
+    }
+
+    @Test
+    public void testArgumentIndexIsBuiltOnDemand() throws Exception {
+        Knowledge knowledge = Queries.parse(createGrid(6));
+        Predicate predicate = knowledge.getPredicate("r", 3);
+        Term[] arguments = getArguments("r(A, b2, V)");
+
+        assertEquals(1, predicate.getNumIndexes());
+        assertEquals(36, predicate.getClauses(arguments).length);
+        for (int i = 0; i < CALLS; ++i)
+            assertEquals(Arrays.asList("2", "8", "14", "20", "26", "32"),
+                    Queries.solve(knowledge, "r(A, b2, V)", "V"));
+        assertEquals(2, predicate.getNumIndexes());
+        assertEquals(6, predicate.getClauses(arguments).length);
+    }
+
+    @Test
+    public void testCombinedIndexIsBuiltOnDemand() throws Exception {
+        Knowledge knowledge = Queries.parse(createGrid(6));
+        Predicate predicate = knowledge.getPredicate("r", 3);
+        Term[] arguments = getArguments("r(a3, b4, V)");
+
+        // Neither argument alone selects fewer than six clauses
+        for (int i = 0; i < CALLS; ++i)
+            assertEquals(Arrays.asList("22"), Queries.solve(knowledge, "r(a3, b4, V)", "V"));
+        assertEquals(3, predicate.getNumIndexes());
+        assertEquals(1, predicate.getClauses(arguments).length);
+    }
+
+    @Test
+    public void testIndexesFollowChanges() throws Exception {
+        Knowledge knowledge = Queries.parse(createGrid(6));
+        Predicate predicate = knowledge.getPredicate("r", 3);
+
+        for (int i = 0; i < CALLS; ++i)
+            Queries.count(knowledge, "r(a1, b1, V)");
+        assertEquals(3, predicate.getNumIndexes());
+
+        assertEquals(1, Queries.count(knowledge, "assertz(r(a1, b1, 100))"));
+        assertEquals(1, Queries.count(knowledge, "asserta(r(X, b1, 101))"));
+        assertEquals(1, Queries.count(knowledge, "retract(r(a1, b1, 7))"));
+        assertEquals(3, predicate.getNumIndexes());
+        assertEquals(Arrays.asList("101", "100"), Queries.solve(knowledge, "r(a1, b1, V)", "V"));
+        assertEquals(Arrays.asList("101", "1", "13", "19", "25", "31", "100"),
+                Queries.solve(knowledge, "r(A, b1, V)", "V"));
+    }
+}
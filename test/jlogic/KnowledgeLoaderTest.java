@@ -0,0 +1,81 @@
+package jlogic;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import jlogic.read.ReadException;
+
+import org.junit.Test;
+
+public class KnowledgeLoaderTest {
+    // More clauses than the loader adds at once, and than it reads between
+    // two progress reports
+    private static final int NUM_FACTS = 1200000;
+
+    private static File write(String text) throws IOException {
+        File file = File.createTempFile("jlogic", ".jl");
+        file.deleteOnExit();
+        PrintWriter writer = new PrintWriter(new FileWriter(file));
+        try {
+            writer.print(text);
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        StringBuilder text = new StringBuilder();
+        text.append(":- table path/2.\n");
+        text.append("path(X, Y) :- edge(X, Y).\n");
+        text.append("path(X, Y) :- path(X, Z), edge(Z, Y).\n");
+        for (int i = 0; i < NUM_FACTS; ++i) {
+            text.append("n(").append(i).append(").\n");
+            if (i % 1000 == 0)
+                text.append("edge(").append(i / 1000).append(", ").append(i / 1000 + 1)
+                        .append(").\n");
+        }
+        File file = write(text.toString());
+
+        Knowledge knowledge = Queries.parse("n(-1).\nedge(a, 0).\n");
+        final ArrayList<Long> reports = new ArrayList<Long>();
+        long numClauses = KnowledgeLoader.load(knowledge, file.getPath(),
+                new KnowledgeLoader.Progress() {
+                    @Override
+                    public void report(long numClauses, long numBytes, long totalBytes) {
+                        assertTrue(numBytes <= totalBytes);
+                        reports.add(numClauses);
+                    }
+                });
+
+        assertEquals(2 + NUM_FACTS + NUM_FACTS / 1000, numClauses);
+        assertEquals(Arrays.asList(1000000L), reports);
+        assertEquals(NUM_FACTS + 1, knowledge.getPredicate("n", 1).getClauses().length);
+
+        // The loaded clauses come after the existing ones
+        assertEquals(Arrays.asList("-1", "0", "1"), Queries.solve(knowledge,
+                "n(X), X < 2", "X"));
+        assertEquals(1, Queries.count(knowledge, "n(1199999)"));
+        assertEquals(NUM_FACTS / 1000 + 1, Queries.count(knowledge, "path(a, X)"));
+    }
+
+    @Test
+    public void testClausesBeforeErrorAreAdded() throws Exception {
+        File file = write("p(1).\np(2).\np(3) :- .\np(4).\n");
+
+        Knowledge knowledge = Queries.parse("p(0).\n");
+        try {
+            KnowledgeLoader.load(knowledge, file.getPath(), null);
+            fail(file.getPath());
+        } catch (ReadException expected) {
+        }
+        assertEquals(Arrays.asList("0", "1", "2"), Queries.solve(knowledge, "p(X)", "X"));
+    }
+}
@@ -0,0 +1,129 @@
+package jlogic;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import jlogic.read.Lexer;
+import jlogic.read.ReadException;
+import jlogic.read.Token;
+import jlogic.read.TokenType;
+
+import org.junit.Test;
+
+public class LexerTest {
+    private static final String PROGRAM =
+            "% A comment\n" +
+            "p(X, [a|_], Y) :- q(X1, 42), !; X >= 1, Y is X // 2 - 1.\n" +
+            "r -> s:t =\\= =:= =< * + < > /.\n";
+
+    private static final String[] TOKENS = {
+        "Identifier p", "LeftParen (", "Identifier X", "Comma ,", "LeftBracket [",
+        "Identifier a", "Bar |", "Underscore _", "RightBracket ]", "Comma ,",
+        "Identifier Y", "RightParen )", "Colon :", "Hyphen -", "Identifier q",
+        "LeftParen (", "Identifier X1", "Comma ,", "Integer 42", "RightParen )",
+        "Comma ,", "Exclamation !", "Semicolon ;", "Identifier X", "Operator >=",
+        "Integer 1", "Comma ,", "Identifier Y", "Identifier is", "Identifier X",
+        "Operator //", "Integer 2", "Hyphen -", "Integer 1", "Period .",
+        "Identifier r", "Arrow ->", "Identifier s", "Colon :", "Identifier t",
+        "Operator =\\=", "Operator =:=", "Operator =<", "Operator *", "Operator +",
+        "Operator <", "Operator >", "Slash /", "Period .", "EndOfFile ",
+    };
+
+    /**
+     * Returns the tokens read by a lexer, as their types and strings.
+     */
+    private static ArrayList<String> readAll(Lexer lexer) throws Exception {
+        ArrayList<String> result = new ArrayList<String>();
+        Token token;
+        do {
+            token = lexer.read();
+            result.add(token.getType() + " " + token.getString());
+        } while (token.getType() != TokenType.EndOfFile);
+        return result;
+    }
+
+    @Test
+    public void testTokens() throws Exception {
+        assertEquals(Arrays.asList(TOKENS),
+                readAll(new Lexer("test", new StringReader(PROGRAM))));
+    }
+
+    @Test
+    public void testTokensAcrossReads() throws Exception {
+        // Hands out one character at a time, so that every token has to be
+        // kept when the buffer is refilled
+        final StringReader characters = new StringReader(PROGRAM);
+        Reader reader = new Reader() {
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                return characters.read(buffer, offset, Math.min(length, 1));
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        assertEquals(Arrays.asList(TOKENS), readAll(new Lexer("test", reader)));
+    }
+
+    @Test
+    public void testLongTokens() throws Exception {
+        StringBuilder identifier = new StringBuilder("a");
+        StringBuilder integer = new StringBuilder("1");
+        for (int i = 0; i < 200000; ++i) {
+            identifier.append((char) ('a' + i % 26));
+            integer.append((char) ('0' + i % 10));
+        }
+
+        Lexer lexer = new Lexer("test", new StringReader(
+                "x " + identifier + "(" + integer + ")"));
+        assertEquals("x", lexer.read().getString());
+        assertEquals(identifier.toString(), lexer.read().getString());
+        assertEquals(TokenType.LeftParen, lexer.read().getType());
+        assertEquals(integer.toString(), lexer.read().getString());
+        assertEquals(TokenType.RightParen, lexer.read().getType());
+        assertEquals(TokenType.EndOfFile, lexer.read().getType());
+    }
+
+    @Test
+    public void testLocations() throws Exception {
+        Lexer lexer = new Lexer("test", new StringReader("a(b,\n  % c\n   cd)."));
+
+        int[][] locations = { { 0, 0 }, { 0, 1 }, { 0, 2 }, { 0, 3 }, { 2, 3 }, { 2, 5 },
+                { 2, 6 } };
+        for (int[] location : locations) {
+            Token token = lexer.read();
+            assertEquals("test", token.getLocation().getFile());
+            assertEquals(location[0], token.getLocation().getLine());
+            assertEquals(location[1], token.getLocation().getColumn());
+        }
+    }
+
+    @Test
+    public void testIdentifiersAreShared() throws Exception {
+        Lexer lexer = new Lexer("test", new StringReader("foo bar foo"));
+
+        String first = lexer.read().getString();
+        lexer.read();
+        assertTrue(first == lexer.read().getString());
+    }
+
+    @Test
+    public void testUnknownCharacters() throws Exception {
+        for (String code : new String[] { "a # b", "a =/ b", "a >< b" }) {
+            Lexer lexer = new Lexer("test", new StringReader(code));
+            lexer.read();
+            try {
+                lexer.read();
+                fail(code);
+            } catch (ReadException expected) {
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package jlogic;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class ListsTest {
+    @Test
+    public void testAppend() throws Exception {
+        Knowledge knowledge = Queries.parse("");
+
+        assertEquals(Arrays.asList("[1,2,3]"),
+                Queries.solve(knowledge, "append([1, 2], [3], L)", "L"));
+        assertEquals(Arrays.asList("nil", "[1]", "[1,2]"),
+                Queries.solve(knowledge, "append(X, Y, [1, 2])", "X"));
+        assertEquals(Arrays.asList("cons(2,nil)"),
+                Queries.solve(knowledge, "append([1], Y, cons(1, cons(2, nil)))", "Y"));
+    }
+
+    @Test
+    public void testMember() throws Exception {
+        Knowledge knowledge = Queries.parse("");
+
+        assertEquals(Arrays.asList("a", "b", "c"),
+                Queries.solve(knowledge, "member(X, [a, b, c])", "X"));
+        assertEquals(1, Queries.count(knowledge, "member(b, [a, b, c])"));
+        assertEquals(0, Queries.count(knowledge, "member(d, [a, b, c])"));
+    }
+
+    @Test
+    public void testLength() throws Exception {
+        Knowledge knowledge = Queries.parse("");
+
+        assertEquals(Arrays.asList("3"), Queries.solve(knowledge, "length([a, b, c], N)", "N"));
+        assertEquals(Arrays.asList("2"),
+                Queries.solve(knowledge, "length(cons(a, cons(b, nil)), N)", "N"));
+        assertEquals(1, Queries.count(knowledge, "length(L, 2)"));
+        assertEquals(0, Queries.count(knowledge, "length([a], 2)"));
+    }
+
+    @Test
+    public void testNth() throws Exception {
+        Knowledge knowledge = Queries.parse("");
+
+        assertEquals(Arrays.asList("a"), Queries.solve(knowledge, "nth(1, [a, b, c], X)", "X"));
+        assertEquals(Arrays.asList("1", "2"), Queries.solve(knowledge, "nth(N, [a, b], X)", "N"));
+        assertEquals(0, Queries.count(knowledge, "nth(4, [a, b, c], X)"));
+    }
+}
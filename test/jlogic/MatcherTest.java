@@ -2,11 +2,53 @@ package jlogic;
 
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
+
 import org.junit.Test;
 
 public class MatcherTest {
+    private static final String PROGRAM =
+            "eq(X, X).\n" +
+            "f(cons(a, nil)).\n" +
+            "g([a]).\n";
+
+    @Test
+    public void testMatch() throws Exception {
+        Knowledge knowledge = Queries.parse(PROGRAM);
+
+        assertEquals(Arrays.asList("b"), Queries.solve(knowledge, "eq(f(X, b), f(a, Y))", "Y"));
+        assertEquals(0, Queries.count(knowledge, "eq(f(a), f(b))"));
+        assertEquals(0, Queries.count(knowledge, "eq(f(a), g(a))"));
+    }
+
     @Test
-    public void testMatch() {
-        fail("Not yet implemented");
+    public void testListMatchesCons() throws Exception {
+        Knowledge knowledge = Queries.parse(PROGRAM);
+
+        assertEquals(1, Queries.count(knowledge, "eq(cons(a, nil), [a])"));
+        assertEquals(Arrays.asList("cons(2,nil)"),
+                Queries.solve(knowledge, "eq([H|T], cons(1, cons(2, nil)))", "T"));
+        assertEquals(Arrays.asList("[b]"),
+                Queries.solve(knowledge, "eq(cons(a, T), [a, b])", "T"));
+    }
+
+    @Test
+    public void testNestedGroundListMatchesCons() throws Exception {
+        Knowledge knowledge = Queries.parse(PROGRAM);
+
+        assertEquals(1, Queries.count(knowledge, "eq(f(cons(a, nil)), f([a]))"));
+        assertEquals(1, Queries.count(knowledge, "eq([cons(a, nil)], [[a]])"));
+        assertEquals(1, Queries.count(knowledge,
+                "eq(h(g(cons(1, cons(2, nil))), x), h(g([1, 2]), x))"));
+        assertEquals(0, Queries.count(knowledge, "eq(f([b]), f(cons(a, nil)))"));
+    }
+
+    @Test
+    public void testClauseHeadListMatchesCons() throws Exception {
+        Knowledge knowledge = Queries.parse(PROGRAM);
+
+        assertEquals(1, Queries.count(knowledge, "f([a])"));
+        assertEquals(1, Queries.count(knowledge, "g(cons(a, nil))"));
+        assertEquals(0, Queries.count(knowledge, "g(cons(b, nil))"));
     }
 }
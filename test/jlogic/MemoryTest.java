@@ -0,0 +1,50 @@
+package jlogic;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.junit.Test;
+
+public class MemoryTest {
+    private static final String PROGRAM =
+            "loop(0).\n" +
+            "loop(N) :- N > 0, M is N - 1, loop(M).\n" +
+            "cnt(N, N) :- !.\n" +
+            "cnt(I, N) :- J is I + 1, cnt(J, N).\n" +
+            "c(1). c(2).\n";
+
+    // Far less than the variables of the loops below would take if they
+    // were all kept
+    private static final String HEAP = "-Xmx32m";
+
+    @Test
+    public void testDeterministicLoopsRunInConstantMemory() throws Exception {
+        assertEquals(0, runWithSmallHeap("loop(3000000)"));
+        assertEquals(0, runWithSmallHeap("cnt(0, 3000000)"));
+
+        // The loop runs after a choice point
+        assertEquals(0, runWithSmallHeap("c(X), X > 1, loop(3000000)"));
+    }
+
+    /**
+     * Solves the given query in a new JVM with a small heap, returning its
+     * exit code.
+     */
+    private static int runWithSmallHeap(String query) throws Exception {
+        String java = System.getProperty("java.home") + File.separator + "bin" +
+                File.separator + "java";
+        ProcessBuilder builder = new ProcessBuilder(java, HEAP,
+                "-cp", System.getProperty("java.class.path"), MemoryTest.class.getName(), query);
+        builder.inheritIO();
+        return builder.start().waitFor();
+    }
+
+    /**
+     * Exits with zero if the given query has exactly one answer.
+     */
+    public static void main(String[] args) throws Exception {
+        Knowledge knowledge = Queries.parse(PROGRAM);
+        System.exit(Queries.count(knowledge, args[0]) == 1 ? 0 : 1);
+    }
+}
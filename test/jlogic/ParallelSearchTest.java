@@ -0,0 +1,92 @@
+package jlogic;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.ForkJoinPool;
+
+import jlogic.interpret.Frame;
+import jlogic.interpret.ParallelSearch;
+import jlogic.interpret.SearchTree;
+import jlogic.read.Lexer;
+import jlogic.read.Parser;
+import jlogic.term.Structure;
+
+import org.junit.Test;
+
+public class ParallelSearchTest {
+    private static final String PROGRAM =
+            "d(0). d(1). d(2). d(3). d(4). d(5). d(6). d(7). d(8). d(9).\n" +
+            "n(X) :- d(A), d(B), X is A * 10 + B.\n" +
+            "first(X) :- d(X), X > 3, !.\n" +
+            "edge(a, b). edge(b, c). edge(a, c). edge(c, d). edge(b, d).\n" +
+            "path(X, Y) :- edge(X, Y).\n" +
+            "path(X, Y) :- edge(X, Z), path(Z, Y).\n";
+
+    private static final String[] QUERIES = {
+        "n(X)",
+        "n(X), 0 is X mod 7",
+        "d(X), first(Y)",
+        "path(a, X)",
+        "path(X, d), path(a, X)",
+        "d(X), d(Y), X < Y, Y < 4",
+        "d(X), fail",
+        "member(X, [1,2,3]), member(Y, [a,b])",
+        "n(X), X > 90, d(Y), Y > 7, path(Z, d)",
+        "d(X), X > 7, path(b, Y), d(Z), Z > 10",
+    };
+
+    private static Structure parseQuery(String query) throws Exception {
+        return new Parser(new Lexer("query", new StringReader(query))).parseQuery();
+    }
+
+    private static ArrayList<String> searchSequentially(Knowledge knowledge, String query)
+            throws Exception {
+        ArrayList<String> result = new ArrayList<String>();
+        for (Frame frame : new SearchTree(knowledge, parseQuery(query)))
+            result.add(frame.toString());
+        return result;
+    }
+
+    private static ArrayList<String> searchInParallel(ParallelSearch search, String query)
+            throws Exception {
+        ArrayList<String> result = new ArrayList<String>();
+        for (Frame frame : search.searchAll(parseQuery(query)))
+            result.add(frame.toString());
+        return result;
+    }
+
+    private static void checkSameResults(boolean andParallel) throws Exception {
+        Knowledge knowledge = Queries.parse(PROGRAM);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (boolean ordered : new boolean[] { true, false }) {
+                ParallelSearch search = new ParallelSearch(knowledge, pool, 2, 8, ordered,
+                        andParallel);
+                for (String query : QUERIES) {
+                    ArrayList<String> expected = searchSequentially(knowledge, query);
+                    ArrayList<String> actual = searchInParallel(search, query);
+                    if (!ordered) {
+                        Collections.sort(expected);
+                        Collections.sort(actual);
+                    }
+                    assertEquals(expected, actual);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testOrParallelResults() throws Exception {
+        checkSameResults(false);
+    }
+
+    @Test
+    public void testAndParallelResults() throws Exception {
+        checkSameResults(true);
+    }
+}
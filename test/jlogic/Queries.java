@@ -0,0 +1,56 @@
+package jlogic;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+
+import jlogic.interpret.Frame;
+import jlogic.interpret.SearchTree;
+import jlogic.read.Lexer;
+import jlogic.read.Parser;
+import jlogic.read.ReadException;
+import jlogic.term.Variable;
+
+/**
+ * Parses programs and queries written as strings, and collects the answers
+ * of queries as strings.
+ */
+final class Queries {
+    // Static class
+    private Queries() {
+        assert false;
+    }
+
+    public static Knowledge parse(String program) throws ReadException, IOException {
+        return new Parser(new Lexer("test", new StringReader(program))).parseKnowledge();
+    }
+
+    /**
+     * Returns the instantiation of the given variable in every answer of a
+     * query, in the order of the answers.
+     */
+    public static ArrayList<String> solve(Knowledge knowledge, String query, String variable)
+            throws ReadException, IOException {
+        ArrayList<String> result = new ArrayList<String>();
+        for (Frame frame : search(knowledge, query))
+            result.add(frame.getInstantiation(new Variable(variable)).toString());
+        return result;
+    }
+
+    /**
+     * Returns the number of answers of a query.
+     */
+    public static int count(Knowledge knowledge, String query)
+            throws ReadException, IOException {
+        int result = 0;
+        for (@SuppressWarnings("unused") Frame frame : search(knowledge, query))
+            ++result;
+        return result;
+    }
+
+    private static SearchTree search(Knowledge knowledge, String query)
+            throws ReadException, IOException {
+        return new SearchTree(knowledge,
+                new Parser(new Lexer("query", new StringReader(query))).parseQuery());
+    }
+}
@@ -0,0 +1,103 @@
+package jlogic;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import jlogic.interpret.QueryEngine;
+import jlogic.interpret.QueryResult;
+import jlogic.read.Lexer;
+import jlogic.read.Parser;
+import jlogic.term.Structure;
+import jlogic.term.Variable;
+
+import org.junit.Test;
+
+public class QueryEngineTest {
+    private static final String PROGRAM =
+            "eq(X, X).\n" +
+            "d(0). d(1). d(2). d(3). d(4). d(5). d(6). d(7). d(8). d(9).\n" +
+            "n(X) :- d(A), d(B), d(C), X is A * 100 + B * 10 + C.\n";
+
+    private static Structure parseQuery(String query) throws Exception {
+        return new Parser(new Lexer("query", new StringReader(query))).parseQuery();
+    }
+
+    @Test
+    public void testConcurrentQueries() throws Exception {
+        Knowledge knowledge = Queries.parse(PROGRAM);
+        QueryEngine engine = new QueryEngine(knowledge, 4);
+        try {
+            ArrayList<Future<QueryResult>> futures = new ArrayList<Future<QueryResult>>();
+            for (int i = 0; i < 40; ++i)
+                futures.add(engine.submit(parseQuery("n(X), 0 is X mod " + (i + 1))));
+
+            for (int i = 0; i < futures.size(); ++i) {
+                QueryResult result = futures.get(i).get();
+                assertTrue(result.isComplete());
+                assertEquals((1000 + i) / (i + 1), result.getFrames().size());
+                assertEquals("0", result.getFrames().get(0)
+                        .getInstantiation(new Variable("X")).toString());
+            }
+            assertEquals(40, engine.getNumCompleted());
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void testMaxResults() throws Exception {
+        Knowledge knowledge = Queries.parse(PROGRAM);
+        QueryEngine engine = new QueryEngine(knowledge, 2);
+        try {
+            QueryResult partial = engine.submit(parseQuery("n(X)"), 5).get();
+            assertFalse(partial.isComplete());
+            assertEquals(5, partial.getFrames().size());
+
+            QueryResult all = engine.submit(parseQuery("d(X)"), 10).get();
+            assertEquals(10, all.getFrames().size());
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailedQueryDoesNotAffectOthers() throws Exception {
+        Knowledge knowledge = Queries.parse(PROGRAM);
+        QueryEngine engine = new QueryEngine(knowledge, 2);
+        try {
+            Future<QueryResult> cyclic = engine.submit(parseQuery("eq(X, f(X))"));
+            Future<QueryResult> other = engine.submit(parseQuery("d(X)"));
+            try {
+                cyclic.get();
+                fail("eq(X, f(X))");
+            } catch (ExecutionException expected) {
+                assertTrue(expected.getCause() instanceof IllegalStateException);
+            }
+            assertEquals(10, other.get().getFrames().size());
+            assertEquals(1, engine.getNumCompleted());
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void testChangesAreSeenByLaterQueries() throws Exception {
+        Knowledge knowledge = Queries.parse(PROGRAM);
+        QueryEngine engine = new QueryEngine(knowledge, 4);
+        try {
+            ArrayList<Future<QueryResult>> futures = new ArrayList<Future<QueryResult>>();
+            for (int i = 0; i < 20; ++i)
+                futures.add(engine.submit(parseQuery("assertz(e(" + i + "))")));
+            for (Future<QueryResult> future : futures)
+                assertEquals(1, future.get().getFrames().size());
+
+            assertEquals(20, engine.submit(parseQuery("e(X)")).get().getFrames().size());
+        } finally {
+            engine.shutdown();
+        }
+    }
+}
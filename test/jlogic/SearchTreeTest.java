@@ -0,0 +1,90 @@
+package jlogic;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import jlogic.interpret.Frame;
+import jlogic.interpret.SearchTree;
+import jlogic.read.Lexer;
+import jlogic.read.Parser;
+import jlogic.term.Term;
+import jlogic.term.Variable;
+
+import org.junit.Test;
+
+public class SearchTreeTest {
+    private static final String PROGRAM =
+            "d(0). d(1). d(2). d(3). d(4). d(5). d(6). d(7). d(8). d(9).\n" +
+            "from(N, N).\n" +
+            "from(N, X) :- M is N + 1, from(M, X).\n";
+
+    private static SearchTree search(String query) throws Exception {
+        return new SearchTree(Queries.parse(PROGRAM),
+                new Parser(new Lexer("query", new StringReader(query))).parseQuery());
+    }
+
+    private static ArrayList<String> getInstantiations(List<Frame> frames, String variable) {
+        ArrayList<String> result = new ArrayList<String>();
+        for (Frame frame : frames)
+            result.add(frame.getInstantiation(new Variable(variable)).toString());
+        return result;
+    }
+
+    @Test
+    public void testStreamLimitStopsInfiniteSearch() throws Exception {
+        List<Frame> frames = search("from(3, X)").stream().limit(5)
+                .collect(Collectors.<Frame>toList());
+
+        assertEquals("[3, 4, 5, 6, 7]", getInstantiations(frames, "X").toString());
+    }
+
+    @Test
+    public void testIteratorIsLazy() throws Exception {
+        Iterator<Frame> iterator = search("from(0, X)").iterator();
+
+        for (int i = 0; i < 100; ++i) {
+            assertTrue(iterator.hasNext());
+            assertTrue(iterator.hasNext());
+            assertEquals(String.valueOf(i),
+                    iterator.next().getInstantiation(new Variable("X")).toString());
+        }
+    }
+
+    @Test
+    public void testSearchManyInBatches() throws Exception {
+        SearchTree tree = search("d(X), X < 5, Y is X * X");
+        Variable[] variables = tree.getQueryVariables();
+        assertEquals(2, variables.length);
+        assertEquals("X", variables[0].toString());
+        assertEquals("Y", variables[1].toString());
+
+        Term[][] buffer = new Term[2][variables.length];
+        ArrayList<String> rows = new ArrayList<String>();
+        int numFilled;
+        do {
+            numFilled = tree.searchMany(buffer);
+            for (int i = 0; i < numFilled; ++i)
+                rows.add(buffer[i][0] + "/" + buffer[i][1]);
+        } while (numFilled == buffer.length);
+
+        assertEquals("[0/0, 1/1, 2/4, 3/9, 4/16]", rows.toString());
+        assertEquals(0, tree.searchMany(buffer));
+        assertNull(tree.searchOne());
+    }
+
+    @Test
+    public void testSearchManyAfterSearchOne() throws Exception {
+        SearchTree tree = search("d(X)");
+        assertEquals("0", tree.searchOne().getInstantiation(new Variable("X")).toString());
+
+        Term[][] buffer = new Term[20][1];
+        assertEquals(9, tree.searchMany(buffer));
+        assertEquals("1", buffer[0][0].toString());
+        assertEquals("9", buffer[8][0].toString());
+    }
+}
@@ -0,0 +1,64 @@
+package jlogic;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import jlogic.term.Structure;
+import jlogic.term.Term;
+
+import org.junit.Test;
+
+public class SnapshotTest {
+    private static final String PROGRAM =
+            "p(1, [a, b | T], g(x)).\n" +
+            "p(-3, big, 123456789012345678901234567890).\n" +
+            "q(X, Y) :- p(X, Y, _), X > 0, !.\n" +
+            "r(g(x)). r(h(g(x), [1, 2])).\n" +
+            "edge(a, b). edge(b, a).\n" +
+            ":- table path/2.\n" +
+            "path(X, Y) :- path(X, Z), edge(Z, Y).\n" +
+            "path(X, Y) :- edge(X, Y).\n";
+
+    private static final String[] QUERIES = {
+        "p(X, Y, Z)", "p(-3, Y, Z)", "q(X, Y)", "r(X)", "r(h(g(X), Y))", "path(a, X)"
+    };
+
+    private static Knowledge roundTrip(Knowledge knowledge) throws Exception {
+        File file = File.createTempFile("snapshot", ".jls");
+        try {
+            KnowledgeSnapshot.write(knowledge, file.getPath());
+            return KnowledgeSnapshot.read(file.getPath());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Knowledge original = Queries.parse(PROGRAM);
+        Knowledge knowledge = roundTrip(original);
+
+        assertEquals(original.getNumClauses(), knowledge.getNumClauses());
+        assertTrue(knowledge.getPredicate("path", 2).isTabled());
+        for (String query : QUERIES) {
+            for (String variable : new String[] { "X", "Y", "Z" }) {
+                if (query.contains(variable)) {
+                    assertEquals(Queries.solve(original, query, variable),
+                            Queries.solve(knowledge, query, variable));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testGroundStructuresAreShared() throws Exception {
+        Knowledge knowledge = roundTrip(Queries.parse(PROGRAM));
+
+        Rule[] clauses = knowledge.getPredicate("r", 1).getClauses();
+        Term first = clauses[0].getHead().getArguments()[0];
+        Term nested = ((Structure) clauses[1].getHead().getArguments()[0]).getArguments()[0];
+        assertTrue(((Structure) first).isShared());
+        assertTrue(first == nested);
+    }
+}
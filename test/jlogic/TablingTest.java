@@ -0,0 +1,36 @@
+package jlogic;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class TablingTest {
+    private static final String PROGRAM =
+            "edge(a, b). edge(b, c). edge(c, a). edge(c, d).\n" +
+            ":- table path/2.\n" +
+            "path(X, Y) :- path(X, Z), edge(Z, Y).\n" +
+            "path(X, Y) :- edge(X, Y).\n";
+
+    @Test
+    public void testLeftRecursionTerminates() throws Exception {
+        Knowledge knowledge = Queries.parse(PROGRAM);
+
+        ArrayList<String> answers = Queries.solve(knowledge, "path(a, X)", "X");
+        Collections.sort(answers);
+        assertEquals(Arrays.asList("a", "b", "c", "d"), answers);
+    }
+
+    @Test
+    public void testAnswersAreUnique() throws Exception {
+        Knowledge knowledge = Queries.parse(PROGRAM);
+
+        // The cycle leads to every answer more than once
+        assertEquals(4, Queries.count(knowledge, "path(b, X)"));
+        assertEquals(1, Queries.count(knowledge, "path(a, d)"));
+        assertEquals(0, Queries.count(knowledge, "path(d, X)"));
+    }
+}
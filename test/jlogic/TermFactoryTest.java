@@ -0,0 +1,64 @@
+package jlogic;
+
+import static org.junit.Assert.*;
+
+import jlogic.term.Atom;
+import jlogic.term.IntegerTerm;
+import jlogic.term.Structure;
+import jlogic.term.Term;
+import jlogic.term.TermFactory;
+import jlogic.term.Variable;
+
+import org.junit.Test;
+
+public class TermFactoryTest {
+    private static final Atom F = TermFactory.createAtom("f");
+
+    private static Structure create(long value) {
+        return TermFactory.createStructure(F, new Term[] { IntegerTerm.valueOf(value) });
+    }
+
+    @Test
+    public void testGroundStructuresAreShared() {
+        Structure structure = create(1);
+
+        assertTrue(structure.isShared());
+        assertTrue(structure == create(1));
+        assertFalse(structure == create(2));
+    }
+
+    @Test
+    public void testOtherStructuresAreNotShared() {
+        Term[] arguments = { new Variable("X") };
+        Structure structure = TermFactory.createStructure(F, arguments);
+
+        assertFalse(structure.isShared());
+        assertFalse(structure == TermFactory.createStructure(F, arguments));
+    }
+
+    @Test
+    public void testSharedAcrossThreads() throws Exception {
+        final int numValues = 1000;
+        final Structure[][] results = new Structure[8][numValues];
+
+        Thread[] threads = new Thread[results.length];
+        for (int i = 0; i < threads.length; ++i) {
+            final Structure[] result = results[i];
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < numValues; ++j)
+                        result[j] = create(100000 + j);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        for (int i = 1; i < results.length; ++i) {
+            for (int j = 0; j < numValues; ++j)
+                assertTrue(results[i][j] == results[0][j]);
+        }
+    }
+}